@@ -0,0 +1,296 @@
+package app;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * CompletableFuture をつないで、待っている間スレッドをふさがない処理を書くための道具
+ *
+ * Future.get() は結果が出るまで呼んだスレッドを止める。リクエストごとに get() で待つと、
+ * 同時に待てるリクエスト数 = スレッド数になる。CompletableFuture で「結果が出たら次をやる」とつなげば、
+ * 待っている間はどのスレッドも使わない。
+ *
+ *   try (AsyncPipeline pipeline = AsyncPipeline.create(4, 10_000)) {
+ *       CompletableFuture<String> page = pipeline.combine(
+ *               fetchUser(id), fetchOrders(id), (user, orders) -> user + orders)   // 2つを並行して、両方そろったら
+ *           .thenCompose(summary -> fetchPrice(summary))                           // 結果を使って次の非同期処理
+ *           .orTimeout(1, TimeUnit.SECONDS);                                       // 全体の期限
+ *       page.thenAccept(System.out::println);                                      // get() しない
+ *   }
+ *
+ * - 続きの処理（thenApplyAsync などのコールバック）は、スレッド数とキューの長さが決まった executor() で動く。
+ *   キューがあふれたら、その続きは RejectedExecutionException で失敗する（黙ってたまり続けないように）。
+ *   close() のあとに来た続きも RejectedExecutionException で失敗するが、メッセージで区別できる
+ * - allOf(): 全部そろったらリストにする。1つでも失敗したら、残りを待たずにすぐ失敗する
+ *   （CompletableFuture.allOf() は全部終わるまで待つうえに、結果を返さない）
+ * - allOf(futures, collector): そろった結果を Collector でまとめる（合計、Map にするなど）
+ * - settle(): 失敗があっても全部終わるまで待ち、成功と失敗を Results に分けて返す
+ * - later(): スレッドを使わずに、一定時間後に値を返す（非同期 I/O のまね）
+ */
+public final class AsyncPipeline implements AutoCloseable {
+    private static final AtomicInteger POOL_IDS = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejected = new AtomicLong();
+
+    private AsyncPipeline(int threads, int queueCapacity) {
+        int poolId = POOL_IDS.incrementAndGet();
+        AtomicInteger threadIds = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "async-" + poolId + "-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), factory, (task, pool) -> {
+                // close() のあとに断ったものは、キューあふれとは別に報告する（rejectedCount() にも入れない）
+                if (pool.isShutdown()) {
+                    throw new RejectedExecutionException("pipeline has been closed");
+                }
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("completion queue is full (" + queueCapacity + ")");
+            });
+    }
+
+    /**
+     * @param threads       続きの処理を動かすスレッド数（CPU を使う処理だけなので、CPU 数くらいでよい）
+     * @param queueCapacity 順番待ちできる続きの処理の数
+     */
+    public static AsyncPipeline create(int threads, int queueCapacity) {
+        if (threads <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("threads and queueCapacity must be positive");
+        }
+        return new AsyncPipeline(threads, queueCapacity);
+    }
+
+    // CPU 数のスレッド、キューは 1万
+    public static AsyncPipeline create() {
+        return create(Runtime.getRuntime().availableProcessors(), 10_000);
+    }
+
+    // 続きの処理を動かす executor（thenApplyAsync(fn, pipeline.executor()) などに渡す）
+    public Executor executor() {
+        return executor;
+    }
+
+    // task を executor() で動かす（CPU を使う処理用。ブロックする処理は入れない）
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        submit(future, task);
+        return future;
+    }
+
+    /**
+     * delay のあとに value を返す。待っている間はどのスレッドも使わない（JDK のタイマースレッド1本が時刻を見るだけ）
+     * 非同期の HTTP クライアントや DB ドライバのまね
+     */
+    public <T> CompletableFuture<T> later(Duration delay, Supplier<T> value) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        // タイマースレッドでは executor に渡すだけ（delayedExecutor(delay, unit, executor) だと、
+        // 断られたときの例外がタイマースレッドで捨てられて future が終わらなくなる）
+        CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS, Runnable::run)
+            .execute(() -> submit(future, value));
+        return future;
+    }
+
+    // executor で task を動かして future を完了させる。断られたら future を失敗させる
+    private <T> void submit(CompletableFuture<T> future, Supplier<T> task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(task.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    // a と b が両方そろったら combiner を executor() で呼ぶ
+    public <A, B, R> CompletableFuture<R> combine(CompletableFuture<A> a, CompletableFuture<B> b,
+                                                  BiFunction<? super A, ? super B, ? extends R> combiner) {
+        return a.thenCombineAsync(b, combiner, executor);
+    }
+
+    // future の結果で次の非同期処理を始める（next は executor() で呼ぶ）
+    public <T, R> CompletableFuture<R> compose(CompletableFuture<T> future,
+                                               Function<? super T, ? extends CompletableFuture<R>> next) {
+        return future.thenComposeAsync(next, executor);
+    }
+
+    /**
+     * 期限つき。期限を過ぎたら TimeoutException で失敗する（元の future は止めない）
+     */
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, Duration timeout) {
+        return future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    // 期限を過ぎたら fallback で成功する
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, Duration timeout, T fallback) {
+        return future.completeOnTimeout(fallback, timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 全部そろったら、順番どおりのリストで成功する
+     * 1つでも失敗したら、残りを待たずにその例外（CompletionException を外したもの）で失敗する
+     */
+    public static <T> CompletableFuture<List<T>> allOf(List<? extends CompletableFuture<? extends T>> futures) {
+        CompletableFuture<List<T>> result = new CompletableFuture<>();
+        int size = futures.size();
+        if (size == 0) {
+            result.complete(Collections.emptyList());
+            return result;
+        }
+        Object[] values = new Object[size];
+        // 書き込み → decrementAndGet、最後の decrementAndGet → 読み出し の順なので、values は見える
+        AtomicInteger remaining = new AtomicInteger(size);
+        for (int i = 0; i < size; i++) {
+            int index = i;
+            futures.get(i).whenComplete((value, failure) -> {
+                if (failure != null) {
+                    result.completeExceptionally(unwrap(failure));
+                    return;
+                }
+                values[index] = value;
+                if (remaining.decrementAndGet() == 0) {
+                    @SuppressWarnings("unchecked")
+                    List<T> list = (List<T>) Arrays.asList(values);
+                    result.complete(Collections.unmodifiableList(list));
+                }
+            });
+        }
+        return result;
+    }
+
+    // 全部そろったら collector でまとめる（失敗の扱いは allOf(futures) と同じ）
+    public static <T, R> CompletableFuture<R> allOf(List<? extends CompletableFuture<? extends T>> futures,
+                                                    Collector<? super T, ?, R> collector) {
+        return AsyncPipeline.<T>allOf(futures).thenApply(list -> list.stream().collect(collector));
+    }
+
+    /**
+     * 失敗があっても全部終わるまで待ち、成功と失敗を分けて返す（この future 自体は失敗しない）
+     */
+    public static <T> CompletableFuture<Results<T>> settle(List<? extends CompletableFuture<? extends T>> futures) {
+        CompletableFuture<?>[] array = futures.toArray(new CompletableFuture<?>[0]);
+        return CompletableFuture.allOf(array).handle((ignored, failure) -> {
+            List<T> values = new ArrayList<>(futures.size());
+            Map<Integer, Throwable> failures = new LinkedHashMap<>();
+            for (int i = 0; i < futures.size(); i++) {
+                CompletableFuture<? extends T> future = futures.get(i);
+                try {
+                    values.add(future.join());
+                } catch (CompletionException | CancellationException e) {
+                    values.add(null);
+                    failures.put(i, unwrap(e));
+                }
+            }
+            return new Results<>(values, failures);
+        });
+    }
+
+    static Throwable unwrap(Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            return failure.getCause();
+        }
+        return failure;
+    }
+
+    // キューがいっぱいで断った続きの処理の数（close() のあとに断ったものは数えない）
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    public long completedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public int queuedTaskCount() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AsyncPipeline[threads=%d, queued=%d, completed=%d, rejected=%d]",
+            executor.getPoolSize(), executor.getQueue().size(), executor.getCompletedTaskCount(), rejected.get());
+    }
+
+    /**
+     * settle() の結果
+     */
+    public static final class Results<T> {
+        // 失敗したところは null
+        private final List<T> values;
+        private final Map<Integer, Throwable> failures;
+
+        Results(List<T> values, Map<Integer, Throwable> failures) {
+            this.values = Collections.unmodifiableList(values);
+            this.failures = Collections.unmodifiableMap(failures);
+        }
+
+        public List<T> values() {
+            return values;
+        }
+
+        // 成功したものだけ
+        public List<T> successes() {
+            List<T> successes = new ArrayList<>();
+            for (int i = 0; i < values.size(); i++) {
+                if (!failures.containsKey(i)) {
+                    successes.add(values.get(i));
+                }
+            }
+            return successes;
+        }
+
+        // 番号 → 失敗の原因
+        public Map<Integer, Throwable> failures() {
+            return failures;
+        }
+
+        public boolean allSucceeded() {
+            return failures.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Results[成功 %d, 失敗 %d%s]", values.size() - failures.size(), failures.size(),
+                failures.isEmpty() ? "" : ", 最初の失敗: " + failures.values().iterator().next());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package app;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 同時に REQUESTS 件のリクエストをさばく時間（get() で待つ vs CompletableFuture でつなぐ）
+ *
+ * 1リクエスト = ユーザー取得（USER_MILLIS）と注文取得（ORDERS_MILLIS）を並行して、両方そろったら価格取得（PRICE_MILLIS）。
+ *   - blocking(200)  : リクエストを newFixedThreadPool(200) で受け、I/O は別のプールに submit して get() で待つ。
+ *                      待っている間もスレッドをふさぐので、同時に進むのは 200 件まで
+ *   - async          : AsyncPipeline の later()（スレッドを使わずに待つ）を combine / compose でつなぐ。
+ *                      待っている間はどのスレッドも使わないので、全部が同時に進む
+ * 全部を一度に投げて、最後の1件が終わるまでの時間、1件ごとのレイテンシ（投げてから終わるまで）、OS スレッド数の最大を出す。
+ * ※ async の速さは「I/O 自体が非同期（スレッドを止めない）」ことが前提。ブロックする JDBC などを
+ *   supplyAsync に入れるだけでは、待つスレッドが別のプールに移るだけで同じことになる。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.AsyncPipelineBenchmark [quick]
+ */
+public class AsyncPipelineBenchmark {
+    static final int REQUESTS = 10_000;
+    static final long USER_MILLIS = 10;
+    static final long ORDERS_MILLIS = 10;
+    static final long PRICE_MILLIS = 5;
+    static final int HANDLER_THREADS = 200;
+    static final int IO_THREADS = 400;
+
+    public static void main(String[] args) throws Exception {
+        boolean quick = args.length > 0 && args[0].equals("quick");
+        int warmup = quick ? 0 : 1;
+        int measure = quick ? 2 : 3;
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        List<Bench.Result> results = Bench.newResults();
+        List<String> rows = new ArrayList<>();
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("requests", REQUESTS);
+        params.put("io", USER_MILLIS + "+" + PRICE_MILLIS + "ms");
+
+        for (String name : List.of("blocking(" + HANDLER_THREADS + ")", "async")) {
+            boolean async = name.equals("async");
+            for (int i = 0; i < warmup; i++) {
+                run(async);
+            }
+            settle(threads);
+            threads.resetPeakThreadCount();
+            double[] nsPerRequest = new double[measure];
+            long[] latencies = null;
+            long wall = 0;
+            for (int i = 0; i < measure; i++) {
+                long start = System.nanoTime();
+                latencies = run(async);
+                wall = System.nanoTime() - start;
+                nsPerRequest[i] = (double) wall / REQUESTS;
+            }
+            results.add(new Bench.Result(name, params, nsPerRequest, 0));
+            rows.add(String.format("%-16s %10.0fms %10.0f %8.1fms %8.1fms %12d", name, wall / 1e6,
+                REQUESTS / (wall / 1e9), Bench.percentile(latencies, 0.50) / 1e6, Bench.percentile(latencies, 0.99) / 1e6,
+                threads.getPeakThreadCount()));
+        }
+
+        System.out.println("※ ns/op はリクエスト1件あたり（全体の時間 / リクエスト数）");
+        Bench.printAll(results);
+        System.out.printf("%n%-16s %12s %10s %10s %10s %12s%n", "", "全体の時間", "req/s", "p50", "p99", "OSスレッド最大");
+        rows.forEach(System.out::println);
+        System.out.printf("（1件は最短 %dms。blocking は %d 件ずつしか進まないので約 %dms かかる）%n",
+            Math.max(USER_MILLIS, ORDERS_MILLIS) + PRICE_MILLIS, HANDLER_THREADS,
+            REQUESTS / HANDLER_THREADS * (Math.max(USER_MILLIS, ORDERS_MILLIS) + PRICE_MILLIS));
+    }
+
+    // 前のケースのスレッドが消えるのを待つ（残っていると OS スレッド最大に混ざる）
+    static void settle(ThreadMXBean threads) throws InterruptedException {
+        for (int i = 0; i < 40; i++) {
+            int before = threads.getThreadCount();
+            Thread.sleep(50);
+            if (threads.getThreadCount() >= before) {
+                return;
+            }
+        }
+    }
+
+    // REQUESTS 件を一度に投げて、1件ごとのレイテンシ（ns、ソート済み）を返す
+    static long[] run(boolean async) throws Exception {
+        return async ? runAsync() : runBlocking();
+    }
+
+    static long[] runBlocking() throws Exception {
+        ExecutorService handlers = Executors.newFixedThreadPool(HANDLER_THREADS);
+        ExecutorService io = Executors.newFixedThreadPool(IO_THREADS);
+        long[] latencies = new long[REQUESTS];
+        CountDownLatch done = new CountDownLatch(REQUESTS);
+        try {
+            for (int i = 0; i < REQUESTS; i++) {
+                int id = i;
+                long submitted = System.nanoTime();
+                handlers.submit(() -> {
+                    try {
+                        Future<String> user = io.submit(() -> blockingIo(USER_MILLIS, "user" + id));
+                        Future<Integer> orders = io.submit(() -> blockingIo(ORDERS_MILLIS, id % 5));
+                        String summary = user.get() + ":" + orders.get();
+                        Future<Integer> price = io.submit(() -> blockingIo(PRICE_MILLIS, summary.length()));
+                        return price.get();
+                    } finally {
+                        latencies[id] = System.nanoTime() - submitted;
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        } finally {
+            handlers.shutdownNow();
+            io.shutdownNow();
+            handlers.awaitTermination(10, TimeUnit.SECONDS);
+            io.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    static <T> T blockingIo(long millis, T value) throws InterruptedException {
+        Thread.sleep(millis);
+        return value;
+    }
+
+    static long[] runAsync() {
+        long[] latencies = new long[REQUESTS];
+        try (AsyncPipeline pipeline = AsyncPipeline.create(Runtime.getRuntime().availableProcessors(), 4 * REQUESTS)) {
+            List<CompletableFuture<Integer>> requests = new ArrayList<>(REQUESTS);
+            for (int i = 0; i < REQUESTS; i++) {
+                int id = i;
+                long submitted = System.nanoTime();
+                CompletableFuture<Integer> request = pipeline.compose(
+                    pipeline.combine(
+                        pipeline.later(Duration.ofMillis(USER_MILLIS), () -> "user" + id),
+                        pipeline.later(Duration.ofMillis(ORDERS_MILLIS), () -> id % 5),
+                        (user, orders) -> user + ":" + orders),
+                    summary -> pipeline.later(Duration.ofMillis(PRICE_MILLIS), summary::length));
+                requests.add(AsyncPipeline.withTimeout(request, Duration.ofSeconds(10))
+                    .whenComplete((price, failure) -> latencies[id] = System.nanoTime() - submitted));
+            }
+            // 待つのは main が最後の1回だけ
+            long total = AsyncPipeline.allOf(requests, Collectors.summingLong(Integer::longValue)).join();
+            Bench.consume(total);
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+}
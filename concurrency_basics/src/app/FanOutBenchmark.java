@@ -0,0 +1,140 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ファンアウト（1リクエストで子タスクを何個も投げる）のレイテンシ比較
+ *
+ * 1ラウンド = FAN_OUT 個の子タスクを投げて、答えが出るまでの時間を測る。子タスクの所要時間は
+ * 平均 MEAN_MILLIS の指数分布（たまにとても遅いものが混ざる）。これを ROUNDS 回やって p50 / p99 を出す。
+ *
+ * 1. 1つが失敗するとき（子タスクのうち1つが FAIL_AFTER_MILLIS で失敗する）
+ *    - invokeAll            : 全部終わるまで待ってから失敗に気づく → 一番遅い子タスクの時間
+ *    - TaskScope(FAIL_FAST) : 失敗した瞬間に残りを止めて返る → ほぼ FAIL_AFTER_MILLIS
+ * 2. どれか1つの答えでよいとき（同じ問い合わせを複数に投げる）
+ *    - invokeAll            : 全部待つ（比較用）
+ *    - invokeAny            : 最初の成功で返る
+ *    - TaskScope(FIRST_SUCCESS)
+ *
+ * 実行方法:
+ *   java -p out -m app/app.FanOutBenchmark [quick]
+ */
+public class FanOutBenchmark {
+    static final int FAN_OUT = 8;
+    static final double MEAN_MILLIS = 5;
+    static final long FAIL_AFTER_MILLIS = 2;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 && args[0].equals("quick") ? 200 : 2_000;
+        // スレッドを作る時間を混ぜないように、使い回すプールで比べる
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            Random random = new Random(42);
+            long[][] sleeps = new long[rounds][FAN_OUT];
+            int[] failing = new int[rounds];
+            for (int r = 0; r < rounds; r++) {
+                for (int i = 0; i < FAN_OUT; i++) {
+                    sleeps[r][i] = (long) (-Math.log(1 - random.nextDouble()) * MEAN_MILLIS * 1000);
+                }
+                failing[r] = random.nextInt(FAN_OUT);
+            }
+
+            System.out.printf("子タスク %d 個, 所要時間は平均 %.0fms の指数分布, %d ラウンド%n%n", FAN_OUT, MEAN_MILLIS, rounds);
+            System.out.printf("%-32s %10s %10s %10s%n", "1. 1つが失敗する", "p50", "p99", "max");
+            report("invokeAll", measure(rounds, r -> invokeAll(pool, tasks(sleeps[r], failing[r]))));
+            report("TaskScope(FAIL_FAST)", measure(rounds, r -> scope(pool, TaskScope.Policy.FAIL_FAST,
+                tasks(sleeps[r], failing[r]))));
+            report("（参考）一番遅い子タスク", slowest(sleeps));
+
+            System.out.printf("%n%-32s %10s %10s %10s%n", "2. どれか1つの答えでよい", "p50", "p99", "max");
+            report("invokeAll", measure(rounds, r -> invokeAll(pool, tasks(sleeps[r], -1))));
+            report("invokeAny", measure(rounds, r -> pool.invokeAny(tasks(sleeps[r], -1))));
+            report("TaskScope(FIRST_SUCCESS)", measure(rounds, r -> scope(pool, TaskScope.Policy.FIRST_SUCCESS,
+                tasks(sleeps[r], -1))));
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    interface Round {
+        void run(int round) throws Exception;
+    }
+
+    // 各ラウンドの所要時間（ns、ソート済み）
+    static long[] measure(int rounds, Round round) throws Exception {
+        long[] latencies = new long[rounds];
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            try {
+                round.run(r);
+            } catch (ExecutionException e) {
+                // 失敗に気づいたところまでを測る
+            }
+            latencies[r] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    // failing 番目の子タスクだけ FAIL_AFTER_MILLIS で失敗する（-1 なら全部成功）
+    static List<Callable<Long>> tasks(long[] sleepMicros, int failing) {
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (int i = 0; i < sleepMicros.length; i++) {
+            long micros = sleepMicros[i];
+            boolean fails = i == failing;
+            tasks.add(() -> {
+                if (fails) {
+                    TimeUnit.MILLISECONDS.sleep(FAIL_AFTER_MILLIS);
+                    throw new IllegalStateException("backend error");
+                }
+                TimeUnit.MICROSECONDS.sleep(micros);
+                return micros;
+            });
+        }
+        return tasks;
+    }
+
+    static void invokeAll(ExecutorService pool, List<Callable<Long>> tasks) throws Exception {
+        for (Future<Long> future : pool.invokeAll(tasks)) {
+            future.get();
+        }
+    }
+
+    static void scope(ExecutorService pool, TaskScope.Policy policy, List<Callable<Long>> tasks) throws Exception {
+        try (TaskScope<Long> scope = TaskScope.open(policy, pool)) {
+            for (Callable<Long> task : tasks) {
+                scope.fork(task);
+            }
+            scope.join();
+            if (policy == TaskScope.Policy.FIRST_SUCCESS) {
+                scope.result();
+            } else {
+                scope.throwIfFailed();
+            }
+        }
+    }
+
+    static long[] slowest(long[][] sleeps) {
+        long[] result = new long[sleeps.length];
+        for (int r = 0; r < sleeps.length; r++) {
+            result[r] = TimeUnit.MICROSECONDS.toNanos(Arrays.stream(sleeps[r]).max().orElse(0));
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    static void report(String name, long[] sorted) {
+        System.out.printf("%-32s %8.1fms %8.1fms %8.1fms%n", name,
+            Bench.percentile(sorted, 0.50) / 1e6, Bench.percentile(sorted, 0.99) / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+}
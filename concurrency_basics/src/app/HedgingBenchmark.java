@@ -0,0 +1,129 @@
+package app;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ヘッジでテールレイテンシ（p99 / p999）がどれだけ縮むか、そのかわり呼び出し先の仕事がどれだけ増えるか
+ *
+ * 呼び出し先のまね（call()）: ふだんは 1ms + 平均 0.5ms の指数分布。
+ *   STALL_RATE の確率で STALL_MILLIS、まれに（LONG_STALL_RATE）LONG_STALL_MILLIS 詰まる（GC やキュー待ちのつもり）。
+ *   詰まりは試行ごとにばらばらに起きるので、2回目はたいてい速く返る。
+ * CLIENTS 本のスレッドがそれぞれ順番に呼び出して、呼び出し1回の時間の分布を比べる。
+ *   - ヘッジなし                 : maxExtraLoad = 0
+ *   - ヘッジ p95（追加は 10% まで）: HedgingExecutor.create(pool) と同じ設定
+ *   - ヘッジ p50（追加は 50% まで）: 早めに投げる。速くはなるが、仕事はもっと増える
+ * 「仕事」は呼び出し先で実際に過ごした時間の合計（止められた試行は止められるまで）を、ヘッジなしを 1.00 として表す。
+ * ※ このまねでは割り込めば呼び出し先もすぐ止まるので、詰まった試行を打ち切れるぶん仕事が減ることもある。
+ *   本物のサーバーは途中で止まらないことが多いので、そのときの仕事は「1 + 追加の試行」に近くなる。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.HedgingBenchmark [quick]
+ */
+public class HedgingBenchmark {
+    static final int CLIENTS = 16;
+    static final double STALL_RATE = 0.03;
+    static final long STALL_MILLIS = 30;
+    static final double LONG_STALL_RATE = 0.003;
+    static final long LONG_STALL_MILLIS = 150;
+
+    // 呼び出し先で過ごした時間の合計（ns）
+    static final LongAdder work = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        boolean quick = args.length > 0 && args[0].equals("quick");
+        int requests = quick ? 3_000 : 30_000;
+        int warmup = quick ? 300 : 2_000;
+
+        Map<String, double[]> configs = new LinkedHashMap<>();
+        configs.put("ヘッジなし", new double[] {0.95, 0});
+        configs.put("ヘッジ p95（追加 10% まで）", new double[] {0.95, 0.10});
+        configs.put("ヘッジ p50（追加 50% まで）", new double[] {0.50, 0.50});
+
+        System.out.printf("呼び出し %d 回（%d スレッド）。%.1f%% で %dms、%.1f%% で %dms 詰まる%n%n", requests, CLIENTS,
+            STALL_RATE * 100, STALL_MILLIS, LONG_STALL_RATE * 100, LONG_STALL_MILLIS);
+        System.out.printf("%-24s %8s %8s %8s %8s %10s %8s%n", "", "p50", "p99", "p999", "max", "追加の試行", "仕事");
+
+        List<String> details = new ArrayList<>();
+        double baselineWork = 0;
+        for (Map.Entry<String, double[]> entry : configs.entrySet()) {
+            ExecutorService pool = Executors.newCachedThreadPool();
+            ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+            try {
+                HedgingExecutor hedging = HedgingExecutor.create(pool, entry.getValue()[0], entry.getValue()[1],
+                    Duration.ofMillis(1));
+                run(clients, hedging, warmup);
+                HedgingExecutor.Stats before = hedging.stats("call");
+                work.reset();
+                long[] latencies = run(clients, hedging, requests);
+                double workPerCall = work.sum() / (double) requests;
+                HedgingExecutor.Stats stats = hedging.stats("call");
+                if (baselineWork == 0) {
+                    baselineWork = workPerCall;
+                }
+                System.out.printf("%-24s %6.1fms %6.1fms %6.1fms %6.1fms %9.1f%% %8.2f%n", entry.getKey(),
+                    Bench.percentile(latencies, 0.50) / 1e6, Bench.percentile(latencies, 0.99) / 1e6,
+                    Bench.percentile(latencies, 0.999) / 1e6, latencies[latencies.length - 1] / 1e6,
+                    100.0 * (stats.hedges - before.hedges) / requests, workPerCall / baselineWork);
+                details.add(entry.getKey() + " → " + stats);
+            } finally {
+                clients.shutdownNow();
+                pool.shutdownNow();
+                clients.awaitTermination(10, TimeUnit.SECONDS);
+                pool.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        }
+        System.out.println();
+        details.forEach(System.out::println);
+    }
+
+    // requests 回呼び出して、1回ごとの時間（ns、ソート済み）を返す
+    static long[] run(ExecutorService clients, HedgingExecutor hedging, int requests) throws Exception {
+        long[] latencies = new long[requests];
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < CLIENTS; c++) {
+            int first = c;
+            futures.add(clients.submit(() -> {
+                for (int i = first; i < requests; i += CLIENTS) {
+                    long start = System.nanoTime();
+                    hedging.invoke("call", HedgingBenchmark::call);
+                    latencies[i] = System.nanoTime() - start;
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    static Long call() throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long micros = 1_000 + (long) (-Math.log(1 - random.nextDouble()) * 500);
+        double r = random.nextDouble();
+        if (r < LONG_STALL_RATE) {
+            micros += LONG_STALL_MILLIS * 1_000;
+        } else if (r < LONG_STALL_RATE + STALL_RATE) {
+            micros += STALL_MILLIS * 1_000;
+        }
+        long start = System.nanoTime();
+        try {
+            TimeUnit.MICROSECONDS.sleep(micros);
+            return micros;
+        } finally {
+            work.add(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package app;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ヘッジ（保険の2回目）つきで呼び出す
+ *
+ * invokeAny() は最初から全部を投げるので、呼び出し先の負荷が N 倍になる。ヘッジは「まず1回だけ投げて、
+ * いつもより遅い（その操作の p95 を過ぎた）ときだけ2回目を投げる。先に返ってきたほうを使い、もう片方は止める」。
+ * 遅いのはたいてい呼び出し先の一時的な詰まり（GC、キュー待ち）なので、2回目はふつうの速さで返ることが多い。
+ *
+ *   HedgingExecutor hedging = HedgingExecutor.create(pool);          // p95 でヘッジ、追加の呼び出しは 10% まで
+ *   String user = hedging.invoke("getUser", () -> userApi.get(id));
+ *   System.out.println(hedging.stats("getUser"));
+ *
+ * - 操作ごと（invoke の第1引数）に LatencyHistogram でかかった時間を数え、その quantile をヘッジまでの待ち時間にする。
+ *   最初の WARMUP_SAMPLES 回はヘッジしない（まだ分布がわからないので）。
+ *   分位点を出すには箱を全部なめるので、毎回は計算しない。DELAY_REFRESH 件ごとに計算し直して覚えておく
+ * - ヘッジを投げられるのは、その操作の呼び出し回数 × maxExtraLoad 回まで（詰まっているときに負荷を倍にしないため）
+ * - 負けたほうは Future.cancel(true) で割り込む。止められた試行も、止められるまでの時間をヒストグラムに入れる
+ *   （入れないと遅い試行ほど記録されなくなって、p95 がだんだん小さく見えてしまう）
+ * - 1回目が失敗したときは、ヘッジが走っていればそれを待つ。走っていなければ失敗を返す（リトライではない）
+ *
+ * 試行は副作用がない（2回呼んでもよい）ものに限ること。
+ */
+public final class HedgingExecutor {
+    static final int WARMUP_SAMPLES = 50;
+    // この件数ごとにヒストグラムを半分にする（古い値を忘れていく）
+    static final long DECAY_INTERVAL = 10_000;
+    // この件数ごとにヘッジまでの待ち時間を計算し直す
+    static final long DELAY_REFRESH = 64;
+
+    private final ExecutorService executor;
+    private final double quantile;
+    private final double maxExtraLoad;
+    private final long minDelayNanos;
+    private final ConcurrentHashMap<String, Operation> operations = new ConcurrentHashMap<>();
+
+    private HedgingExecutor(ExecutorService executor, double quantile, double maxExtraLoad, Duration minDelay) {
+        if (quantile <= 0 || quantile >= 1) {
+            throw new IllegalArgumentException("quantile must be in (0, 1): " + quantile);
+        }
+        if (maxExtraLoad < 0) {
+            throw new IllegalArgumentException("maxExtraLoad must not be negative: " + maxExtraLoad);
+        }
+        this.executor = Objects.requireNonNull(executor);
+        this.quantile = quantile;
+        this.maxExtraLoad = maxExtraLoad;
+        this.minDelayNanos = minDelay.toNanos();
+    }
+
+    // p95 を過ぎたらヘッジ。追加の呼び出しは 10% まで
+    public static HedgingExecutor create(ExecutorService executor) {
+        return create(executor, 0.95, 0.10, Duration.ofMillis(1));
+    }
+
+    /**
+     * @param quantile     この分位点を過ぎたらヘッジを投げる
+     * @param maxExtraLoad ヘッジは呼び出し回数のこの割合まで（0 ならヘッジしない）
+     * @param minDelay     ヘッジまでの待ち時間の下限（速すぎる操作で、すぐ2回目を投げないように）
+     */
+    public static HedgingExecutor create(ExecutorService executor, double quantile, double maxExtraLoad,
+                                         Duration minDelay) {
+        return new HedgingExecutor(executor, quantile, maxExtraLoad, minDelay);
+    }
+
+    /**
+     * attempt を実行して結果を返す。遅ければもう1回投げて、先に成功したほうを返す
+     * @throws ExecutionException すべての試行が失敗した（最後の失敗）
+     */
+    public <T> T invoke(String operation, Callable<T> attempt) throws InterruptedException, ExecutionException {
+        Objects.requireNonNull(attempt);
+        Operation op = operations.computeIfAbsent(operation, Operation::new);
+        op.calls.incrementAndGet();
+
+        Callable<T> timed = () -> {
+            long start = System.nanoTime();
+            try {
+                return attempt.call();
+            } finally {
+                op.record(System.nanoTime() - start);
+            }
+        };
+        CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        List<Future<T>> attempts = new ArrayList<>(2);
+        attempts.add(completion.submit(timed));
+        try {
+            Future<T> done;
+            long delay = op.hedgeDelayNanos();
+            if (delay < 0) {
+                done = completion.take();
+            } else {
+                done = completion.poll(delay, TimeUnit.NANOSECONDS);
+                if (done == null && op.tryAcquireHedge()) {
+                    attempts.add(completion.submit(timed));
+                }
+            }
+            int remaining = attempts.size();
+            while (true) {
+                if (done == null) {
+                    done = completion.take();
+                }
+                remaining--;
+                try {
+                    T value = done.get();
+                    if (done != attempts.get(0)) {
+                        op.hedgeWins.incrementAndGet();
+                    }
+                    return value;
+                } catch (ExecutionException e) {
+                    if (remaining == 0) {
+                        throw e;
+                    }
+                    done = null;
+                }
+            }
+        } finally {
+            for (Future<T> future : attempts) {
+                if (future.cancel(true)) {
+                    op.cancelled.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    // 今のヘッジまでの待ち時間（ウォームアップ中・ヘッジしない設定なら null）
+    public Duration hedgeDelay(String operation) {
+        Operation op = operations.get(operation);
+        long delay = op == null ? -1 : op.hedgeDelayNanos();
+        return delay < 0 ? null : Duration.ofNanos(delay);
+    }
+
+    public Stats stats(String operation) {
+        Operation op = operations.get(operation);
+        if (op == null) {
+            return new Stats(operation, 0, 0, 0, 0, null, new LatencyHistogram());
+        }
+        return new Stats(operation, op.calls.get(), op.hedges.get(), op.hedgeWins.get(), op.cancelled.get(),
+            hedgeDelay(operation), op.latency);
+    }
+
+    // 操作ごとの記録
+    private final class Operation {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong hedges = new AtomicLong();
+        final AtomicLong hedgeWins = new AtomicLong();
+        final AtomicLong cancelled = new AtomicLong();
+        // 今までに記録した件数（ヒストグラムは半分にされるし、count() は軽くないので別に数える）
+        final AtomicLong samples = new AtomicLong();
+        // ヘッジまでの待ち時間（ヘッジしないなら -1）。record() が DELAY_REFRESH 件ごとに計算し直す
+        private volatile long hedgeDelayNanos = -1;
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos) {
+            latency.record(nanos);
+            long n = samples.incrementAndGet();
+            // 件数ごとに半分にするので、ロックも count()（箱を全部なめる）もいらない
+            if (n % DECAY_INTERVAL == 0) {
+                latency.halve();
+            }
+            if (maxExtraLoad > 0 && (n == WARMUP_SAMPLES || (n > WARMUP_SAMPLES && n % DELAY_REFRESH == 0))) {
+                hedgeDelayNanos = Math.max(minDelayNanos, latency.valueAtQuantile(quantile));
+            }
+        }
+
+        // ヘッジしないなら -1
+        long hedgeDelayNanos() {
+            return hedgeDelayNanos;
+        }
+
+        boolean tryAcquireHedge() {
+            while (true) {
+                long sent = hedges.get();
+                if (sent + 1 > maxExtraLoad * calls.get()) {
+                    return false;
+                }
+                if (hedges.compareAndSet(sent, sent + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * 操作ごとの集計
+     */
+    public static final class Stats {
+        public final String operation;
+        public final long calls;
+        public final long hedges;
+        // ヘッジのほうが先に返ってきた回数
+        public final long hedgeWins;
+        public final long cancelled;
+        public final Duration hedgeDelay;
+        public final LatencyHistogram attemptLatency;
+
+        Stats(String operation, long calls, long hedges, long hedgeWins, long cancelled, Duration hedgeDelay,
+              LatencyHistogram attemptLatency) {
+            this.operation = operation;
+            this.calls = calls;
+            this.hedges = hedges;
+            this.hedgeWins = hedgeWins;
+            this.cancelled = cancelled;
+            this.hedgeDelay = hedgeDelay;
+            this.attemptLatency = attemptLatency;
+        }
+
+        // 呼び出し1回あたりの追加の試行（0.05 なら 5% 多く呼んだ）
+        public double extraLoad() {
+            return calls == 0 ? 0 : (double) hedges / calls;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: calls=%d, hedges=%d (%.1f%%), hedgeWins=%d, cancelled=%d, hedgeDelay=%s%n"
+                    + "  試行のレイテンシ: %s",
+                operation, calls, hedges, extraLoad() * 100, hedgeWins, cancelled,
+                hedgeDelay == null ? "-" : String.format("%.2fms", hedgeDelay.toNanos() / 1e6), attemptLatency);
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package app;
+
+import app.metrics.ExecutorMetricsMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * ほかの ExecutorService をくるんで、待ち時間・実行時間などを数える
+ *
+ * 「タスクが遅い」と言っても、キューで順番を待っていた（スレッドが足りない）のか、動き出してから遅かった
+ * （タスク自体が重い）のかで、直し方が違う。ThreadPoolExecutor はどちらも教えてくれない。
+ *
+ *   InstrumentedExecutor pool = InstrumentedExecutor.wrap("orders", Executors.newFixedThreadPool(8))
+ *       .registerMBean()                                                   // jconsole で見られる
+ *       .startReporting(Duration.ofSeconds(10), System.out::println);      // 10秒ごとに、その10秒の分を表示
+ *   pool.submit(() -> handle(request));
+ *   InstrumentedExecutor.Snapshot now = pool.snapshot();                   // いつでも取れる
+ *
+ * 数えるもの:
+ *   - 待ち時間（submit してから動き出すまで）と実行時間のヒストグラム（LatencyHistogram。ロックなし）
+ *   - 受け付けたときに前に並んでいたタスク数（キューの長さ）のヒストグラム（DEPTH_SAMPLE 件に1件だけ）
+ *   - 受け付けた数・終わった数・失敗した数・断られた数・今動いている数（と最大）・今並んでいる数
+ * 1タスクあたりの追加の仕事は System.nanoTime() 3回と、ヒストグラム2つ・LongAdder 3つの更新だけ。
+ * 複数のスレッドが同じ AtomicLong を増減すると取り合いになるので、数えるのは「受け付けた・動き出した・終わった」の
+ * 3つの LongAdder だけにして、今動いている数・今並んでいる数はその差から出す。
+ * 差を出すには LongAdder を足し合わせる必要があるので、並んでいた数のヒストグラムは DEPTH_SAMPLE 件に1件だけ取る。
+ * 最大の同時実行数は、タスクが動き出すたびに差を見て更新する（間引くと、件数が少ないときに 0 のままになる）。
+ *
+ * 断られた（RejectedExecutionException）ときは数えてからそのまま投げる。
+ * 終わった数には失敗したタスクも入る（ThreadPoolExecutor.getCompletedTaskCount() と同じ）。
+ */
+public final class InstrumentedExecutor extends AbstractExecutorService implements ExecutorMetricsMXBean {
+    // 並んでいた数は、この件数に1件だけ見る（2のべき乗）
+    static final int DEPTH_SAMPLE = 16;
+
+    private final String name;
+    private final ExecutorService delegate;
+
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    private final LatencyHistogram queueDepthAtSubmit = new LatencyHistogram();
+    // 終わった数は runTime の件数と同じなので、別には数えない
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder finished = new LongAdder();
+    // shutdownNow() で動かずに返したタスク
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    private ObjectName mbeanName;
+    private ScheduledExecutorService reporter;
+
+    private InstrumentedExecutor(String name, ExecutorService delegate) {
+        this.name = Objects.requireNonNull(name);
+        this.delegate = Objects.requireNonNull(delegate);
+    }
+
+    public static InstrumentedExecutor wrap(String name, ExecutorService delegate) {
+        return new InstrumentedExecutor(name, delegate);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    private static boolean sampled() {
+        return (ThreadLocalRandom.current().nextInt() & (DEPTH_SAMPLE - 1)) == 0;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Objects.requireNonNull(command);
+        if (sampled()) {
+            // 自分より前に並んでいる数（渡す前に見る）
+            queueDepthAtSubmit.record(queued());
+        }
+        Task task = new Task(command, System.nanoTime());
+        // 渡す前に数える（先に数えないと、終わった数が受け付けた数を追い越すことがある）
+        submitted.increment();
+        try {
+            delegate.execute(task);
+        } catch (RejectedExecutionException e) {
+            submitted.decrement();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    // 受け付けてまだ動き出していない数（差を取るので目安。動き出した側を先に読んで、負にならないようにする）
+    private long queued() {
+        long left = started.sum() + discarded.sum();
+        return Math.max(0, submitted.sum() - left);
+    }
+
+    // 今動いている数
+    private int active() {
+        long done = finished.sum();
+        return (int) Math.max(0, started.sum() - done);
+    }
+
+    private int samplePeakActive() {
+        int now = active();
+        if (now > peakActive.get()) {
+            peakActive.accumulateAndGet(now, Math::max);
+        }
+        return now;
+    }
+
+    private final class Task implements Runnable {
+        final Runnable command;
+        final long enqueuedAt;
+
+        Task(Runnable command, long enqueuedAt) {
+            this.command = command;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            started.increment();
+            queueWait.record(start - enqueuedAt);
+            // 最大は毎回見る（間引くと、数件しか動かないときに一度も見ずに 0 のままになる）
+            samplePeakActive();
+            boolean ok = false;
+            try {
+                command.run();
+                ok = !failedInside(command);
+            } finally {
+                runTime.record(System.nanoTime() - start);
+                finished.increment();
+                if (!ok) {
+                    failed.increment();
+                }
+            }
+        }
+    }
+
+    // submit() で渡したタスクは FutureTask が例外を握りつぶすので、終わった Future から取り出して確かめる
+    private static boolean failedInside(Runnable command) {
+        if (!(command instanceof Future)) {
+            return false;
+        }
+        Future<?> future = (Future<?>) command;
+        if (!future.isDone() || future.isCancelled()) {
+            return false;
+        }
+        try {
+            future.get();
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (InterruptedException | CancellationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 今までの分をまとめて写し取る
+     * 2つの差（later.since(earlier)）で、その間の分だけになる
+     */
+    public Snapshot snapshot() {
+        return snapshot(false);
+    }
+
+    // interval なら、ヒストグラムの「前回からの最大」を 0 に戻す（レポーターだけが使う）
+    private Snapshot snapshot(boolean interval) {
+        LatencyHistogram.Snapshot wait = interval ? queueWait.intervalSnapshot() : queueWait.snapshot();
+        LatencyHistogram.Snapshot run = interval ? runTime.intervalSnapshot() : runTime.snapshot();
+        LatencyHistogram.Snapshot depth = interval ? queueDepthAtSubmit.intervalSnapshot() : queueDepthAtSubmit.snapshot();
+        int active = samplePeakActive();
+        return new Snapshot(name, System.nanoTime(), 0, submitted.sum(), run.count(), failed.sum(),
+            rejected.sum(), active, peakActive.get(), queued(), wait, run, depth);
+    }
+
+    /**
+     * period ごとに、その間の分の Snapshot を listener に渡す（daemon スレッド1本）
+     * shutdown() / shutdownNow() / stopReporting() で止まる
+     */
+    public synchronized InstrumentedExecutor startReporting(Duration period, Consumer<Snapshot> listener) {
+        Objects.requireNonNull(listener);
+        stopReporting();
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+        Snapshot[] previous = {snapshot(true)};
+        long nanos = period.toNanos();
+        reporter.scheduleAtFixedRate(() -> {
+            Snapshot current = snapshot(true);
+            Snapshot interval = current.since(previous[0]);
+            previous[0] = current;
+            listener.accept(interval);
+        }, nanos, nanos, TimeUnit.NANOSECONDS);
+        return this;
+    }
+
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * プラットフォームの MBeanServer に app:type=ExecutorMetrics,name=名前 で登録する
+     * shutdown() / shutdownNow() で登録を外す
+     */
+    public synchronized InstrumentedExecutor registerMBean() {
+        if (mbeanName != null) {
+            return this;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName("app:type=ExecutorMetrics,name=" + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+            mbeanName = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("could not register MBean for " + name, e);
+        }
+        return this;
+    }
+
+    // 登録した名前（ObjectName の文字列）。登録していなければ null
+    public synchronized String mbeanName() {
+        return mbeanName == null ? null : mbeanName.getCanonicalName();
+    }
+
+    private synchronized void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } catch (JMException e) {
+            // もう外れている
+        }
+        mbeanName = null;
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+        stopReporting();
+        unregisterMBean();
+    }
+
+    // 返すのは、まだ動いていなかった元のタスク
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> notStarted = new ArrayList<>();
+        for (Runnable runnable : delegate.shutdownNow()) {
+            if (runnable instanceof InstrumentedExecutor.Task) {
+                discarded.increment();
+                notStarted.add(((Task) runnable).command);
+            } else {
+                notStarted.add(runnable);
+            }
+        }
+        stopReporting();
+        unregisterMBean();
+        return notStarted;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    // ---- ExecutorMetricsMXBean ----
+
+    @Override
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return runTime.count();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return active();
+    }
+
+    @Override
+    public int getPeakActiveCount() {
+        samplePeakActive();
+        return peakActive.get();
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return queued();
+    }
+
+    @Override
+    public long getQueueWaitP50Micros() {
+        return queueWait.valueAtQuantile(0.50) / 1_000;
+    }
+
+    @Override
+    public long getQueueWaitP99Micros() {
+        return queueWait.valueAtQuantile(0.99) / 1_000;
+    }
+
+    @Override
+    public long getQueueWaitMaxMicros() {
+        return queueWait.max() / 1_000;
+    }
+
+    @Override
+    public long getRunTimeP50Micros() {
+        return runTime.valueAtQuantile(0.50) / 1_000;
+    }
+
+    @Override
+    public long getRunTimeP99Micros() {
+        return runTime.valueAtQuantile(0.99) / 1_000;
+    }
+
+    @Override
+    public long getRunTimeMaxMicros() {
+        return runTime.max() / 1_000;
+    }
+
+    @Override
+    public long getQueueDepthP99() {
+        return queueDepthAtSubmit.valueAtQuantile(0.99);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * ある時点（または2つの時点の間）の値
+     */
+    public static final class Snapshot {
+        public final String name;
+        // since() で作ったときは、その間の長さ。snapshot() で作ったときは 0
+        public final Duration interval;
+        public final long submitted;
+        public final long completed;
+        public final long failed;
+        public final long rejected;
+        // 以下3つは写し取った時点の値（since() でも差は取らない）
+        public final int active;
+        public final int peakActive;
+        public final long queueDepth;
+        public final LatencyHistogram.Snapshot queueWait;
+        public final LatencyHistogram.Snapshot runTime;
+        public final LatencyHistogram.Snapshot queueDepthAtSubmit;
+        private final long takenAt;
+
+        Snapshot(String name, long takenAt, long intervalNanos, long submitted, long completed, long failed,
+                 long rejected, int active, int peakActive, long queueDepth, LatencyHistogram.Snapshot queueWait,
+                 LatencyHistogram.Snapshot runTime, LatencyHistogram.Snapshot queueDepthAtSubmit) {
+            this.name = name;
+            this.takenAt = takenAt;
+            this.interval = Duration.ofNanos(intervalNanos);
+            this.submitted = submitted;
+            this.completed = completed;
+            this.failed = failed;
+            this.rejected = rejected;
+            this.active = active;
+            this.peakActive = peakActive;
+            this.queueDepth = queueDepth;
+            this.queueWait = queueWait;
+            this.runTime = runTime;
+            this.queueDepthAtSubmit = queueDepthAtSubmit;
+        }
+
+        // earlier から今までの分（earlier は同じ executor の、前に取った snapshot）
+        public Snapshot since(Snapshot earlier) {
+            return new Snapshot(name, takenAt, takenAt - earlier.takenAt, submitted - earlier.submitted,
+                completed - earlier.completed, failed - earlier.failed, rejected - earlier.rejected,
+                active, peakActive, queueDepth, queueWait.since(earlier.queueWait), runTime.since(earlier.runTime),
+                queueDepthAtSubmit.since(earlier.queueDepthAtSubmit));
+        }
+
+        // 1秒あたりに終わったタスク数（since() で作ったときだけ）
+        public double completedPerSecond() {
+            return interval.isZero() ? 0 : completed / (interval.toNanos() / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s%s: submitted=%d, completed=%d%s, failed=%d, rejected=%d, active=%d (peak %d), queued=%d%n"
+                    + "  待ち時間 p50=%.2fms p99=%.2fms max=%.2fms / 実行時間 p50=%.2fms p99=%.2fms max=%.2fms"
+                    + " / 並んでいた数 p50=%d p99=%d",
+                name, interval.isZero() ? "" : String.format(" (%.1fs)", interval.toNanos() / 1e9),
+                submitted, completed, interval.isZero() ? "" : String.format(" (%.0f/s)", completedPerSecond()),
+                failed, rejected, active, peakActive, queueDepth,
+                queueWait.valueAtQuantile(0.50) / 1e6, queueWait.valueAtQuantile(0.99) / 1e6, queueWait.max() / 1e6,
+                runTime.valueAtQuantile(0.50) / 1e6, runTime.valueAtQuantile(0.99) / 1e6, runTime.max() / 1e6,
+                queueDepthAtSubmit.valueAtQuantile(0.50), queueDepthAtSubmit.valueAtQuantile(0.99));
+        }
+    }
+}
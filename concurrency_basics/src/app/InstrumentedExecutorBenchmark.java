@@ -0,0 +1,130 @@
+package app;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * InstrumentedExecutor の1タスクあたりの追加コストと、実際の見え方
+ *
+ * 1. 追加コスト: その場で実行するだけの executor（スレッドの受け渡しなし）で、空のタスクを execute() する。
+ *    くるんだものとくるまないものの ns/op の差が、計測にかかる分。1スレッドと THREADS スレッド（カウンタの取り合いあり）
+ *    そのうち System.nanoTime() 3回の分は環境しだい（仮想マシンだと1回 40ns くらいかかることもある）なので、別に測って並べる
+ * 2. 見え方: newFixedThreadPool(4) に 5ms のタスクを一度に TASKS 個投げる（スレッドが足りない状態）。
+ *    100ms ごとのレポートと最後の snapshot で、「実行時間は 5ms なのに待ち時間が長い = スレッドが足りない」と分かる。
+ *    JMX に登録した値も MBeanServer から読んでみる
+ *
+ * 実行方法:
+ *   java -p out -m app/app.InstrumentedExecutorBenchmark [quick]
+ */
+public class InstrumentedExecutorBenchmark {
+    static final int THREADS = 4;
+    static final int TASKS = 200;
+    static final long TASK_MILLIS = 5;
+
+    public static void main(String[] args) throws Exception {
+        boolean quick = args.length > 0 && args[0].equals("quick");
+        Bench bench = quick ? new Bench(2, 3, 200) : Bench.defaults();
+
+        System.out.println("1. 1タスクあたりの追加コスト（その場で実行する executor、空のタスク）");
+        List<Bench.Result> results = Bench.newResults();
+        Runnable noop = () -> Bench.consume(1);
+        for (int threads : new int[] {1, THREADS}) {
+            Map<String, Object> params = new LinkedHashMap<>();
+            params.put("threads", threads);
+            ExecutorService plain = new InlineExecutor();
+            InstrumentedExecutor instrumented = InstrumentedExecutor.wrap("inline-" + threads, new InlineExecutor());
+            results.add(bench.runConcurrent("inline", params, threads, t -> () -> {
+                plain.execute(noop);
+                return 1;
+            }));
+            results.add(bench.runConcurrent("instrumented(inline)", params, threads, t -> () -> {
+                instrumented.execute(noop);
+                return 1;
+            }));
+        }
+        results.add(bench.run("System.nanoTime() x3", new LinkedHashMap<>(),
+            () -> System.nanoTime() + System.nanoTime() + System.nanoTime()));
+        Bench.printAll(results);
+
+        System.out.printf("%n2. newFixedThreadPool(4) に %dms のタスクを %d 個いっぺんに投げる%n", TASK_MILLIS, TASKS);
+        InstrumentedExecutor pool = InstrumentedExecutor.wrap("fixed-4", Executors.newFixedThreadPool(4))
+            .registerMBean()
+            .startReporting(Duration.ofMillis(100), snapshot -> System.out.println("[100ms ごと] " + snapshot));
+        try {
+            CountDownLatch done = new CountDownLatch(TASKS);
+            for (int i = 0; i < TASKS; i++) {
+                pool.execute(() -> {
+                    try {
+                        Thread.sleep(TASK_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+            // 最後のタスクの後始末（カウンタ更新）が終わるのを待つ
+            while (pool.getActiveCount() > 0) {
+                Thread.sleep(1);
+            }
+            System.out.println("[全体] " + pool.snapshot());
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName mbean = new ObjectName(pool.mbeanName());
+            System.out.printf("JMX %s: CompletedCount=%s, QueueWaitP99Micros=%s, RunTimeP99Micros=%s%n", mbean,
+                server.getAttribute(mbean, "CompletedCount"),
+                server.getAttribute(mbean, "QueueWaitP99Micros"),
+                server.getAttribute(mbean, "RunTimeP99Micros"));
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    // 呼んだスレッドでその場で実行する（スレッドの受け渡しのコストを混ぜないため）
+    static final class InlineExecutor extends AbstractExecutorService {
+        private volatile boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return shutdown;
+        }
+    }
+}
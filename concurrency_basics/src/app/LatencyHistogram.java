@@ -0,0 +1,204 @@
+package app;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * レイテンシ（ns）のヒストグラム。p95 などを近似で出す
+ *
+ * 値をそのまま全部とっておくと、呼び出しが増えるほどメモリも並べ替えの時間も増える。
+ * ここでは値を「2のべき乗ごとの区間を、さらに 8 等分した箱」に数えるだけにする（HdrHistogram と同じ考え方）。
+ *   - 1ns 〜 約 292 年まで 488 個の箱。誤差は箱の幅 = 値の 1/8（12.5%）まで
+ *   - record() はロックなし（箱の加算1回 + 最大を超えたときだけ CAS）。複数スレッドから同時に呼んでよい
+ *     件数は別に数えず、count() のときに箱を足し合わせる（record() を軽くするため）
+ *   - snapshot() で箱の中身を写し取れる。2つの snapshot の差（since()）で「この10秒間の p99」も出せる
+ *     最大は「前回の intervalSnapshot() から」の分も持っているので、差の最大も古い値にならない
+ *   - 値は ns でなくてもよい（キューの長さなど、0 以上の long なら何でも数えられる）
+ *
+ * 箱の番号: 0〜7 はそのまま 0〜7ns。8 以上は、一番上のビットの位置（e）と、その下 3 ビット（m）から
+ *   8 + (e - 3) × 8 + m
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    // record() が更新するのは recentMax だけ。intervalSnapshot() が 0 に戻すときに max へ移す
+    private final AtomicLong recentMax = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        // ほとんどの値は最大を超えないので、読むだけで済ませる（毎回 CAS すると書き込みの取り合いになる）
+        if (value > recentMax.get()) {
+            recentMax.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int mantissa = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + mantissa;
+    }
+
+    // 箱に入る値の最大
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+        int mantissa = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        long lower = (SUB_BUCKETS + mantissa) * width;
+        return lower + width - 1;
+    }
+
+    // 箱の下限（箱に入る値の最小）
+    static long lowerBoundOf(int bucket) {
+        return bucket < SUB_BUCKETS ? bucket : upperBoundOf(bucket - 1) + 1;
+    }
+
+    // 箱を全部足すので、record() ほど軽くはない
+    public long count() {
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            sum += counts.get(i);
+        }
+        return sum;
+    }
+
+    public long max() {
+        return Math.max(max.get(), recentMax.get());
+    }
+
+    /**
+     * q（0〜1）の分位点。値が入っている箱の上限を返すので、本当の値より最大 12.5% 大きい
+     * まだ何も記録していなければ 0
+     */
+    public long valueAtQuantile(double q) {
+        return snapshot().valueAtQuantile(q);
+    }
+
+    // 今の箱の中身を写し取る（record() と同時に呼んでもよいが、そのあいだの数件は入ったり入らなかったりする）
+    public Snapshot snapshot() {
+        return new Snapshot(copyCounts(), max(), recentMax.get());
+    }
+
+    /**
+     * snapshot() と同じだが、「前回の intervalSnapshot() からの最大」を 0 に戻す
+     * 前回の intervalSnapshot() との差（since()）の最大が、その間の本当の最大になる。
+     * 定期的に差を取る1か所（レポーターなど）だけが呼ぶこと
+     */
+    public Snapshot intervalSnapshot() {
+        long[] copy = copyCounts();
+        long recent = recentMax.getAndSet(0);
+        long lifetime = max.accumulateAndGet(recent, Math::max);
+        return new Snapshot(copy, lifetime, recent);
+    }
+
+    private long[] copyCounts() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * 全部の箱を半分にする（古い値の影響を減らして、最近の傾向に追いつくため）
+     * 切り捨てなので 1 件だけの箱は 0 になる（切り上げだと、まれな外れ値がいつまでも残る）
+     * record() と同時に呼ぶと、そのあいだの数件は半分にされないことがある（近似なので気にしない）
+     */
+    public void halve() {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c;
+            do {
+                c = counts.get(i);
+            } while (!counts.compareAndSet(i, c, c / 2));
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        recentMax.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d, p50=%.2fms, p95=%.2fms, p99=%.2fms, max=%.2fms", count(),
+            valueAtQuantile(0.50) / 1e6, valueAtQuantile(0.95) / 1e6, valueAtQuantile(0.99) / 1e6, max() / 1e6);
+    }
+
+    /**
+     * ある時点の箱の中身（変わらない）
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        // 入っている値の最大（since() の差なら、その間の最大）
+        private final long max;
+        // 前回の intervalSnapshot() からの最大（since() で使う）
+        private final long recentMax;
+
+        Snapshot(long[] counts, long max, long recentMax) {
+            this.counts = counts;
+            this.count = Arrays.stream(counts).sum();
+            this.max = max;
+            this.recentMax = recentMax;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public long valueAtQuantile(double q) {
+            if (q < 0 || q > 1) {
+                throw new IllegalArgumentException("quantile must be in [0, 1]: " + q);
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * earlier から今までに記録された分（earlier は同じヒストグラムの、前に取った snapshot）
+         * 最大は recentMax を、差の中で一番上の箱に収まるように丸めたもの。
+         * earlier が前回の intervalSnapshot() なら正確で、そうでなくても箱の幅（12.5%）以上はずれない
+         */
+        public Snapshot since(Snapshot earlier) {
+            long[] diff = new long[BUCKETS];
+            int top = -1;
+            for (int i = 0; i < BUCKETS; i++) {
+                // halve() / reset() をはさむと負になるので 0 にする
+                diff[i] = Math.max(0, counts[i] - earlier.counts[i]);
+                if (diff[i] > 0) {
+                    top = i;
+                }
+            }
+            long intervalMax = top < 0 ? 0 : Math.max(lowerBoundOf(top), Math.min(upperBoundOf(top), recentMax));
+            return new Snapshot(diff, intervalMax, intervalMax);
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package app;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.stream.Collectors;
 
 public class Main {
     public static void main(String[] args) {
@@ -124,6 +126,30 @@ public class Main {
         cached.shutdown();
         awaitTermination(cached);
 
+        // (d) VirtualThreadExecutor: タスクごとに仮想スレッド（同時実行数はセマフォで制限）
+        VirtualThreadExecutor virtual = VirtualThreadExecutor.bounded(2)
+            .detectPinning(Duration.ofMillis(20), pinned -> System.out.println("  " + pinned));
+        System.out.println("\nVirtualThreadExecutor(同時2): 仮想スレッド"
+            + (virtual.isVirtual() ? "" : "がないので OS スレッドで代用"));
+        Object monitor = new Object();
+        for (int i = 0; i < 3; i++) {
+            final int taskId = i;
+            virtual.submit(() -> {
+                // synchronized の中で sleep すると仮想スレッドはピン留めされる（検出されて表示される）
+                synchronized (monitor) {
+                    try {
+                        Thread.sleep(30);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                System.out.println("  Virtual Task " + taskId + " - " + Thread.currentThread());
+            });
+        }
+        virtual.shutdown();
+        awaitTermination(virtual);
+        System.out.println("  " + virtual);
+
         System.out.println();
     }
 
@@ -172,6 +198,40 @@ public class Main {
             awaitTermination(executor);
         }
 
+        // 発展: AsyncPipeline（get() で待たずに、「終わったら次」とつなぐ）
+        System.out.println("\nAsyncPipeline: get() で待たずにつなぐ");
+        try (AsyncPipeline pipeline = AsyncPipeline.create(2, 100)) {
+            // ユーザーと注文を並行して取得 → 両方そろったら価格を取得。待っている間はどのスレッドも使わない
+            CompletableFuture<String> page = pipeline.compose(
+                pipeline.combine(
+                    pipeline.later(Duration.ofMillis(300), () -> "ユーザーA"),
+                    pipeline.later(Duration.ofMillis(500), () -> 3),
+                    (user, orders) -> user + "の注文" + orders + "件"),
+                summary -> pipeline.later(Duration.ofMillis(200), () -> summary + " 合計4500円"));
+            CompletableFuture<Void> printed = AsyncPipeline.withTimeout(page, Duration.ofSeconds(1))
+                .thenAccept(result -> System.out.println("  結果: " + result));
+
+            // 期限（orTimeout）を過ぎたら TimeoutException で失敗する
+            CompletableFuture<Void> timedOut = AsyncPipeline
+                .withTimeout(pipeline.later(Duration.ofSeconds(2), () -> "遅い処理"), Duration.ofMillis(500))
+                .handle((result, failure) -> {
+                    System.out.println("  期限切れ: " + failure);
+                    return null;
+                });
+
+            // 複数の結果をまとめる（1つでも失敗したらすぐ失敗）
+            List<CompletableFuture<Integer>> prices = new ArrayList<>();
+            for (int i = 1; i <= 3; i++) {
+                int price = i * 100;
+                prices.add(pipeline.later(Duration.ofMillis(100 * i), () -> price));
+            }
+            CompletableFuture<Void> summed = AsyncPipeline.allOf(prices, Collectors.summingInt(Integer::intValue))
+                .thenAccept(total -> System.out.println("  allOf の合計: " + total));
+
+            // デモなので、最後にまとめて待つ（ここ以外では待たない）
+            CompletableFuture.allOf(printed, timedOut, summed).join();
+        }
+
         System.out.println();
     }
 
@@ -274,6 +334,53 @@ public class Main {
             awaitTermination(executor2);
         }
 
+        // 発展: TaskScope（1つ失敗したら残りを止める。全体の期限もつけられる）
+        System.out.println("\nTaskScope(FAIL_FAST): 1つ失敗したら残りを止める");
+        try (TaskScope<String> scope = TaskScope.failFast()) {
+            scope.fork("user", () -> {
+                Thread.sleep(300);
+                return "ユーザー";
+            });
+            scope.fork("order", () -> {
+                Thread.sleep(100);
+                throw new IllegalStateException("注文サービスがエラー");
+            });
+            scope.fork("slow", () -> {
+                Thread.sleep(1500);
+                return "遅いタスク";
+            });
+            scope.join(Duration.ofSeconds(1));
+            try {
+                scope.throwIfFailed();
+            } catch (ExecutionException e) {
+                System.out.println("  失敗: " + e.getMessage() + " (" + e.getCause().getMessage() + ")");
+            }
+            // slow は待たずに止められている（1500ms かからない）
+            System.out.print(scope.timings());
+        } catch (InterruptedException | TimeoutException e) {
+            e.printStackTrace();
+        }
+
+        // 発展: HedgingExecutor（遅いときだけ2回目を投げる。invokeAny のように最初から全部は投げない）
+        System.out.println("\nHedgingExecutor: p95 を過ぎたら2回目を投げる");
+        ExecutorService executor3 = Executors.newCachedThreadPool();
+        HedgingExecutor hedging = HedgingExecutor.create(executor3);
+        try {
+            for (int i = 0; i < 200; i++) {
+                hedging.invoke("lookup", () -> {
+                    // ふだんは 1ms。5% の確率で 50ms 詰まる
+                    Thread.sleep(ThreadLocalRandom.current().nextInt(100) < 5 ? 50 : 1);
+                    return "ok";
+                });
+            }
+            System.out.println("  " + hedging.stats("lookup"));
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            executor3.shutdown();
+            awaitTermination(executor3);
+        }
+
         System.out.println();
     }
 
@@ -387,6 +494,29 @@ public class Main {
 
         awaitTermination(executor2);
 
+        // 発展: InstrumentedExecutor（待ち時間と実行時間を分けて数える）
+        System.out.println("\nInstrumentedExecutor: スレッド2本に 100ms のタスクを6個（1つは失敗）");
+        InstrumentedExecutor executor3 = InstrumentedExecutor.wrap("demo", Executors.newFixedThreadPool(2));
+        for (int i = 0; i < 6; i++) {
+            final int taskId = i;
+            executor3.submit(() -> {
+                Thread.sleep(100);
+                if (taskId == 5) {
+                    throw new IllegalStateException("失敗するタスク");
+                }
+                return taskId;
+            });
+        }
+        executor3.shutdown();
+        awaitTermination(executor3);
+        try {
+            executor3.submit(() -> System.out.println("実行されない"));
+        } catch (RejectedExecutionException e) {
+            // 断られた数も数える
+        }
+        // 実行時間は 100ms なのに、待ち時間は 0〜200ms（スレッドが足りない）
+        System.out.println("  " + executor3.snapshot());
+
         System.out.println();
     }
 
@@ -0,0 +1,120 @@
+package app;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * 仮想スレッドの「ピン留め」を見つける
+ *
+ * 仮想スレッドは、ブロックすると OS スレッド（キャリアスレッド）を手放して、ほかの仮想スレッドに譲る。
+ * ただし synchronized の中（やネイティブメソッドの中）でブロックすると手放せず、キャリアスレッドごと止まる。
+ * これがピン留め。キャリアスレッドは CPU 数ぶんしかないので、多発すると仮想スレッドの利点が消える。
+ *
+ * JVM はピン留めが起きると JFR の jdk.VirtualThreadPinned イベントを出すので、それを RecordingStream で受け取る。
+ *
+ *   try (PinningDetector detector = PinningDetector.start(Duration.ofMillis(20), System.err::println)) {
+ *       ...
+ *   }
+ *
+ * 仮想スレッドがない JDK ではイベントが来ないだけ（エラーにはならない）。
+ * 直し方は、ブロックする処理を synchronized の外に出すか、ReentrantLock に置き換える。
+ */
+public final class PinningDetector implements AutoCloseable {
+    static final String EVENT = "jdk.VirtualThreadPinned";
+    // スタックトレースのうち、報告に残すフレーム数
+    static final int FRAMES = 8;
+
+    private final RecordingStream stream;
+    private final List<Pinned> events = new CopyOnWriteArrayList<>();
+
+    private PinningDetector(Duration threshold, Consumer<Pinned> listener) {
+        this.stream = new RecordingStream();
+        stream.enable(EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(EVENT, event -> {
+            Pinned pinned = Pinned.from(event);
+            events.add(pinned);
+            listener.accept(pinned);
+        });
+    }
+
+    /**
+     * 見張りを始める（JFR の記録を裏で開始する）
+     * @param threshold これ以上続いたピン留めだけを報告する
+     */
+    public static PinningDetector start(Duration threshold, Consumer<Pinned> listener) {
+        Objects.requireNonNull(threshold);
+        Objects.requireNonNull(listener);
+        PinningDetector detector = new PinningDetector(threshold, listener);
+        detector.stream.startAsync();
+        return detector;
+    }
+
+    // 仮想スレッドがある JDK か（ない JDK ではイベントは来ない）
+    public static boolean isSupported() {
+        return VirtualThreadExecutor.virtualThreadsAvailable();
+    }
+
+    // これまでに見つけたピン留め
+    public List<Pinned> events() {
+        return Collections.unmodifiableList(events);
+    }
+
+    public int count() {
+        return events.size();
+    }
+
+    @Override
+    public void close() {
+        stream.close();
+    }
+
+    /**
+     * 1回のピン留め
+     * frames はブロックした場所から呼び出し元に向かう順（先頭がいちばん内側）
+     */
+    public static final class Pinned {
+        public final String thread;
+        public final Duration duration;
+        public final List<String> frames;
+
+        Pinned(String thread, Duration duration, List<String> frames) {
+            this.thread = thread;
+            this.duration = duration;
+            this.frames = frames;
+        }
+
+        static Pinned from(RecordedEvent event) {
+            String thread = event.getThread() == null ? "?" : event.getThread().getJavaName();
+            List<String> frames = new ArrayList<>();
+            if (event.getStackTrace() != null) {
+                for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+                    if (frames.size() == FRAMES) {
+                        break;
+                    }
+                    frames.add(frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                        + ":" + frame.getLineNumber());
+                }
+            }
+            return new Pinned(thread, event.getDuration(), Collections.unmodifiableList(frames));
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format("ピン留め: %s が %dms ブロック",
+                thread, duration.toMillis()));
+            for (String frame : frames) {
+                sb.append("\n    at ").append(frame);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package app;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 子タスクをまとめて扱うスコープ（Java 21 の StructuredTaskScope 風）
+ *
+ * invokeAll() は1つが失敗しても全部終わるまで待つ。invokeAny() は1つ成功すれば返るが、
+ * 全体の期限（「この画面は 200ms 以内に返したい」）を途中で変えたり、どの子タスクに何ms かかったかを見たりはできない。
+ *
+ *   try (TaskScope<String> scope = TaskScope.failFast()) {
+ *       TaskScope.Subtask<String> user  = scope.fork("user", () -> fetchUser());
+ *       TaskScope.Subtask<String> order = scope.fork("order", () -> fetchOrder());
+ *       scope.join(Duration.ofMillis(200));   // 期限を過ぎたら残りを止めて TimeoutException
+ *       scope.throwIfFailed();                // 1つでも失敗していたら ExecutionException
+ *       return user.get() + order.get();
+ *   }
+ *
+ * 方針（Policy）:
+ *   - ALL           : 全部終わるまで待つ（invokeAll と同じ）
+ *   - FAIL_FAST     : 1つ失敗したら残りを止めて、すぐ join() から戻る
+ *   - FIRST_SUCCESS : 1つ成功したら残りを止めて、すぐ join() から戻る（result() で受け取る）
+ *
+ * 止める = Future.cancel(true) で割り込む。close() は止めた子タスクが実際に終わるまで待つ
+ * （スコープを抜けたあとに子タスクが残らないようにするため。割り込みを無視するタスクだと close() が待たされる）。
+ *
+ * fork() / join() / close() はスコープを作ったスレッドから呼ぶ。
+ *
+ * @param <T> 子タスクの結果の型
+ */
+public final class TaskScope<T> implements AutoCloseable {
+
+    public enum Policy {
+        ALL,
+        FAIL_FAST,
+        FIRST_SUCCESS
+    }
+
+    public enum State {
+        RUNNING,
+        SUCCESS,
+        FAILED,
+        // スコープが止めた（先に失敗・成功した子がいた、期限切れ、close()）
+        CANCELLED
+    }
+
+    private final Policy policy;
+    private final ExecutorService executor;
+    // 自分で作った executor なら close() で片付ける
+    private final boolean ownsExecutor;
+    private final List<Subtask<T>> subtasks = new ArrayList<>();
+    private final long createdAt = System.nanoTime();
+
+    // 以下は this で守る
+    private int pending;
+    // 実際にまだ動いている（または動き出すかもしれない）子タスク
+    private int live;
+    private boolean shutdown;
+    private Subtask<T> firstFailure;
+    private Subtask<T> firstSuccess;
+    private boolean closed;
+
+    private TaskScope(Policy policy, ExecutorService executor, boolean ownsExecutor) {
+        this.policy = Objects.requireNonNull(policy);
+        this.executor = Objects.requireNonNull(executor);
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    // 子タスクごとに仮想スレッド（なければ OS スレッド）を使う
+    public static <T> TaskScope<T> open(Policy policy) {
+        return new TaskScope<>(policy, VirtualThreadExecutor.unbounded(), true);
+    }
+
+    // 子タスクを executor で動かす（executor は閉じない）
+    public static <T> TaskScope<T> open(Policy policy, ExecutorService executor) {
+        return new TaskScope<>(policy, executor, false);
+    }
+
+    public static <T> TaskScope<T> failFast() {
+        return open(Policy.FAIL_FAST);
+    }
+
+    public static <T> TaskScope<T> firstSuccess() {
+        return open(Policy.FIRST_SUCCESS);
+    }
+
+    public Subtask<T> fork(Callable<? extends T> task) {
+        return fork("subtask-" + subtasks.size(), task);
+    }
+
+    /**
+     * 子タスクを始める
+     * もう止まっているスコープ（失敗・成功が決まった後）なら、動かさずに CANCELLED のまま返す
+     * executor が受け付けなかったら（RejectedExecutionException）、その例外で FAILED にして返す
+     */
+    public Subtask<T> fork(String name, Callable<? extends T> task) {
+        Objects.requireNonNull(task);
+        Subtask<T> subtask = new Subtask<>(name);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("scope is closed");
+            }
+            subtasks.add(subtask);
+            if (shutdown) {
+                subtask.state = State.CANCELLED;
+                return subtask;
+            }
+            pending++;
+            live++;
+        }
+        try {
+            subtask.future = executor.submit(() -> run(subtask, task));
+        } catch (RejectedExecutionException e) {
+            // executor が受け付けなかった。動かなかった子タスクの失敗として扱う（数えた分を戻さないと join() / close() が終わらない）
+            subtask.started.set(true);
+            completed(subtask, State.FAILED, null, e);
+            synchronized (this) {
+                live--;
+                notifyAll();
+            }
+            return subtask;
+        }
+        // submit の間に止められていたら、ここで止める
+        synchronized (this) {
+            if (subtask.state == State.CANCELLED) {
+                cancel(subtask);
+            }
+        }
+        return subtask;
+    }
+
+    private void run(Subtask<T> subtask, Callable<? extends T> task) {
+        if (!subtask.started.compareAndSet(false, true)) {
+            // 動き出す前に止められた（live は止めた側で減らしている）
+            return;
+        }
+        subtask.startedAt = System.nanoTime();
+        try {
+            T value = task.call();
+            completed(subtask, State.SUCCESS, value, null);
+        } catch (Throwable e) {
+            completed(subtask, State.FAILED, null, e);
+        } finally {
+            synchronized (this) {
+                live--;
+                notifyAll();
+            }
+        }
+    }
+
+    private void completed(Subtask<T> subtask, State state, T value, Throwable failure) {
+        List<Subtask<T>> toCancel = null;
+        synchronized (this) {
+            subtask.finishedAt = System.nanoTime();
+            if (subtask.state != State.RUNNING) {
+                // もう止められていた（結果は使わない）
+                return;
+            }
+            subtask.value = value;
+            subtask.failure = failure;
+            // state は最後に書く（get() はロックなしで state → value の順に読む）
+            subtask.state = state;
+            pending--;
+            if (state == State.FAILED && firstFailure == null) {
+                firstFailure = subtask;
+            }
+            if (state == State.SUCCESS && firstSuccess == null) {
+                firstSuccess = subtask;
+            }
+            boolean stop = (policy == Policy.FAIL_FAST && state == State.FAILED)
+                || (policy == Policy.FIRST_SUCCESS && state == State.SUCCESS);
+            if (stop && !shutdown) {
+                toCancel = markCancelled();
+            }
+            notifyAll();
+        }
+        if (toCancel != null) {
+            toCancel.forEach(this::cancel);
+        }
+    }
+
+    // まだ動いている子を CANCELLED にする（this をロックして呼ぶ）
+    private List<Subtask<T>> markCancelled() {
+        shutdown = true;
+        List<Subtask<T>> running = new ArrayList<>();
+        for (Subtask<T> subtask : subtasks) {
+            if (subtask.state == State.RUNNING) {
+                subtask.state = State.CANCELLED;
+                pending--;
+                running.add(subtask);
+            }
+        }
+        return running;
+    }
+
+    private void cancel(Subtask<T> subtask) {
+        Future<?> future = subtask.future;
+        if (future == null) {
+            // まだ submit から戻っていない。fork() 側で止める
+            return;
+        }
+        future.cancel(true);
+        if (subtask.started.compareAndSet(false, true)) {
+            // 動き出す前に止めたので、run() の finally は来ない
+            synchronized (this) {
+                live--;
+                notifyAll();
+            }
+        }
+    }
+
+    // 期限なしで待つ
+    public void join() throws InterruptedException {
+        synchronized (this) {
+            while (pending > 0 && !shutdown) {
+                wait();
+            }
+        }
+    }
+
+    public void join(Duration timeout) throws InterruptedException, TimeoutException {
+        awaitUntil(deadlineNanos(timeout));
+    }
+
+    /**
+     * 全部終わる（FAIL_FAST / FIRST_SUCCESS なら決着がつく）か、期限が来るまで待つ
+     * @throws TimeoutException 期限が来た。まだ動いている子タスクは止める
+     */
+    public void joinUntil(Instant deadline) throws InterruptedException, TimeoutException {
+        awaitUntil(deadlineNanos(Duration.between(Instant.now(), deadline)));
+    }
+
+    private void awaitUntil(long deadlineNanos) throws InterruptedException, TimeoutException {
+        List<Subtask<T>> toCancel;
+        synchronized (this) {
+            while (pending > 0 && !shutdown) {
+                long remaining = deadlineNanos - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            if (pending == 0 || shutdown) {
+                return;
+            }
+            toCancel = markCancelled();
+        }
+        toCancel.forEach(this::cancel);
+        throw new TimeoutException("deadline passed with " + toCancel.size() + " subtask(s) still running");
+    }
+
+    // 期限を nanoTime に直す。ずっと先の期限（Instant.MAX など）は toNanos() があふれるので、待てるだけ待つ
+    private static long deadlineNanos(Duration timeout) {
+        long now = System.nanoTime();
+        long nanos;
+        try {
+            nanos = Math.max(0, timeout.toNanos());
+        } catch (ArithmeticException e) {
+            nanos = timeout.isNegative() ? 0 : Long.MAX_VALUE;
+        }
+        // nanoTime は引き算で比べるので、足してあふれても差が Long.MAX_VALUE 以内なら正しく比べられる
+        return now + Math.min(nanos, Long.MAX_VALUE / 2);
+    }
+
+    // 失敗した子がいれば、最初の失敗を ExecutionException で投げる
+    public synchronized void throwIfFailed() throws ExecutionException {
+        if (firstFailure != null) {
+            throw new ExecutionException(firstFailure.name + " failed", firstFailure.failure);
+        }
+    }
+
+    /**
+     * 最初に成功した子の結果（FIRST_SUCCESS 用）
+     * @throws ExecutionException 成功した子がいない（最初の失敗を原因に持つ）
+     */
+    public synchronized T result() throws ExecutionException {
+        if (firstSuccess != null) {
+            return firstSuccess.value;
+        }
+        throw new ExecutionException("no subtask succeeded", firstFailure == null ? null : firstFailure.failure);
+    }
+
+    public synchronized List<Subtask<T>> subtasks() {
+        return new ArrayList<>(subtasks);
+    }
+
+    // 子タスクごとの時間（スコープを作ってからの開始・終了）
+    public synchronized String timings() {
+        StringBuilder sb = new StringBuilder();
+        for (Subtask<T> subtask : subtasks) {
+            sb.append(String.format("  %-12s %-9s 開始 %6.1fms, かかった時間 %s%n", subtask.name, subtask.state,
+                subtask.startedAt == 0 ? 0 : (subtask.startedAt - createdAt) / 1e6,
+                subtask.finishedAt == 0 || subtask.startedAt == 0
+                    ? "-" : String.format("%.1fms", (subtask.finishedAt - subtask.startedAt) / 1e6)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 残っている子タスクを止めて、実際に終わるまで待つ
+     */
+    @Override
+    public void close() {
+        List<Subtask<T>> toCancel;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toCancel = markCancelled();
+        }
+        toCancel.forEach(this::cancel);
+        boolean interrupted = false;
+        synchronized (this) {
+            while (live > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * fork() した子タスク
+     */
+    public static final class Subtask<T> {
+        public final String name;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile Future<?> future;
+        // 書き込みはスコープのロックの中で
+        private volatile State state = State.RUNNING;
+        private T value;
+        private Throwable failure;
+        private volatile long startedAt;
+        private volatile long finishedAt;
+
+        Subtask(String name) {
+            this.name = name;
+        }
+
+        public State state() {
+            return state;
+        }
+
+        /**
+         * 結果（成功したときだけ）
+         * @throws IllegalStateException 成功していない
+         */
+        public T get() {
+            if (state != State.SUCCESS) {
+                throw new IllegalStateException(name + " is " + state);
+            }
+            return value;
+        }
+
+        public Throwable exception() {
+            return failure;
+        }
+
+        // 動いていた時間（まだ終わっていない・動かなかったなら null）
+        public Duration elapsed() {
+            long start = startedAt;
+            long end = finishedAt;
+            return start == 0 || end == 0 ? null : Duration.ofNanos(end - start);
+        }
+
+        @Override
+        public String toString() {
+            return name + "[" + state + "]";
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package app;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 「待つだけ」のタスクを大量に流したときの比較（仮想スレッド vs スレッドプール）
+ *
+ * TASKS 個のタスクがそれぞれ SLEEP_MILLIS だけ sleep する（I/O 待ちの代わり）。
+ * 全部終わるまでの時間から tasks/s を出し、あわせて OS スレッド数の最大を表示する。
+ *   - fixed(200)                 : newFixedThreadPool(200)。同時に 200 個しか待てない
+ *   - cached                     : newCachedThreadPool()。待ちの数だけ OS スレッドを作る
+ *   - virtual(unbounded)         : VirtualThreadExecutor.unbounded()
+ *   - virtual(bounded 10000)     : VirtualThreadExecutor.bounded(10_000)
+ *
+ * 理想は TASKS × SLEEP_MILLIS / 同時実行数。fixed は 200 で頭打ちになる。
+ * ※ 仮想スレッドがない JDK（17 など）では virtual もタスクごとに OS スレッドを作るので、cached とほぼ同じになる。
+ *   OS スレッドを何万本も作れない環境では、cached / virtual が失敗として表示される。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.VirtualThreadBenchmark [quick]
+ */
+public class VirtualThreadBenchmark {
+    static final long SLEEP_MILLIS = 10;
+    static final int FIXED_THREADS = 200;
+    static final int BOUND = 10_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        boolean quick = args.length > 0 && args[0].equals("quick");
+        int tasks = quick ? 10_000 : 100_000;
+        int warmup = quick ? 0 : 1;
+        int measure = quick ? 2 : 3;
+
+        System.out.println("仮想スレッド: " + (VirtualThreadExecutor.virtualThreadsAvailable()
+            ? "あり" : "なし（タスクごとに OS スレッドで代用）"));
+
+        Map<String, Supplier<ExecutorService>> executors = new LinkedHashMap<>();
+        executors.put("fixed(" + FIXED_THREADS + ")", () -> Executors.newFixedThreadPool(FIXED_THREADS));
+        executors.put("cached", Executors::newCachedThreadPool);
+        executors.put("virtual(unbounded)", VirtualThreadExecutor::unbounded);
+        executors.put("virtual(bounded " + BOUND + ")", () -> VirtualThreadExecutor.bounded(BOUND));
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        List<Bench.Result> results = Bench.newResults();
+        List<String> rows = new ArrayList<>();
+        for (Map.Entry<String, Supplier<ExecutorService>> entry : executors.entrySet()) {
+            Map<String, Object> params = new LinkedHashMap<>();
+            params.put("tasks", tasks);
+            params.put("sleep", SLEEP_MILLIS + "ms");
+            try {
+                for (int i = 0; i < warmup; i++) {
+                    run(entry.getValue().get(), tasks);
+                }
+                double[] nsPerTask = new double[measure];
+                threads.resetPeakThreadCount();
+                for (int i = 0; i < measure; i++) {
+                    nsPerTask[i] = (double) run(entry.getValue().get(), tasks) / tasks;
+                }
+                results.add(new Bench.Result(entry.getKey(), params, nsPerTask, 0));
+                rows.add(String.format("%-26s %10d %14.0fms %12d", entry.getKey(), tasks,
+                    nsPerTask[measure - 1] * tasks / 1e6, threads.getPeakThreadCount()));
+            } catch (RejectedExecutionException | OutOfMemoryError e) {
+                rows.add(String.format("%-26s %10d %16s %12s  (%s)", entry.getKey(), tasks, "失敗", "-", e));
+            }
+        }
+
+        System.out.println("※ ns/op はタスク1個あたり（全体の時間 / タスク数）");
+        Bench.printAll(results);
+        System.out.printf("%n%-26s %10s %16s %12s%n", "executor", "tasks", "全体の時間", "OSスレッド最大");
+        rows.forEach(System.out::println);
+        System.out.printf("（理想: %dms ÷ 同時実行数。fixed(%d) なら %dms）%n",
+            tasks * SLEEP_MILLIS, FIXED_THREADS, tasks * SLEEP_MILLIS / FIXED_THREADS);
+    }
+
+    // tasks 個流して、全部終わるまでの時間（ns）を返す
+    static long run(ExecutorService executor, int tasks) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(tasks);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < tasks; i++) {
+                executor.execute(() -> {
+                    try {
+                        Thread.sleep(SLEEP_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+            return System.nanoTime() - start;
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package app;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * タスク1つにつきスレッド1本（仮想スレッド）で動かす ExecutorService
+ *
+ * newFixedThreadPool(n) は同時に n 個までしか動かない。I/O 待ちで止まっているタスクもスレッドを1本ふさぐので、
+ * 待ちの多い処理ではスレッド数が同時実行数の上限になる。仮想スレッド（Java 21〜）は止まっている間
+ * OS スレッドを手放すので、何万本作ってもよい。
+ *
+ *   ExecutorService executor = VirtualThreadExecutor.bounded(1_000);   // 同時実行は最大 1000
+ *   executor.submit(() -> callRemoteApi());
+ *   executor.shutdown();
+ *   executor.awaitTermination(10, TimeUnit.SECONDS);
+ *
+ * - 同時実行数の制限: bounded(n) はセマフォで n 個まで。空きがなければ submit() / execute() する側が待つ
+ *   （スレッドは何本でも作れても、接続先の DB や API はそうはいかないので）
+ * - ピン留めの検出: detectPinning() で、synchronized の中でブロックして OS スレッドを手放せなかったタスクを報告する
+ * - ライフサイクル: shutdown() / shutdownNow() / awaitTermination() はほかの ExecutorService と同じ
+ *
+ * 仮想スレッドがない JDK（17 など）では、タスクごとにふつうのスレッド（daemon）を作って同じように動く。
+ * isVirtual() で確認できる。
+ */
+public final class VirtualThreadExecutor extends AbstractExecutorService {
+    // Java 21 の Thread.ofVirtual().factory()。なければ null
+    private static final ThreadFactory VIRTUAL = virtualThreadFactory();
+    private static final AtomicLong PLATFORM_IDS = new AtomicLong();
+
+    private final ThreadFactory factory;
+    // null なら制限なし
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition terminated = lock.newCondition();
+    private volatile boolean shutdown;
+    private volatile PinningDetector pinning;
+
+    // 受け付けてまだ終わっていないタスク数（スレッドを作る前から数える）
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+
+    private VirtualThreadExecutor(ThreadFactory factory, int maxConcurrency) {
+        this.factory = factory;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = maxConcurrency == Integer.MAX_VALUE ? null : new Semaphore(maxConcurrency);
+    }
+
+    // 同時実行数の制限なし（Executors.newVirtualThreadPerTaskExecutor() と同じ）
+    public static VirtualThreadExecutor unbounded() {
+        return new VirtualThreadExecutor(defaultFactory(), Integer.MAX_VALUE);
+    }
+
+    // 同時に動くタスクを maxConcurrency 個までに制限する
+    public static VirtualThreadExecutor bounded(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        return new VirtualThreadExecutor(defaultFactory(), maxConcurrency);
+    }
+
+    // この JVM で仮想スレッドが使えるか
+    public static boolean virtualThreadsAvailable() {
+        return VIRTUAL != null;
+    }
+
+    public boolean isVirtual() {
+        return factory == VIRTUAL;
+    }
+
+    private static ThreadFactory defaultFactory() {
+        if (VIRTUAL != null) {
+            return VIRTUAL;
+        }
+        return r -> {
+            Thread t = new Thread(r, "platform-per-task-" + PLATFORM_IDS.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // Java 17 でもコンパイルできるように、リフレクションで Thread.ofVirtual() を呼ぶ
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "virtual-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 19/20 でプレビューが無効なときも、ここに来る
+            return null;
+        }
+    }
+
+    /**
+     * ピン留め（synchronized の中でブロックして、仮想スレッドが OS スレッドを手放せなかった）を見張る
+     * threshold 以上続いたものを listener に渡す。終了（shutdown 後に最後のタスクが終わったとき・shutdownNow）で止まる
+     */
+    public VirtualThreadExecutor detectPinning(Duration threshold, Consumer<PinningDetector.Pinned> listener) {
+        PinningDetector previous = pinning;
+        pinning = PinningDetector.start(threshold, listener);
+        if (previous != null) {
+            previous.close();
+        }
+        // もう終わっていたら、止める人がいないのですぐ閉じる
+        if (isTerminated()) {
+            stopPinningDetector();
+        }
+        return this;
+    }
+
+    // ピン留めの検出結果（detectPinning していなければ null）
+    public PinningDetector pinning() {
+        return pinning;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("executor has been shut down");
+        }
+        if (permits != null) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("interrupted while waiting for a permit", e);
+            }
+        }
+        active.incrementAndGet();
+        // 待っている間に shutdown されたら受け付けない
+        if (shutdown) {
+            finished(false);
+            throw new RejectedExecutionException("executor has been shut down");
+        }
+        peak.accumulateAndGet(active.get(), Math::max);
+        Thread thread = null;
+        try {
+            thread = factory.newThread(() -> {
+                try {
+                    command.run();
+                } finally {
+                    running.remove(Thread.currentThread());
+                    finished(true);
+                }
+            });
+            // start() より前に入れる（動き出す前に shutdownNow() されても割り込みを取りこぼさない）
+            running.add(thread);
+            thread.start();
+        } catch (OutOfMemoryError | RuntimeException e) {
+            // ふつうのスレッドだと「unable to create native thread」になることがある
+            if (thread != null) {
+                running.remove(thread);
+            }
+            finished(false);
+            throw new RejectedExecutionException("could not start a thread", e);
+        }
+    }
+
+    private void finished(boolean ran) {
+        if (ran) {
+            completed.incrementAndGet();
+        }
+        // 先に数を減らしてから空きを返す（同時実行数が上限を超えて見えないように）
+        boolean last = active.decrementAndGet() == 0;
+        if (permits != null) {
+            permits.release();
+        }
+        if (last && shutdown) {
+            terminate();
+        }
+    }
+
+    // shutdown 済みで全部終わった（shutdown() と最後の finished() の両方から呼ばれることがある）
+    private void terminate() {
+        stopPinningDetector();
+        lock.lock();
+        try {
+            terminated.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (active.get() == 0) {
+            terminate();
+        }
+    }
+
+    /**
+     * 動いているタスクに割り込む
+     * 待ち行列はない（空きを待つのは submit した側）ので、返すリストはいつも空
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        for (Thread thread : running) {
+            thread.interrupt();
+        }
+        stopPinningDetector();
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && active.get() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!isTerminated()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = terminated.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    private void stopPinningDetector() {
+        PinningDetector detector = pinning;
+        if (detector != null) {
+            detector.close();
+        }
+    }
+
+    // 同時実行数の上限（制限なしなら Integer.MAX_VALUE）
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    // 今動いている（または始まる直前の）タスク数
+    public int activeCount() {
+        return active.get();
+    }
+
+    // 同時に動いていたタスク数の最大
+    public int peakConcurrency() {
+        return peak.get();
+    }
+
+    public long completedTaskCount() {
+        return completed.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("VirtualThreadExecutor[%s, max=%s, active=%d, peak=%d, completed=%d%s]",
+            isVirtual() ? "virtual" : "platform",
+            maxConcurrency == Integer.MAX_VALUE ? "unbounded" : String.valueOf(maxConcurrency),
+            active.get(), peak.get(), completed.get(), shutdown ? ", shutdown" : "");
+    }
+}
@@ -0,0 +1,43 @@
+package app.metrics;
+
+/**
+ * InstrumentedExecutor の値を JMX で見せるためのインターフェース
+ * jconsole / VisualVM の MBeans タブで app > ExecutorMetrics > 名前 の下に出る。時間はすべてマイクロ秒
+ *
+ * JMX はこのインターフェースのメソッドをリフレクションで呼ぶので、このパッケージだけ module-info で公開している
+ * （app パッケージは公開しない。実装の InstrumentedExecutor はそのまま app に置く）
+ */
+public interface ExecutorMetricsMXBean {
+    long getSubmittedCount();
+
+    long getCompletedCount();
+
+    // 例外で終わったタスク
+    long getFailedCount();
+
+    long getRejectedCount();
+
+    // 今動いているタスク
+    int getActiveCount();
+
+    // 最大の同時実行数（タスクの一部と、読んだときに見た値。見逃すことがある）
+    int getPeakActiveCount();
+
+    // 受け付けて、まだ動き出していないタスク
+    long getQueueDepth();
+
+    long getQueueWaitP50Micros();
+
+    long getQueueWaitP99Micros();
+
+    long getQueueWaitMaxMicros();
+
+    long getRunTimeP50Micros();
+
+    long getRunTimeP99Micros();
+
+    long getRunTimeMaxMicros();
+
+    // 受け付けたときに前に並んでいたタスク数の p99（一部のタスクだけ見る）
+    long getQueueDepthP99();
+}
@@ -1 +1,10 @@
-module app {}
+module app {
+    // JMX は MXBean のインターフェース（ExecutorMetricsMXBean）をリフレクションで呼ぶので、そのパッケージだけ公開する
+    exports app.metrics;
+    // InstrumentedExecutor の JMX 登録（MBeanServer）で使う
+    requires java.management;
+    // Bench の割り当てバイト数計測（com.sun.management.ThreadMXBean）で使う
+    requires jdk.management;
+    // PinningDetector（JFR のイベントを読む）で使う
+    requires jdk.jfr;
+}
@@ -0,0 +1,317 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * シーケンシャル / 共通プールで並列 / 専用プールで並列 を自動で選ぶ実行ヘルパー
+ *
+ * Main.whenNotToUseParallel() のルール（少ないデータ・軽い処理・順序依存・状態あり・I/O）を
+ * 文字で覚えるかわりに、N×Q モデルで判断する。
+ *   N = 要素数、Q = 1要素あたりのコスト（ns）
+ *   N×Q がしきい値（既定 100μs）を超えたら並列にする
+ *
+ * Q は最初の呼び出しで先頭の数要素をシーケンシャルに流して測り、
+ * 以後は実際の実行時間から呼び出し箇所（callSite）ごとに更新していく（どのモードで流しても更新する）。
+ * 並列が予想より遅かった箇所はしきい値を上げ、速かった箇所は下げる。
+ *
+ * 最初のサンプルは JIT が冷えていて、ストリームを組み立てるコストも混ざるので Q が大きく出る。
+ * なので数回流して最小値をとり、空のストリームを流したときの時間（組み立てのコスト）を引く。
+ * それでも1回のサンプルだけでは当てにならないので、実測がまだない箇所は MIN_PARALLEL_SIZE 未満なら並列にしない。
+ *
+ * ※ pipeline は副作用なしであること（サンプリングで先頭要素に対して余分に数回実行される）
+ */
+public final class AdaptiveStreamExecutor implements AutoCloseable {
+
+    // 実行モード
+    public enum Mode {
+        SEQUENTIAL,
+        COMMON_POOL,
+        DEDICATED_POOL
+    }
+
+    // パイプラインの性質（whenNotToUseParallel() のルールに対応）
+    public enum Trait {
+        ORDER_SENSITIVE,   // limit / skip / findFirst など
+        STATEFUL,          // sorted / distinct / 外部状態
+        BLOCKING           // I/O 待ちを含む
+    }
+
+    static final long DEFAULT_THRESHOLD_NANOS = 100_000;
+    static final int SAMPLE_SIZE = 32;
+    // サンプリングで流す回数（最小値をとる）
+    static final int SAMPLE_PASSES = 3;
+    // サンプルしかない（実測がまだない）箇所は、これより少ない要素数なら並列にしない
+    static final int MIN_PARALLEL_SIZE = 1_000;
+    static final int HISTORY_LIMIT = 1_000;
+    // 実測値をどれだけ重視するか（指数移動平均の係数）
+    static final double ALPHA = 0.3;
+
+    private final long initialThresholdNanos;
+    private final StreamPoolScope dedicatedPool;
+    private final Map<String, Profile> profiles = new ConcurrentHashMap<>();
+    private final List<Decision> history = Collections.synchronizedList(new ArrayList<>());
+
+    public AdaptiveStreamExecutor() {
+        this(DEFAULT_THRESHOLD_NANOS, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param thresholdNanos 並列に切り替える N×Q の初期しきい値
+     * @param dedicatedParallelism I/O待ちを含むパイプライン用の専用プールの並列度
+     */
+    public AdaptiveStreamExecutor(long thresholdNanos, int dedicatedParallelism) {
+        this.initialThresholdNanos = thresholdNanos;
+        this.dedicatedPool = new StreamPoolScope("adaptive-dedicated", dedicatedParallelism);
+    }
+
+    /**
+     * source に pipeline を適用した結果を返す
+     * どのモードで流すかはこのクラスが決める
+     */
+    public <T, R> R execute(String callSite, List<T> source,
+                            Function<Stream<T>, R> pipeline, Trait... traits) {
+        Set<Trait> traitSet = traits.length == 0 ? EnumSet.noneOf(Trait.class) : EnumSet.of(traits[0], traits);
+        Profile profile = profiles.computeIfAbsent(callSite, k -> new Profile(initialThresholdNanos));
+        int n = source.size();
+
+        if (!profile.hasSample()) {
+            profile.sample(source, pipeline);
+        }
+
+        double nsPerElement = profile.nsPerElement();
+        double estimatedNanos = n * nsPerElement;
+        Mode mode = choose(traitSet, n, estimatedNanos, profile);
+
+        long start = System.nanoTime();
+        R result = run(mode, source, pipeline);
+        long actualNanos = System.nanoTime() - start;
+
+        profile.record(mode, n, estimatedNanos, actualNanos, parallelism(mode));
+        addHistory(new Decision(callSite, mode, n, nsPerElement, estimatedNanos,
+            actualNanos, profile.thresholdNanos()));
+        return result;
+    }
+
+    // N×Q としきい値と性質からモードを決める
+    Mode choose(Set<Trait> traits, int n, double estimatedNanos, Profile profile) {
+        if (traits.contains(Trait.BLOCKING)) {
+            // I/O待ちは CPU を使わないので、共通プールを塞がないよう専用プールに逃がす
+            return Mode.DEDICATED_POOL;
+        }
+        if (n < MIN_PARALLEL_SIZE && !profile.hasObservation()) {
+            // Q が冷えたサンプル1回分しかない。まずシーケンシャルで実測する
+            return Mode.SEQUENTIAL;
+        }
+        double threshold = profile.thresholdNanos();
+        if (traits.contains(Trait.ORDER_SENSITIVE) || traits.contains(Trait.STATEFUL)) {
+            // 分割後の調整コストが大きいので、かなり重いときだけ並列にする
+            threshold *= 10;
+        }
+        if (estimatedNanos >= threshold) {
+            return Mode.COMMON_POOL;
+        }
+        // しきい値の近くでまだ並列を試していない箇所は、1回だけ並列で流して実測する
+        if (estimatedNanos >= threshold / 2 && !profile.hasParallelObservation()) {
+            return Mode.COMMON_POOL;
+        }
+        return Mode.SEQUENTIAL;
+    }
+
+    private <T, R> R run(Mode mode, List<T> source, Function<Stream<T>, R> pipeline) {
+        switch (mode) {
+            case SEQUENTIAL:
+                return pipeline.apply(source.stream());
+            case COMMON_POOL:
+                return pipeline.apply(source.parallelStream());
+            case DEDICATED_POOL:
+                return dedicatedPool.run(() -> pipeline.apply(source.parallelStream()));
+            default:
+                throw new IllegalStateException("unknown mode: " + mode);
+        }
+    }
+
+    private int parallelism(Mode mode) {
+        switch (mode) {
+            case COMMON_POOL:
+                return ForkJoinPool.getCommonPoolParallelism();
+            case DEDICATED_POOL:
+                return dedicatedPool.parallelism();
+            default:
+                return 1;
+        }
+    }
+
+    private void addHistory(Decision decision) {
+        synchronized (history) {
+            if (history.size() >= HISTORY_LIMIT) {
+                history.remove(0);
+            }
+            history.add(decision);
+        }
+    }
+
+    // これまでの判断と実測値（新しいものが後ろ）
+    public List<Decision> history() {
+        synchronized (history) {
+            return new ArrayList<>(history);
+        }
+    }
+
+    // 呼び出し箇所ごとの現在のしきい値（ns）
+    public long thresholdNanos(String callSite) {
+        Profile profile = profiles.get(callSite);
+        return profile == null ? initialThresholdNanos : (long) profile.thresholdNanos();
+    }
+
+    @Override
+    public void close() {
+        dedicatedPool.close();
+    }
+
+    /**
+     * 1回分の判断の記録
+     */
+    public static final class Decision {
+        public final String callSite;
+        public final Mode mode;
+        public final int size;
+        public final double nsPerElement;
+        public final double estimatedNanos;
+        public final long actualNanos;
+        public final double thresholdNanos;
+
+        Decision(String callSite, Mode mode, int size, double nsPerElement,
+                 double estimatedNanos, long actualNanos, double thresholdNanos) {
+            this.callSite = callSite;
+            this.mode = mode;
+            this.size = size;
+            this.nsPerElement = nsPerElement;
+            this.estimatedNanos = estimatedNanos;
+            this.actualNanos = actualNanos;
+            this.thresholdNanos = thresholdNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s (N=%d, Q=%.1fns, N×Q=%.0fμs, 実測=%.0fμs, しきい値=%.0fμs)",
+                callSite, mode, size, nsPerElement, estimatedNanos / 1_000,
+                actualNanos / 1_000.0, thresholdNanos / 1_000);
+        }
+    }
+
+    /**
+     * 呼び出し箇所ごとの学習状態
+     * Q（ns/要素）とモード別の実測値を指数移動平均で持つ
+     */
+    static final class Profile {
+        private double nsPerElement = Double.NaN;
+        private double thresholdNanos;
+        private double parallelSpeedup = Double.NaN;
+        // 実際に流した回数（サンプリングは数えない）
+        private long observations;
+
+        Profile(double thresholdNanos) {
+            this.thresholdNanos = thresholdNanos;
+        }
+
+        synchronized boolean hasSample() {
+            return !Double.isNaN(nsPerElement);
+        }
+
+        synchronized double nsPerElement() {
+            return nsPerElement;
+        }
+
+        synchronized boolean hasObservation() {
+            return observations > 0;
+        }
+
+        synchronized boolean hasParallelObservation() {
+            return !Double.isNaN(parallelSpeedup);
+        }
+
+        synchronized double thresholdNanos() {
+            return thresholdNanos;
+        }
+
+        /**
+         * 先頭の数要素だけシーケンシャルに流して Q を見積もる
+         * 何回か流して最小値をとり（1回目は JIT が冷えている）、空のストリームを流した時間（組み立てのコスト）を引く
+         */
+        <T, R> void sample(List<T> source, Function<Stream<T>, R> pipeline) {
+            int k = Math.min(SAMPLE_SIZE, source.size());
+            if (k == 0) {
+                synchronized (this) {
+                    nsPerElement = 0;
+                }
+                return;
+            }
+            List<T> prefix = source.subList(0, k);
+            List<T> empty = source.subList(0, 0);
+            long best = Long.MAX_VALUE;
+            long setup = Long.MAX_VALUE;
+            for (int i = 0; i < SAMPLE_PASSES; i++) {
+                long start = System.nanoTime();
+                pipeline.apply(empty.stream());
+                long mid = System.nanoTime();
+                pipeline.apply(prefix.stream());
+                long end = System.nanoTime();
+                setup = Math.min(setup, mid - start);
+                best = Math.min(best, end - mid);
+            }
+            synchronized (this) {
+                nsPerElement = (double) Math.max(0, best - setup) / k;
+            }
+        }
+
+        /**
+         * 1回の実行の実測で Q としきい値を更新する
+         * @param parallelism そのモードで使ったプールの並列度（シーケンシャルなら 1）
+         */
+        synchronized void record(Mode mode, int n, double estimatedNanos, long actualNanos, int parallelism) {
+            if (n == 0) {
+                return;
+            }
+            observations++;
+            double observed = (double) actualNanos / n;
+            if (mode == Mode.SEQUENTIAL) {
+                // シーケンシャルの実測はそのまま Q の更新に使える（上にも下にも動く）。
+                // ただし1回で2倍より上には動かさない（初回の JIT やクラスの読み込みで1回だけ遅いことがある）
+                nsPerElement = Math.min(ewma(nsPerElement, observed), Math.max(nsPerElement, 1) * 2);
+                return;
+            }
+            // 並列の実測 × 並列度 はシーケンシャルのコストの上限になる（分割がどれだけうまくいっても、これより速くはならない）。
+            // Q がそれより大きければそちらへ寄せる。下回っているときは、並列の分割や待ちのコストと区別がつかないので動かさない
+            double upperBound = observed * parallelism;
+            if (upperBound < nsPerElement) {
+                nsPerElement = ewma(nsPerElement, upperBound);
+            }
+            if (mode == Mode.COMMON_POOL) {
+                // 並列の実測から「シーケンシャル見積もりに対して何倍速かったか」を学習する
+                // （専用プールは I/O 待ち用で CPU の速度比にならないので、しきい値には使わない）
+                double speedup = Math.min(estimatedNanos, n * nsPerElement) / Math.max(1, actualNanos);
+                parallelSpeedup = Double.isNaN(parallelSpeedup) ? speedup : ewma(parallelSpeedup, speedup);
+                if (parallelSpeedup < 1.0) {
+                    // 並列のほうが遅かった: この箇所ではもっと重くなるまで並列にしない
+                    thresholdNanos *= 1.5;
+                } else if (parallelSpeedup > 1.5) {
+                    // 十分速かった: もう少し軽いケースでも並列を試す
+                    thresholdNanos = Math.max(1_000, thresholdNanos / 1.2);
+                }
+            }
+        }
+
+        private static double ewma(double current, double observed) {
+            return current + ALPHA * (observed - current);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package app;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 分割しにくいソースを、並列でちゃんと分割できるようにする Spliterator 集
+ *
+ * LinkedList、Stream.iterate / Stream.generate、Iterator ベースのソースは、
+ * 先頭から順にたどるしかないので「半分に割る」ができない。
+ * そのままだと parallelStream() にしてもほぼシーケンシャルの速さしか出ない。
+ *
+ * ここでは先頭から要素をまとめて配列に取り出し（バッチ）、その配列を並列処理に回す。
+ *   - サイズがわかるソース（LinkedList など）: 並列度 × 4 個くらいの同じ大きさのバッチに切る
+ *   - サイズがわからないソース（iterate / generate / ファイルの行など）: バッチを倍々に大きくしていく
+ * 配列は範囲をちょうど半分に割れるので、取り出したあとは均等に分割される。
+ */
+public final class BalancedSpliterators {
+    static final int MIN_BATCH = 256;
+    static final int MAX_BATCH = 1 << 24;
+    static final int BATCHES_PER_WORKER = 4;
+
+    private BalancedSpliterators() {
+    }
+
+    /**
+     * 分割しにくいソースなら再チャンク化した Spliterator を返す
+     * もともと SUBSIZED（ArrayList や配列）ならそのまま返す
+     */
+    public static <T> Spliterator<T> rechunk(Spliterator<T> source) {
+        if (source.hasCharacteristics(Spliterator.SUBSIZED)) {
+            return source;
+        }
+        return new BatchingSpliterator<>(source, ForkJoinPool.getCommonPoolParallelism() + 1);
+    }
+
+    // コレクション（LinkedList など）から、よく分割される並列ストリームを作る
+    public static <T> Stream<T> parallelStream(Collection<T> source) {
+        return StreamSupport.stream(rechunk(source.spliterator()), true);
+    }
+
+    // 任意のストリーム（Stream.iterate / generate など）を再チャンク化して並列にする
+    public static <T> Stream<T> parallel(Stream<T> source) {
+        return StreamSupport.stream(rechunk(source.spliterator()), true)
+            .onClose(source::close);
+    }
+
+    // ファイルの行を並列に読む（UTF-8。返したストリームは close すること）
+    public static Stream<String> lines(Path path) {
+        return lines(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * ファイルの行を並列に読む（返したストリームは close すること）
+     * UTF-8 / US-ASCII / ISO-8859-1 なら Files.lines 自体がファイルを位置で割れる（改行のバイトを探して分割する）ので、
+     * 包まずにそのまま並列にする。ほかの文字コードは先頭から読むしかないので再チャンク化する
+     */
+    public static Stream<String> lines(Path path, Charset charset) {
+        try {
+            Stream<String> lines = Files.lines(path, charset);
+            return splitsByPosition(charset) ? lines.parallel() : parallel(lines);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean splitsByPosition(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+            || charset.equals(StandardCharsets.US_ASCII)
+            || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 先頭から要素をバッチで取り出して、配列の Spliterator として分割する
+     */
+    static final class BatchingSpliterator<T> implements Spliterator<T> {
+        private final Spliterator<T> source;
+        // サイズがわかるときは固定、わからないときは倍々に増やす
+        private int batchSize;
+        private final boolean fixedBatch;
+
+        BatchingSpliterator(Spliterator<T> source, int workers) {
+            this.source = source;
+            long size = source.getExactSizeIfKnown();
+            if (size >= 0) {
+                long perBatch = (size + (long) workers * BATCHES_PER_WORKER - 1) / ((long) workers * BATCHES_PER_WORKER);
+                this.batchSize = (int) Math.max(MIN_BATCH, Math.min(MAX_BATCH, perBatch));
+                this.fixedBatch = true;
+            } else {
+                this.batchSize = MIN_BATCH;
+                this.fixedBatch = false;
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            // 残りが少ないときに大きな配列を確保しないよう、見積もりで頭打ちにする（見積もりより多ければ伸ばす）
+            Buffer<T> buffer = new Buffer<>((int) Math.max(1, Math.min(batchSize, source.estimateSize())));
+            while (buffer.count < batchSize && source.tryAdvance(buffer)) {
+                // Buffer.accept で詰めていく
+            }
+            if (buffer.count == 0) {
+                return null;
+            }
+            if (!fixedBatch) {
+                batchSize = Math.min(MAX_BATCH, batchSize * 2);
+            }
+            int arrayCharacteristics = (source.characteristics() & (ORDERED | DISTINCT | NONNULL | IMMUTABLE))
+                | SIZED | SUBSIZED;
+            return Spliterators.spliterator(buffer.items, 0, buffer.count, arrayCharacteristics);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            return source.tryAdvance(action);
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            source.forEachRemaining(action);
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            // 自分自身は先頭から取り出すだけなので SUBSIZED ではない
+            return source.characteristics() & ~SUBSIZED;
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            return source.getComparator();
+        }
+    }
+
+    // tryAdvance の受け口（ラムダを毎回作らないよう、使い回せるクラスにしておく）
+    private static final class Buffer<T> implements Consumer<T> {
+        Object[] items;
+        int count;
+
+        Buffer(int capacity) {
+            this.items = new Object[capacity];
+        }
+
+        @Override
+        public void accept(T item) {
+            if (count == items.length) {
+                items = Arrays.copyOf(items, Math.min(MAX_BATCH, items.length * 2));
+            }
+            items[count++] = item;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package app;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * int[] をそのまま持つ不変シーケンス
+ *
+ * List<Integer> だと要素ごとに Integer オブジェクトがあって、
+ * 並列処理のたびにポインタをたどる＆アンボクシングが発生する。
+ * IntSeq は配列を直接なめるので、map / filter / reduce / sum のどれもボクシングしない。
+ *
+ * 分割は自前の {@link IntArraySpliterator}（範囲のちょうど半分で割る）を使う。
+ */
+public final class IntSeq {
+    // これ以下の要素数なら並列にしない（分割コストの方が高くつく）
+    static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+    private final int[] values;
+    private final int from;
+    private final int to;
+    private final boolean parallel;
+
+    private IntSeq(int[] values, int from, int to, boolean parallel) {
+        this.values = values;
+        this.from = from;
+        this.to = to;
+        this.parallel = parallel;
+    }
+
+    // 配列をコピーせずに包む（呼び出し側は以後 values を書き換えないこと）
+    public static IntSeq wrap(int[] values) {
+        return new IntSeq(values, 0, values.length, false);
+    }
+
+    public static IntSeq of(int... values) {
+        return wrap(values.clone());
+    }
+
+    // [startInclusive, endExclusive) の連番
+    public static IntSeq range(int startInclusive, int endExclusive) {
+        int size = Math.max(0, endExclusive - startInclusive);
+        int[] values = new int[size];
+        Arrays.parallelSetAll(values, i -> startInclusive + i);
+        return wrap(values);
+    }
+
+    public IntSeq parallel() {
+        return parallel ? this : new IntSeq(values, from, to, true);
+    }
+
+    public IntSeq sequential() {
+        return parallel ? new IntSeq(values, from, to, false) : this;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public int size() {
+        return to - from;
+    }
+
+    public int get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size());
+        }
+        return values[from + index];
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOfRange(values, from, to);
+    }
+
+    // IntStream として取り出す（並列フラグはこのシーケンスに従う）
+    public IntStream stream() {
+        return StreamSupport.intStream(spliterator(), parallel);
+    }
+
+    public Spliterator.OfInt spliterator() {
+        return new IntArraySpliterator(values, from, to);
+    }
+
+    // 各要素を変換した新しいシーケンス（結果も int[] のまま）
+    public IntSeq map(IntUnaryOperator mapper) {
+        int[] result = new int[size()];
+        if (useParallel()) {
+            Arrays.parallelSetAll(result, i -> mapper.applyAsInt(values[from + i]));
+        } else {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = mapper.applyAsInt(values[from + i]);
+            }
+        }
+        return new IntSeq(result, 0, result.length, parallel);
+    }
+
+    // int → long に変換（合計がintをあふれるケース向け）
+    public LongSeq mapToLong(IntToLongFunction mapper) {
+        long[] result = new long[size()];
+        if (useParallel()) {
+            Arrays.parallelSetAll(result, i -> mapper.applyAsLong(values[from + i]));
+        } else {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = mapper.applyAsLong(values[from + i]);
+            }
+        }
+        LongSeq seq = LongSeq.wrap(result);
+        return parallel ? seq.parallel() : seq;
+    }
+
+    public IntSeq filter(IntPredicate predicate) {
+        int[] result = stream().filter(predicate).toArray();
+        return new IntSeq(result, 0, result.length, parallel);
+    }
+
+    // 累積（[1, 2, 3] → [1, 3, 6]）。並列なら ParallelScan の2パス方式で計算する
+    public IntSeq scan(IntBinaryOperator op) {
+        int[] source = (from == 0 && to == values.length) ? values : toArray();
+        int[] result;
+        if (parallel) {
+            result = ParallelScan.scan(source, op);
+        } else {
+            result = source.clone();
+            for (int i = 1; i < result.length; i++) {
+                result[i] = op.applyAsInt(result[i - 1], result[i]);
+            }
+        }
+        return new IntSeq(result, 0, result.length, parallel);
+    }
+
+    public int reduce(int identity, IntBinaryOperator op) {
+        return stream().reduce(identity, op);
+    }
+
+    // intの合計はあふれやすいので long で返す
+    public long sum() {
+        return stream().asLongStream().sum();
+    }
+
+    // mapToLong(mapper).sum() と同じ結果を、中間の long[] を作らずに出す
+    public long sumAsLong(IntToLongFunction mapper) {
+        return stream().mapToLong(mapper).sum();
+    }
+
+    public void forEach(IntConsumer action) {
+        stream().forEach(action);
+    }
+
+    private boolean useParallel() {
+        return parallel && size() >= SEQUENTIAL_THRESHOLD;
+    }
+
+    @Override
+    public String toString() {
+        int shown = Math.min(size(), 10);
+        StringBuilder sb = new StringBuilder("IntSeq[");
+        for (int i = 0; i < shown; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(values[from + i]);
+        }
+        if (shown < size()) {
+            sb.append(", ... (").append(size()).append(" elements)");
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * int[] の範囲をちょうど半分ずつに割る Spliterator
+     * SIZED | SUBSIZED なので、分割後もサイズが正確にわかる
+     */
+    static final class IntArraySpliterator implements Spliterator.OfInt {
+        private final int[] array;
+        private int index;
+        private final int fence;
+
+        IntArraySpliterator(int[] array, int origin, int fence) {
+            this.array = array;
+            this.index = origin;
+            this.fence = fence;
+        }
+
+        @Override
+        public OfInt trySplit() {
+            int lo = index;
+            int mid = (lo + fence) >>> 1;
+            if (lo >= mid) {
+                return null;
+            }
+            index = mid;
+            return new IntArraySpliterator(array, lo, mid);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (index < fence) {
+                action.accept(array[index++]);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            int[] a = array;
+            int hi = fence;
+            int i = index;
+            index = hi;
+            for (; i < hi; i++) {
+                action.accept(a[i]);
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package app;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * long[] をそのまま持つ不変シーケンス（{@link IntSeq} の long 版）
+ */
+public final class LongSeq {
+    private final long[] values;
+    private final int from;
+    private final int to;
+    private final boolean parallel;
+
+    private LongSeq(long[] values, int from, int to, boolean parallel) {
+        this.values = values;
+        this.from = from;
+        this.to = to;
+        this.parallel = parallel;
+    }
+
+    // 配列をコピーせずに包む（呼び出し側は以後 values を書き換えないこと）
+    public static LongSeq wrap(long[] values) {
+        return new LongSeq(values, 0, values.length, false);
+    }
+
+    public static LongSeq of(long... values) {
+        return wrap(values.clone());
+    }
+
+    public LongSeq parallel() {
+        return parallel ? this : new LongSeq(values, from, to, true);
+    }
+
+    public LongSeq sequential() {
+        return parallel ? new LongSeq(values, from, to, false) : this;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public int size() {
+        return to - from;
+    }
+
+    public long get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size());
+        }
+        return values[from + index];
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOfRange(values, from, to);
+    }
+
+    public LongStream stream() {
+        return StreamSupport.longStream(spliterator(), parallel);
+    }
+
+    public Spliterator.OfLong spliterator() {
+        return new LongArraySpliterator(values, from, to);
+    }
+
+    public LongSeq map(LongUnaryOperator mapper) {
+        long[] result = new long[size()];
+        if (parallel && size() >= IntSeq.SEQUENTIAL_THRESHOLD) {
+            Arrays.parallelSetAll(result, i -> mapper.applyAsLong(values[from + i]));
+        } else {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = mapper.applyAsLong(values[from + i]);
+            }
+        }
+        return new LongSeq(result, 0, result.length, parallel);
+    }
+
+    public LongSeq filter(LongPredicate predicate) {
+        long[] result = stream().filter(predicate).toArray();
+        return new LongSeq(result, 0, result.length, parallel);
+    }
+
+    // 累積（[1, 2, 3] → [1, 3, 6]）。並列なら ParallelScan の2パス方式で計算する
+    public LongSeq scan(LongBinaryOperator op) {
+        long[] source = (from == 0 && to == values.length) ? values : toArray();
+        long[] result;
+        if (parallel) {
+            result = ParallelScan.scan(source, op);
+        } else {
+            result = source.clone();
+            for (int i = 1; i < result.length; i++) {
+                result[i] = op.applyAsLong(result[i - 1], result[i]);
+            }
+        }
+        return new LongSeq(result, 0, result.length, parallel);
+    }
+
+    public long reduce(long identity, LongBinaryOperator op) {
+        return stream().reduce(identity, op);
+    }
+
+    public long sum() {
+        return stream().sum();
+    }
+
+    public void forEach(LongConsumer action) {
+        stream().forEach(action);
+    }
+
+    @Override
+    public String toString() {
+        int shown = Math.min(size(), 10);
+        StringBuilder sb = new StringBuilder("LongSeq[");
+        for (int i = 0; i < shown; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(values[from + i]);
+        }
+        if (shown < size()) {
+            sb.append(", ... (").append(size()).append(" elements)");
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * long[] の範囲をちょうど半分ずつに割る Spliterator
+     */
+    static final class LongArraySpliterator implements Spliterator.OfLong {
+        private final long[] array;
+        private int index;
+        private final int fence;
+
+        LongArraySpliterator(long[] array, int origin, int fence) {
+            this.array = array;
+            this.index = origin;
+            this.fence = fence;
+        }
+
+        @Override
+        public OfLong trySplit() {
+            int lo = index;
+            int mid = (lo + fence) >>> 1;
+            if (lo >= mid) {
+                return null;
+            }
+            index = mid;
+            return new LongArraySpliterator(array, lo, mid);
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (index < fence) {
+                action.accept(array[index++]);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            long[] a = array;
+            int hi = fence;
+            int i = index;
+            index = hi;
+            for (; i < hi; i++) {
+                action.accept(a[i]);
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+    }
+}
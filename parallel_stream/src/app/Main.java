@@ -1,6 +1,7 @@
 package app;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.*;
 
 public class Main {
@@ -57,6 +58,13 @@ public class Main {
         Stream<Integer> backToSequential = list.parallelStream().sequential();
         System.out.println("parallel()→sequential(): " + backToSequential.isParallel());
 
+        // 何もしなければ共通プールで実行される。専用プールで動かしたいときは StreamPoolScope
+        try (StreamPoolScope scope = new StreamPoolScope("demo", 2)) {
+            int sum = scope.run(() -> list.parallelStream().mapToInt(Integer::intValue).sum());
+            System.out.println("専用プールで実行: " + sum);
+            System.out.println("  " + scope.metrics());
+        }
+
         System.out.println();
     }
 
@@ -149,6 +157,32 @@ public class Main {
             (a, b) -> a - b  // 間違ったcombiner（足すべきなのに引いている）
         );
         System.out.println("間違った結果: " + wrong + " (正しくは55)");
+
+        // デバッグモードの ParallelReducer なら、こういう combiner を実行中に検出できる
+        ParallelReducer checkedReducer = ParallelReducer.checked(1).withLeafSize(2);
+        checkedReducer.reduce(list, 0, (a, b) -> a + b, (a, b) -> a - b);
+        System.out.println("検出された違反: " + checkedReducer.violations().size() + "件");
+        checkedReducer.violations().stream().limit(2).forEach(v -> System.out.println("  " + v));
+        System.out.println();
+
+        // double の合計は分割の仕方（＝プールの並列度）で最後の桁が変わりうる
+        System.out.println("--- double の合計とプールサイズ ---");
+        double[] prices = new double[1_000_000];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = (i % 3 == 0) ? 1e8 + 0.1 : 0.01 * i;
+        }
+        for (int width : new int[] {1, 3, 8}) {
+            ForkJoinPool pool = new ForkJoinPool(width);
+            try {
+                double naive = pool.submit(() -> Arrays.stream(prices).parallel()
+                    .reduce(0.0, Double::sum)).join();
+                double compensated = ParallelReducer.on(pool, ParallelReducer.DEFAULT_LEAF_SIZE).sum(prices);
+                System.out.println("  並列度" + width + ": reduce=" + naive + ", ParallelReducer.sum=" + compensated);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        System.out.println("※ ParallelReducer は並列度に関係なく同じ木で結合するので結果が一致する");
         System.out.println();
 
         // 文字列の結合での例
@@ -191,6 +225,15 @@ public class Main {
             .collect(Collectors.summingInt(Integer::intValue));
         System.out.println("summingInt: " + sum);
 
+        // 累積（ここまでの合計）はひとつ前の結果に依存するので collect では書けない
+        // 配列なら ParallelScan の2パス方式で並列に計算できる
+        int[] runningTotal = ParallelScan.scan(new int[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, Integer::sum);
+        System.out.println("累積（scan）: " + Arrays.toString(runningTotal));
+        // ストリームにもそのままかけられる（中で toArray() してから同じ計算をする）
+        List<Integer> runningTotalList = ParallelScan.scan(list.parallelStream(), Integer::sum)
+            .collect(Collectors.toList());
+        System.out.println("累積（stream の scan）: " + runningTotalList);
+
         System.out.println();
     }
 
@@ -265,10 +308,17 @@ public class Main {
             .limit(5)
             .collect(Collectors.toList());
         System.out.println("limit(5)の結果: " + limited + " (順序は保証されるが遅い)");
+
+        // ArrayList は分割位置が正確にわかるので、範囲を先に切り出せば調整が要らない
+        List<Integer> sliced = ParallelSlice.slice(numbers, 2, 5)
+            .collect(Collectors.toList());
+        System.out.println("ParallelSlice.slice(2, 5)の結果: " + sliced + " (skip(2).limit(5)と同じ)");
         System.out.println();
     }
 
     // 8. パフォーマンスの考慮
+    // ※ ここの nanoTime は1回きりの計測（JITが温まる前）なので目安程度。
+    //    ちゃんと比較するときは ParallelStreamBenchmark を使う
     static void performanceConsiderations() {
         System.out.println("【8. パフォーマンスの考慮】");
 
@@ -316,6 +366,34 @@ public class Main {
         System.out.println("シーケンシャル: " + time3 / 1_000_000 + " ms");
         System.out.println("パラレル: " + time4 / 1_000_000 + " ms");
         System.out.println("高速化率: " + String.format("%.2f", (double)time3 / time4) + "倍");
+
+        // 思ったほど速くならないときは、分割の様子を見てみる
+        SplitTelemetry.Report<Long> report = SplitTelemetry.trace(null, largeList,
+            s -> s.mapToLong(n -> n * 2L).sum());
+        System.out.println("分割の様子: " + report.summary);
+        System.out.println();
+
+        // LinkedList は半分に割れないので、配列にまとめ直してから並列にする
+        System.out.println("--- LinkedList の再チャンク化 ---");
+        LinkedList<Integer> linkedList = new LinkedList<>(largeList);
+        long start6 = System.nanoTime();
+        long sum6 = BalancedSpliterators.parallelStream(linkedList)
+            .mapToLong(n -> n * 2L)
+            .sum();
+        long time6 = System.nanoTime() - start6;
+        System.out.println("LinkedList 再チャンク: " + time6 / 1_000_000 + " ms (結果一致: " + (sum6 == sum4) + ")");
+        System.out.println();
+
+        // ボクシングなし: int[] をそのまま分割して処理する
+        System.out.println("--- IntSeq（int[]ベース、100万要素）---");
+        IntSeq seq = IntSeq.range(1, 1_000_001);
+
+        long start5 = System.nanoTime();
+        long sum5 = seq.parallel().sumAsLong(n -> n * 2L);
+        long time5 = System.nanoTime() - start5;
+
+        System.out.println("IntSeq パラレル: " + time5 / 1_000_000 + " ms (結果一致: " + (sum5 == sum4) + ")");
+        System.out.println("※ Integerオブジェクトを100万個作らないぶん、メモリも速度も有利");
         System.out.println();
     }
 
@@ -357,6 +435,40 @@ public class Main {
         System.out.println("シーケンシャル: " + time1 / 1_000_000 + " ms");
         System.out.println("パラレル: " + time2 / 1_000_000 + " ms");
         System.out.println("※ I/O待ちがある場合は並列化でも高速化される");
+        System.out.println("  ただし同時に待てるのは共通プールのスレッド数まで");
+        System.out.println();
+
+        // I/O待ちは仮想スレッドで並行に待つほうが向いている
+        long start3 = System.nanoTime();
+        try (Stream<Integer> results = VirtualThreadMapper.mapConcurrent(list.stream(), 100, true, n -> {
+            try { Thread.sleep(10); } catch (InterruptedException e) {}
+            return n * 2;
+        })) {
+            System.out.println("mapConcurrent: " + results.collect(Collectors.toList()));
+        }
+        long time3 = System.nanoTime() - start3;
+        System.out.println("mapConcurrent: " + time3 / 1_000_000 + " ms (順序は入力どおり)");
+        System.out.println();
+
+        // ルールを覚えるかわりに N×Q モデルで自動判定させる
+        System.out.println("--- AdaptiveStreamExecutor による自動判定 ---");
+        List<Integer> small = IntStream.range(0, 10).boxed().collect(Collectors.toList());
+        List<Integer> large = IntStream.range(0, 200_000).boxed().collect(Collectors.toList());
+        try (AdaptiveStreamExecutor executor = new AdaptiveStreamExecutor()) {
+            for (int i = 0; i < 3; i++) {
+                executor.execute("small-sum", small,
+                    s -> s.mapToLong(n -> n * 2L).sum());
+                executor.execute("heavy-sum", large,
+                    s -> s.mapToDouble(n -> Math.sqrt(n) * Math.log(n + 1)).sum());
+                executor.execute("io", list,
+                    s -> s.map(n -> {
+                        try { Thread.sleep(10); } catch (InterruptedException e) {}
+                        return n * 2;
+                    }).collect(Collectors.toList()),
+                    AdaptiveStreamExecutor.Trait.BLOCKING);
+            }
+            executor.history().forEach(d -> System.out.println("  " + d));
+        }
         System.out.println();
 
         // 良い使い方の例
@@ -0,0 +1,80 @@
+package app;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * I/O待ち（sleep）を含む map の比較ベンチマーク
+ *
+ * parallelStream() と VirtualThreadMapper.mapConcurrent() で同じ件数の sleep を流して、
+ * 所要時間・スループット・ピーク時のプラットフォームスレッド数・使用ヒープを比べる。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.MapConcurrentBenchmark [quick]
+ */
+public class MapConcurrentBenchmark {
+    static final long SLEEP_MILLIS = 10;
+
+    public static void main(String[] args) {
+        boolean quick = args.length > 0 && args[0].equals("quick");
+        int elements = quick ? 2_000 : 20_000;
+        List<Integer> ids = IntStream.range(0, elements).boxed().collect(Collectors.toList());
+
+        System.out.println("=== mapConcurrent ベンチマーク ===");
+        System.out.println("要素数: " + elements + ", 1要素あたり sleep " + SLEEP_MILLIS + "ms");
+        System.out.println("仮想スレッド: " + (VirtualThreadMapper.usesVirtualThreads() ? "使用" : "未対応のJVMなので代用スレッド"));
+        System.out.println();
+
+        if (!quick) {
+            // 共通プールだと 20,000件 × 10ms / 並列度 かかるので quick では省く
+            report("parallelStream (共通プール)", elements,
+                () -> ids.parallelStream().map(MapConcurrentBenchmark::blockingCall).count());
+        }
+        for (int maxConcurrency : new int[] {100, 1_000}) {
+            report("mapConcurrent ordered   max=" + maxConcurrency, elements, () -> {
+                try (Stream<Integer> s = VirtualThreadMapper.mapConcurrent(
+                        ids.stream(), maxConcurrency, true, MapConcurrentBenchmark::blockingCall)) {
+                    return s.count();
+                }
+            });
+            report("mapConcurrent unordered max=" + maxConcurrency, elements, () -> {
+                try (Stream<Integer> s = VirtualThreadMapper.mapConcurrent(
+                        ids.stream(), maxConcurrency, false, MapConcurrentBenchmark::blockingCall)) {
+                    return s.count();
+                }
+            });
+        }
+    }
+
+    // ブロッキングする I/O 呼び出しのつもり
+    static Integer blockingCall(Integer id) {
+        try {
+            Thread.sleep(SLEEP_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return id * 2;
+    }
+
+    private static void report(String name, int elements, Supplier<Long> run) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        threads.resetPeakThreadCount();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+
+        long start = System.nanoTime();
+        long count = run.get();
+        long elapsed = System.nanoTime() - start;
+
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("%-36s %6dms  %8.0f ops/s  ピークスレッド=%4d  ヒープ増分=%5dKB  (件数=%d)%n",
+            name, elapsed / 1_000_000, elements / (elapsed / 1e9), threads.getPeakThreadCount(),
+            (heapAfter - heapBefore) / 1024, count);
+    }
+}
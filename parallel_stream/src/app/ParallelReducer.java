@@ -0,0 +1,265 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+
+/**
+ * 結果がプールサイズに左右されない並列リダクション
+ *
+ * Stream.reduce() の分割の仕方は共通プールの並列度で変わる。
+ * 整数の足し算なら問題ないが、double の足し算は結合則が成り立たない（丸め誤差がある）ので、
+ * 分割が変わると合計の最後の桁が変わってしまう。
+ *
+ * ParallelReducer はプールに関係なく「固定サイズの葉 → 半分ずつの平衡木で結合」という
+ * 同じ形で計算するので、並列度 1 でも 64 でも結果がビット単位で一致する。
+ *
+ * - sum(double[])      : Neumaier 補正付きの合計（誤差がほぼ出ない）
+ * - reduce(...)        : 任意の reduce。checked() で作ると identity / 結合則の違反をサンプリングで検出する
+ */
+public final class ParallelReducer {
+    static final int DEFAULT_LEAF_SIZE = 4_096;
+    // 違反は最初のこの件数だけ覚える（毎回検査すると、同じ違反が結合の回数だけ出るので）
+    static final int MAX_VIOLATIONS = 100;
+
+    private final ForkJoinPool pool;
+    private final int leafSize;
+    // 0 なら検査しない、それ以外は1/sampleEvery の確率で検査する
+    private final int sampleEvery;
+    private final List<String> violations = Collections.synchronizedList(new ArrayList<>());
+
+    private ParallelReducer(ForkJoinPool pool, int leafSize, int sampleEvery) {
+        if (leafSize <= 0) {
+            throw new IllegalArgumentException("leafSize must be positive: " + leafSize);
+        }
+        this.pool = Objects.requireNonNull(pool);
+        this.leafSize = leafSize;
+        this.sampleEvery = sampleEvery;
+    }
+
+    // 共通プールで動く標準設定
+    public static ParallelReducer create() {
+        return new ParallelReducer(ForkJoinPool.commonPool(), DEFAULT_LEAF_SIZE, 0);
+    }
+
+    // 指定したプールで動かす（葉のサイズが同じなら結果はプールに関係なく同じ）
+    public static ParallelReducer on(ForkJoinPool pool, int leafSize) {
+        return new ParallelReducer(pool, leafSize, 0);
+    }
+
+    /**
+     * デバッグ用: identity と結合則の違反をサンプリングで検出する
+     * @param sampleEvery 何回の結合につき1回検査するか（1なら毎回）
+     */
+    public static ParallelReducer checked(int sampleEvery) {
+        if (sampleEvery <= 0) {
+            throw new IllegalArgumentException("sampleEvery must be positive: " + sampleEvery);
+        }
+        return new ParallelReducer(ForkJoinPool.commonPool(), DEFAULT_LEAF_SIZE, sampleEvery);
+    }
+
+    // 葉のサイズだけ変えたコピー（小さくすると結合の回数が増える）
+    public ParallelReducer withLeafSize(int newLeafSize) {
+        return new ParallelReducer(pool, newLeafSize, sampleEvery);
+    }
+
+    // 検出した違反（checked() のときだけ記録される。最初の MAX_VIOLATIONS 件まで）
+    public List<String> violations() {
+        synchronized (violations) {
+            return new ArrayList<>(violations);
+        }
+    }
+
+    private void addViolation(String violation) {
+        synchronized (violations) {
+            if (violations.size() < MAX_VIOLATIONS) {
+                violations.add(violation);
+            }
+        }
+    }
+
+    // ==================== double の合計 ====================
+
+    /**
+     * Neumaier 補正付きの並列合計
+     * 各葉で (合計, 補正値) を計算し、結合でも補正を引き継ぐ
+     */
+    public double sum(double[] values) {
+        double[] result = pool.invoke(new CompensatedSumTask(values, 0, values.length, leafSize));
+        return result[0] + result[1];
+    }
+
+    /**
+     * 補正なしの並列合計（比較用）
+     * 木の形は sum() と同じなので、補正の有無だけの差が見られる
+     */
+    public double plainSum(double[] values) {
+        return pool.invoke(new PlainSumTask(values, 0, values.length, leafSize));
+    }
+
+    static final class CompensatedSumTask extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+        private final double[] values;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        CompensatedSumTask(double[] values, int from, int to, int leafSize) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from <= leafSize) {
+                double sum = 0;
+                double compensation = 0;
+                for (int i = from; i < to; i++) {
+                    double x = values[i];
+                    double t = sum + x;
+                    // 大きい方から小さい方を引くと、t で失われた下位ビットが取り出せる
+                    if (Math.abs(sum) >= Math.abs(x)) {
+                        compensation += (sum - t) + x;
+                    } else {
+                        compensation += (x - t) + sum;
+                    }
+                    sum = t;
+                }
+                return new double[] {sum, compensation};
+            }
+            int mid = (from + to) >>> 1;
+            CompensatedSumTask left = new CompensatedSumTask(values, from, mid, leafSize);
+            CompensatedSumTask right = new CompensatedSumTask(values, mid, to, leafSize);
+            left.fork();
+            double[] r = right.compute();
+            double[] l = left.join();
+            return combine(l, r);
+        }
+
+        // (合計, 補正) 同士の結合も同じやり方で誤差を拾う
+        static double[] combine(double[] l, double[] r) {
+            double sum = l[0] + r[0];
+            double error = Math.abs(l[0]) >= Math.abs(r[0])
+                ? (l[0] - sum) + r[0]
+                : (r[0] - sum) + l[0];
+            return new double[] {sum, l[1] + r[1] + error};
+        }
+    }
+
+    static final class PlainSumTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+        private final double[] values;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        PlainSumTask(double[] values, int from, int to, int leafSize) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from <= leafSize) {
+                double sum = 0;
+                for (int i = from; i < to; i++) {
+                    sum += values[i];
+                }
+                return sum;
+            }
+            int mid = (from + to) >>> 1;
+            PlainSumTask left = new PlainSumTask(values, from, mid, leafSize);
+            PlainSumTask right = new PlainSumTask(values, mid, to, leafSize);
+            left.fork();
+            double r = right.compute();
+            return left.join() + r;
+        }
+    }
+
+    // ==================== 汎用の reduce ====================
+
+    // Stream.reduce(identity, op) に相当
+    public <T> T reduce(List<T> source, T identity, BinaryOperator<T> op) {
+        return reduce(source, identity, op::apply, op);
+    }
+
+    /**
+     * Stream.reduce(identity, accumulator, combiner) に相当
+     * source は ArrayList のようにランダムアクセスできるリストであること
+     */
+    public <T, A> A reduce(List<T> source, A identity, BiFunction<A, ? super T, A> accumulator,
+                           BinaryOperator<A> combiner) {
+        return pool.invoke(new ReduceTask<>(source, 0, source.size(), identity, accumulator, combiner));
+    }
+
+    final class ReduceTask<T, A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+        private final List<T> source;
+        private final int from;
+        private final int to;
+        private final A identity;
+        private final BiFunction<A, ? super T, A> accumulator;
+        private final BinaryOperator<A> combiner;
+
+        ReduceTask(List<T> source, int from, int to, A identity,
+                   BiFunction<A, ? super T, A> accumulator, BinaryOperator<A> combiner) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+            this.identity = identity;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from <= leafSize) {
+                A acc = identity;
+                for (int i = from; i < to; i++) {
+                    acc = accumulator.apply(acc, source.get(i));
+                }
+                return acc;
+            }
+            int mid = (from + to) >>> 1;
+            ReduceTask<T, A> left = new ReduceTask<>(source, from, mid, identity, accumulator, combiner);
+            ReduceTask<T, A> right = new ReduceTask<>(source, mid, to, identity, accumulator, combiner);
+            left.fork();
+            A r = right.compute();
+            A l = left.join();
+            A combined = combiner.apply(l, r);
+            if (sampleEvery > 0 && ThreadLocalRandom.current().nextInt(sampleEvery) == 0) {
+                check(l, r, combined);
+            }
+            return combined;
+        }
+
+        // 実際に結合した値を使って、identity と結合則を検査する
+        private void check(A l, A r, A combined) {
+            A withIdentity = combiner.apply(identity, l);
+            if (!Objects.equals(withIdentity, l)) {
+                addViolation("identity違反: combiner(identity, " + l + ") = " + withIdentity);
+            }
+            A identityRight = combiner.apply(r, identity);
+            if (!Objects.equals(identityRight, r)) {
+                addViolation("identity違反: combiner(" + r + ", identity) = " + identityRight);
+            }
+            // (l ⊕ r) ⊕ x と l ⊕ (r ⊕ x): x には左の部分結果を使う
+            A leftAssoc = combiner.apply(combined, l);
+            A rightAssoc = combiner.apply(l, combiner.apply(r, l));
+            if (!Objects.equals(leftAssoc, rightAssoc)) {
+                addViolation("結合則違反: (" + l + " ⊕ " + r + ") ⊕ " + l + " = " + leftAssoc
+                    + " ≠ " + l + " ⊕ (" + r + " ⊕ " + l + ") = " + rightAssoc);
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package app;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * 並列の累積（prefix scan）
+ *
+ * [1, 2, 3, 4] → [1, 3, 6, 10] のような「ここまでの合計」はひとつ前の結果に依存するので、
+ * map / reduce のようには単純に並列化できない。ここでは2パスのアルゴリズムで並列化する。
+ *
+ *   1パス目（並列）: 配列をブロックに分けて、各ブロックの合計だけを出す
+ *   間（逐次）    : ブロック合計を累積して、各ブロックの「開始値（carry）」を決める ← ブロック数ぶんだけなので軽い
+ *   2パス目（並列）: 各ブロックが carry から自分の範囲を累積する
+ *
+ * op は結合則を満たすこと（足し算・掛け算・max など）。Arrays.parallelPrefix と同じ条件。
+ * 元の配列は書き換えず、新しい配列を返す。ストリーム版の scan(LongStream, op) なども同じ計算を使う。
+ *
+ * 2パスの流れは run() に1つだけ書き、long / int / double / 参照型の違いは Combiner（配列の範囲を累積するだけ）に閉じ込めている。
+ */
+public final class ParallelScan {
+    // これ未満は逐次ループのほうが速い
+    static final int SEQUENTIAL_THRESHOLD = 1 << 14;
+    // 1ワーカーあたりのブロック数（偏りをならすため少し多めに割る）
+    static final int BLOCKS_PER_WORKER = 4;
+
+    private ParallelScan() {
+    }
+
+    public static long[] scan(long[] values, LongBinaryOperator op) {
+        long[] result = values.clone();
+        run(new LongCombiner(result, op));
+        return result;
+    }
+
+    public static int[] scan(int[] values, IntBinaryOperator op) {
+        int[] result = values.clone();
+        run(new IntCombiner(result, op));
+        return result;
+    }
+
+    public static double[] scan(double[] values, DoubleBinaryOperator op) {
+        double[] result = values.clone();
+        run(new DoubleCombiner(result, op));
+        return result;
+    }
+
+    public static <T> T[] scan(T[] values, BinaryOperator<T> op) {
+        T[] result = values.clone();
+        run(new ObjectCombiner<>(result, op));
+        return result;
+    }
+
+    // List 版（中で配列にしてから scan する）
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> scan(List<T> values, BinaryOperator<T> op) {
+        return Arrays.asList(scan((T[]) values.toArray(), op));
+    }
+
+    /**
+     * ストリームの累積（中間操作のように使えるが、source は最初に toArray() で全部読む）
+     * 配列・ArrayList のような SIZED なソースなら toArray() が最終サイズの配列に直接書くので、余計なコピーはない。
+     * 並列かどうかは source に合わせる
+     *
+     *   LongStream running = ParallelScan.scan(Arrays.stream(values).parallel(), Long::sum);
+     */
+    public static LongStream scan(LongStream source, LongBinaryOperator op) {
+        // toArray() の結果は自分だけの配列なので、その場で累積する（clone しない）
+        long[] values = source.toArray();
+        run(new LongCombiner(values, op));
+        LongStream result = Arrays.stream(values);
+        return (source.isParallel() ? result.parallel() : result).onClose(source::close);
+    }
+
+    public static IntStream scan(IntStream source, IntBinaryOperator op) {
+        int[] values = source.toArray();
+        run(new IntCombiner(values, op));
+        IntStream result = Arrays.stream(values);
+        return (source.isParallel() ? result.parallel() : result).onClose(source::close);
+    }
+
+    public static DoubleStream scan(DoubleStream source, DoubleBinaryOperator op) {
+        double[] values = source.toArray();
+        run(new DoubleCombiner(values, op));
+        DoubleStream result = Arrays.stream(values);
+        return (source.isParallel() ? result.parallel() : result).onClose(source::close);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Stream<T> scan(Stream<T> source, BinaryOperator<T> op) {
+        T[] values = (T[]) source.toArray();
+        run(new ObjectCombiner<>(values, op));
+        Stream<T> result = Arrays.stream(values);
+        return (source.isParallel() ? result.parallel() : result).onClose(source::close);
+    }
+
+    // 2パスの流れ（型に関係ない部分）。要素の読み書きは Combiner が位置で行う
+    private static void run(Combiner c) {
+        int n = c.length;
+        if (n == 0) {
+            return;
+        }
+        int blocks = c.blocks;
+        if (blocks == 1) {
+            c.scanBlock(0, 0, n);
+            return;
+        }
+        // 1パス目: ブロック内で累積（最後の値がブロック合計になる）
+        IntStream.range(0, blocks).parallel()
+            .forEach(b -> c.scanBlock(b, blockStart(b, blocks, n), blockStart(b + 1, blocks, n)));
+        // ブロック合計の累積（逐次）
+        c.scanTotals();
+        // 2パス目: 前のブロックまでの合計を足し込む
+        IntStream.range(1, blocks).parallel()
+            .forEach(b -> c.addCarry(b, blockStart(b, blocks, n), blockStart(b + 1, blocks, n)));
+    }
+
+    /**
+     * 型ごとの部分: 配列の範囲 [from, to) を op で累積するだけ
+     * 1要素ずつ呼ぶメソッドにすると、4つの型で呼び出し先が混ざって JIT がインライン化できなくなるので、
+     * ループは範囲ごとに各型の中に置く
+     */
+    private abstract static class Combiner {
+        final int length;
+        // ブロック数（逐次で済む長さなら 1）
+        final int blocks;
+
+        Combiner(int length) {
+            this.length = length;
+            this.blocks = length < SEQUENTIAL_THRESHOLD ? 1 : blockCount(length);
+        }
+
+        // a[i] = op(a[i - 1], a[i]) を [from, to) で行い、a[to - 1] を totals[b] に入れる
+        abstract void scanBlock(int b, int from, int to);
+
+        // totals[b] = op(totals[b - 1], totals[b])
+        abstract void scanTotals();
+
+        // a[i] = op(totals[b - 1], a[i]) を [from, to) で行う
+        abstract void addCarry(int b, int from, int to);
+    }
+
+    private static final class LongCombiner extends Combiner {
+        private final long[] a;
+        private final long[] totals;
+        private final LongBinaryOperator op;
+
+        LongCombiner(long[] a, LongBinaryOperator op) {
+            super(a.length);
+            this.a = a;
+            this.totals = new long[blocks];
+            this.op = op;
+        }
+
+        @Override
+        void scanBlock(int b, int from, int to) {
+            for (int i = from + 1; i < to; i++) {
+                a[i] = op.applyAsLong(a[i - 1], a[i]);
+            }
+            totals[b] = a[to - 1];
+        }
+
+        @Override
+        void scanTotals() {
+            for (int b = 1; b < blocks; b++) {
+                totals[b] = op.applyAsLong(totals[b - 1], totals[b]);
+            }
+        }
+
+        @Override
+        void addCarry(int b, int from, int to) {
+            long carry = totals[b - 1];
+            for (int i = from; i < to; i++) {
+                a[i] = op.applyAsLong(carry, a[i]);
+            }
+        }
+    }
+
+    private static final class IntCombiner extends Combiner {
+        private final int[] a;
+        private final int[] totals;
+        private final IntBinaryOperator op;
+
+        IntCombiner(int[] a, IntBinaryOperator op) {
+            super(a.length);
+            this.a = a;
+            this.totals = new int[blocks];
+            this.op = op;
+        }
+
+        @Override
+        void scanBlock(int b, int from, int to) {
+            for (int i = from + 1; i < to; i++) {
+                a[i] = op.applyAsInt(a[i - 1], a[i]);
+            }
+            totals[b] = a[to - 1];
+        }
+
+        @Override
+        void scanTotals() {
+            for (int b = 1; b < blocks; b++) {
+                totals[b] = op.applyAsInt(totals[b - 1], totals[b]);
+            }
+        }
+
+        @Override
+        void addCarry(int b, int from, int to) {
+            int carry = totals[b - 1];
+            for (int i = from; i < to; i++) {
+                a[i] = op.applyAsInt(carry, a[i]);
+            }
+        }
+    }
+
+    private static final class DoubleCombiner extends Combiner {
+        private final double[] a;
+        private final double[] totals;
+        private final DoubleBinaryOperator op;
+
+        DoubleCombiner(double[] a, DoubleBinaryOperator op) {
+            super(a.length);
+            this.a = a;
+            this.totals = new double[blocks];
+            this.op = op;
+        }
+
+        @Override
+        void scanBlock(int b, int from, int to) {
+            for (int i = from + 1; i < to; i++) {
+                a[i] = op.applyAsDouble(a[i - 1], a[i]);
+            }
+            totals[b] = a[to - 1];
+        }
+
+        @Override
+        void scanTotals() {
+            for (int b = 1; b < blocks; b++) {
+                totals[b] = op.applyAsDouble(totals[b - 1], totals[b]);
+            }
+        }
+
+        @Override
+        void addCarry(int b, int from, int to) {
+            double carry = totals[b - 1];
+            for (int i = from; i < to; i++) {
+                a[i] = op.applyAsDouble(carry, a[i]);
+            }
+        }
+    }
+
+    private static final class ObjectCombiner<T> extends Combiner {
+        private final T[] a;
+        private final T[] totals;
+        private final BinaryOperator<T> op;
+
+        ObjectCombiner(T[] a, BinaryOperator<T> op) {
+            super(a.length);
+            this.a = a;
+            // 要素と同じ型の配列にする（blocks は長さ以下なので中身は上書きされる）
+            this.totals = Arrays.copyOf(a, blocks);
+            this.op = op;
+        }
+
+        @Override
+        void scanBlock(int b, int from, int to) {
+            for (int i = from + 1; i < to; i++) {
+                a[i] = op.apply(a[i - 1], a[i]);
+            }
+            totals[b] = a[to - 1];
+        }
+
+        @Override
+        void scanTotals() {
+            for (int b = 1; b < blocks; b++) {
+                totals[b] = op.apply(totals[b - 1], totals[b]);
+            }
+        }
+
+        @Override
+        void addCarry(int b, int from, int to) {
+            T carry = totals[b - 1];
+            for (int i = from; i < to; i++) {
+                a[i] = op.apply(carry, a[i]);
+            }
+        }
+    }
+
+    private static int blockCount(int n) {
+        int workers = Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+        return Math.max(1, Math.min(n, workers * BLOCKS_PER_WORKER));
+    }
+
+    // ブロック b の開始位置（ブロックサイズの差は高々1）
+    private static int blockStart(int b, int blocks, int n) {
+        return (int) ((long) b * n / blocks);
+    }
+}
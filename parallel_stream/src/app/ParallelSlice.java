@@ -0,0 +1,152 @@
+package app;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 並列でも速い skip / limit（順序は保証したまま）
+ *
+ * 順序付きの並列ストリームで skip(n).limit(m) をすると、
+ * 各分割が「自分は全体の何番目からか」を知らないので、結果をバッファして調整する必要がある。
+ * （Main.orderPreservationIssues() / statefulOperationsWarning() で「遅い」と言っているのはこれ）
+ *
+ * ArrayList や配列のように SIZED | SUBSIZED なソースなら、分割した時点で各範囲の位置が正確にわかる。
+ * そこで分割のたびに [skip, skip + limit) と重ならない部分は捨て、重なる部分だけを各ワーカーに渡す。
+ * 各ワーカーは自分の範囲しか触らないので、バッファも調整も不要になる。
+ */
+public final class ParallelSlice {
+
+    private ParallelSlice() {
+    }
+
+    /**
+     * list の [skip, skip + limit) を、順序どおりの並列ストリームとして返す
+     * list.parallelStream().skip(skip).limit(limit) と同じ結果になる
+     */
+    public static <T> Stream<T> slice(List<T> list, long skip, long limit) {
+        return StreamSupport.stream(slice(list.spliterator(), skip, limit), true);
+    }
+
+    public static <T> Stream<T> slice(T[] array, long skip, long limit) {
+        return StreamSupport.stream(slice(Arrays.spliterator(array), skip, limit), true);
+    }
+
+    /**
+     * SUBSIZED な Spliterator を [skip, skip + limit) に切り詰める
+     * SUBSIZED でないソース（LinkedList、HashSet など）は位置が計算できないので受け付けない
+     */
+    public static <T> Spliterator<T> slice(Spliterator<T> source, long skip, long limit) {
+        Objects.requireNonNull(source);
+        if (skip < 0 || limit < 0) {
+            throw new IllegalArgumentException("skip / limit は 0 以上: skip=" + skip + ", limit=" + limit);
+        }
+        if (!source.hasCharacteristics(Spliterator.SUBSIZED)) {
+            throw new IllegalArgumentException("SUBSIZED なソースのみ対応: " + source.getClass().getName());
+        }
+        long fence = limit > Long.MAX_VALUE - skip ? Long.MAX_VALUE : skip + limit;
+        return new SliceSpliterator<>(source, 0, skip, fence);
+    }
+
+    /**
+     * 全体の中での位置（index）を持ちながら分割する Spliterator
+     * [sliceOrigin, sliceFence) の外側は分割時に捨てる
+     */
+    static final class SliceSpliterator<T> implements Spliterator<T> {
+        private Spliterator<T> source;
+        // source の先頭要素の、元のソース全体での位置
+        private long index;
+        private final long sliceOrigin;
+        private final long sliceFence;
+
+        SliceSpliterator(Spliterator<T> source, long index, long sliceOrigin, long sliceFence) {
+            this.source = source;
+            this.index = index;
+            this.sliceOrigin = sliceOrigin;
+            this.sliceFence = sliceFence;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            while (true) {
+                if (estimateSize() == 0) {
+                    return null;
+                }
+                Spliterator<T> prefix = source.trySplit();
+                if (prefix == null) {
+                    return null;
+                }
+                long prefixEnd = index + prefix.estimateSize();
+                if (prefixEnd <= sliceOrigin) {
+                    // 前半はまるごと範囲より前: 捨てて後半をさらに割る
+                    index = prefixEnd;
+                } else if (prefixEnd >= sliceFence) {
+                    // 後半はまるごと範囲より後: 後半を捨てて前半をさらに割る
+                    source = prefix;
+                } else {
+                    // 範囲をまたいでいる: 前半を新しい分割として返す
+                    SliceSpliterator<T> split = new SliceSpliterator<>(prefix, index, sliceOrigin, sliceFence);
+                    index = prefixEnd;
+                    return split;
+                }
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            skipToOrigin();
+            if (index >= sliceFence) {
+                return false;
+            }
+            if (source.tryAdvance(action)) {
+                index++;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            skipToOrigin();
+            long remaining = source.estimateSize();
+            if (index + remaining <= sliceFence) {
+                // 残りがまるごと範囲内なら、元の Spliterator の一括処理に任せる
+                index += remaining;
+                source.forEachRemaining(action);
+                return;
+            }
+            while (index < sliceFence && source.tryAdvance(action)) {
+                index++;
+            }
+        }
+
+        // 範囲の手前にある要素を読み飛ばす（範囲の端をまたぐ葉でだけ起きる）
+        private void skipToOrigin() {
+            while (index < sliceOrigin && source.tryAdvance(e -> { })) {
+                index++;
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            long start = Math.max(index, sliceOrigin);
+            long end = Math.min(sliceFence, index + source.estimateSize());
+            return Math.max(0, end - start);
+        }
+
+        @Override
+        public int characteristics() {
+            return source.characteristics() & (ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL | DISTINCT | SORTED);
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            return source.getComparator();
+        }
+    }
+}
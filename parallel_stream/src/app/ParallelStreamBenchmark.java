@@ -0,0 +1,142 @@
+package app;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Main.performanceConsiderations() / whenNotToUseParallel() の計測をちゃんとやり直すベンチマーク
+ *
+ * Main側は System.nanoTime() を1回測るだけなので、JITが温まる前の数字になってしまう。
+ * こっちはウォームアップ付きで何回も回して、平均と誤差（99.9%信頼区間）を出す。
+ *
+ * 実行方法:
+ *   javac -d out $(find src -name "*.java")
+ *   java -p out -m app/app.ParallelStreamBenchmark            (標準設定)
+ *   java -p out -m app/app.ParallelStreamBenchmark quick      (短時間のお試し)
+ */
+public class ParallelStreamBenchmark {
+    // パラメータ: 要素数とプール幅（0 = 共通プール）
+    static final int[] SIZES = {10, 1_000_000};
+    static final int[] POOL_WIDTHS = {0, 1, 2, 4};
+    static final int[] IO_SIZES = {5, 20};
+    static final long IO_SLEEP_MILLIS = 10;
+
+    public static void main(String[] args) {
+        Bench bench = args.length > 0 && args[0].equals("quick")
+            ? new Bench(2, 3, 200)
+            : Bench.defaults();
+        List<Bench.Result> results = Bench.newResults();
+
+        System.out.println("=== Parallel Stream ベンチマーク ===");
+        System.out.println("共通プールの並列度: " + ForkJoinPool.getCommonPoolParallelism() + "\n");
+
+        for (int size : SIZES) {
+            List<Integer> boxed = IntStream.rangeClosed(1, size)
+                .boxed()
+                .collect(Collectors.toList());
+
+            // シーケンシャルはプール幅に依存しないので1回だけ
+            results.add(bench.run("boxed.reduce.sequential", params(size, -1),
+                () -> reduceBoxed(boxed, false)));
+            results.add(bench.run("boxed.mapToLong.sequential", params(size, -1),
+                () -> mapToLongBoxed(boxed, false)));
+            results.add(bench.run("intStream.sum.sequential", params(size, -1),
+                () -> sumIntStream(size, false)));
+
+            for (int width : POOL_WIDTHS) {
+                ForkJoinPool pool = width == 0 ? null : new ForkJoinPool(width);
+                try {
+                    results.add(bench.run("boxed.reduce.parallel", params(size, width),
+                        () -> inPool(pool, () -> reduceBoxed(boxed, true))));
+                    results.add(bench.run("boxed.mapToLong.parallel", params(size, width),
+                        () -> inPool(pool, () -> mapToLongBoxed(boxed, true))));
+                    results.add(bench.run("intStream.sum.parallel", params(size, width),
+                        () -> inPool(pool, () -> sumIntStream(size, true))));
+                } finally {
+                    if (pool != null) {
+                        pool.shutdown();
+                    }
+                }
+            }
+        }
+
+        // I/O（sleep）を含むケース
+        for (int size : IO_SIZES) {
+            List<Integer> boxed = IntStream.rangeClosed(1, size)
+                .boxed()
+                .collect(Collectors.toList());
+            results.add(bench.run("sleepIo.sequential", params(size, -1),
+                () -> sleepIo(boxed, false)));
+            for (int width : POOL_WIDTHS) {
+                ForkJoinPool pool = width == 0 ? null : new ForkJoinPool(width);
+                try {
+                    results.add(bench.run("sleepIo.parallel", params(size, width),
+                        () -> inPool(pool, () -> sleepIo(boxed, true))));
+                } finally {
+                    if (pool != null) {
+                        pool.shutdown();
+                    }
+                }
+            }
+        }
+
+        Bench.printAll(results);
+    }
+
+    // Main.performanceConsiderations() の小さいデータセット側と同じ処理
+    static long reduceBoxed(List<Integer> list, boolean parallel) {
+        return (parallel ? list.parallelStream() : list.stream())
+            .map(n -> n * 2)
+            .reduce(0, Integer::sum);
+    }
+
+    // Main.performanceConsiderations() の大きいデータセット側と同じ処理
+    static long mapToLongBoxed(List<Integer> list, boolean parallel) {
+        return (parallel ? list.parallelStream() : list.stream())
+            .mapToLong(n -> n * 2L)
+            .sum();
+    }
+
+    // ボクシングしない IntStream 版
+    static long sumIntStream(int size, boolean parallel) {
+        IntStream stream = IntStream.rangeClosed(1, size);
+        return (parallel ? stream.parallel() : stream)
+            .mapToLong(n -> n * 2L)
+            .sum();
+    }
+
+    // Main.whenNotToUseParallel() の I/O シミュレーションと同じ処理
+    static long sleepIo(List<Integer> list, boolean parallel) {
+        return (parallel ? list.parallelStream() : list.stream())
+            .map(n -> {
+                try {
+                    Thread.sleep(IO_SLEEP_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return n * 2;
+            })
+            .collect(Collectors.toList())
+            .size();
+    }
+
+    // 指定したプールの中で並列ストリームを実行する（null なら共通プール）
+    static long inPool(ForkJoinPool pool, LongSupplier task) {
+        if (pool == null) {
+            return task.getAsLong();
+        }
+        return pool.submit(task::getAsLong).join();
+    }
+
+    private static Map<String, Object> params(int size, int width) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("size", size);
+        params.put("pool", width < 0 ? "-" : width == 0 ? "common" : width);
+        return params;
+    }
+}
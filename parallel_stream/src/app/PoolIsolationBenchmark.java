@@ -0,0 +1,117 @@
+package app;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 共通プールと StreamPoolScope の分離の効果を比べるベンチマーク
+ *
+ * CPUを食う reduce をバックグラウンドで回し続けながら、
+ * レイテンシが大事な findAny を何回も実行して、その待ち時間の分布（p50 / p99 / 最大）を見る。
+ *
+ *   1. 負荷なし            : findAny だけ（基準値）
+ *   2. 共通プールを共有     : 重い reduce も findAny も共通プール
+ *   3. スコープで分離       : 重い reduce は "batch"、findAny は "latency" スコープ
+ *
+ * 実行方法:
+ *   java -p out -m app/app.PoolIsolationBenchmark [quick]
+ */
+public class PoolIsolationBenchmark {
+    static final int HEAVY_SIZE = 2_000_000;
+    static final int SEARCH_SIZE = 200_000;
+    static final int BACKGROUND_THREADS = 2;
+
+    public static void main(String[] args) throws InterruptedException {
+        boolean quick = args.length > 0 && args[0].equals("quick");
+        int samples = quick ? 50 : 500;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        List<Integer> heavyData = IntStream.range(0, HEAVY_SIZE).boxed().collect(Collectors.toList());
+        List<Integer> searchData = IntStream.range(0, SEARCH_SIZE).boxed().collect(Collectors.toList());
+
+        System.out.println("=== プール分離ベンチマーク ===");
+        System.out.println("CPU数: " + cores + ", 共通プール並列度: " + ForkJoinPool.getCommonPoolParallelism());
+
+        // ウォームアップ
+        measureFindAny(samples, () -> findAny(searchData));
+
+        System.out.println("\n--- 1. 負荷なし ---");
+        print(measureFindAny(samples, () -> findAny(searchData)));
+
+        System.out.println("\n--- 2. 重い reduce と共通プールを共有 ---");
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread[] background = startHeavyLoad(stop, () -> heavyReduce(heavyData));
+        print(measureFindAny(samples, () -> findAny(searchData)));
+        stopAll(stop, background);
+
+        System.out.println("\n--- 3. StreamPoolScope で分離 ---");
+        int batchWidth = Math.max(1, cores - 1);
+        try (StreamPoolScope batch = new StreamPoolScope("batch", batchWidth);
+             StreamPoolScope latency = new StreamPoolScope("latency", Math.max(1, cores / 2))) {
+            stop.set(false);
+            background = startHeavyLoad(stop, () -> batch.run(() -> heavyReduce(heavyData)));
+            print(measureFindAny(samples, () -> latency.run(() -> findAny(searchData))));
+            stopAll(stop, background);
+            System.out.println(batch.metrics());
+            System.out.println(latency.metrics());
+        }
+    }
+
+    // CPU負荷の高い reduce（1要素ごとに sqrt と log）
+    static double heavyReduce(List<Integer> data) {
+        return data.parallelStream()
+            .mapToDouble(n -> Math.sqrt(n) * Math.log(n + 1.0))
+            .reduce(0.0, Double::sum);
+    }
+
+    // レイテンシ重視の findAny
+    static int findAny(List<Integer> data) {
+        return data.parallelStream()
+            .filter(n -> n % 9973 == 9972)
+            .findAny()
+            .orElse(-1);
+    }
+
+    private static Thread[] startHeavyLoad(AtomicBoolean stop, Supplier<Double> work) {
+        Thread[] threads = new Thread[BACKGROUND_THREADS];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                while (!stop.get()) {
+                    Bench.consume(Double.doubleToLongBits(work.get()));
+                }
+            }, "heavy-load-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        return threads;
+    }
+
+    private static void stopAll(AtomicBoolean stop, Thread[] threads) throws InterruptedException {
+        stop.set(true);
+        for (Thread t : threads) {
+            t.join();
+        }
+    }
+
+    private static long[] measureFindAny(int samples, Supplier<Integer> op) {
+        long[] latencies = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            long start = System.nanoTime();
+            Bench.consume(op.get());
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static void print(long[] sorted) {
+        System.out.printf("findAny: p50=%.2fms, p99=%.2fms, 最大=%.2fms (%d回)%n",
+            Bench.percentile(sorted, 0.50) / 1e6, Bench.percentile(sorted, 0.99) / 1e6,
+            sorted[sorted.length - 1] / 1e6, sorted.length);
+    }
+}
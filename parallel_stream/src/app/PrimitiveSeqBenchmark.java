@@ -0,0 +1,64 @@
+package app;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * ボクシングあり（List<Integer>）と IntSeq の比較ベンチマーク
+ *
+ * Main.performanceConsiderations() の「100万要素を parallelStream().mapToLong(n -> n * 2L).sum()」を
+ * 両方の経路で測って、速度（ns/op）と割り当て量（B/op）の差を見る。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.PrimitiveSeqBenchmark [quick]
+ */
+public class PrimitiveSeqBenchmark {
+    static final int[] SIZES = {10_000, 1_000_000};
+
+    public static void main(String[] args) {
+        Bench bench = args.length > 0 && args[0].equals("quick")
+            ? new Bench(2, 3, 200)
+            : Bench.defaults();
+        List<Bench.Result> results = Bench.newResults();
+
+        for (int size : SIZES) {
+            List<Integer> boxed = IntStream.rangeClosed(1, size)
+                .boxed()
+                .collect(Collectors.toList());
+            IntSeq seq = IntSeq.range(1, size + 1);
+
+            // 合計: Main と同じ mapToLong(...).sum()
+            results.add(bench.run("boxed.mapToLong.sum.sequential", params(size),
+                () -> boxed.stream().mapToLong(n -> n * 2L).sum()));
+            results.add(bench.run("boxed.mapToLong.sum.parallel", params(size),
+                () -> boxed.parallelStream().mapToLong(n -> n * 2L).sum()));
+            results.add(bench.run("intSeq.sumAsLong.sequential", params(size),
+                () -> seq.sumAsLong(n -> n * 2L)));
+            results.add(bench.run("intSeq.sumAsLong.parallel", params(size),
+                () -> seq.parallel().sumAsLong(n -> n * 2L)));
+
+            // map → filter → reduce: 中間結果も含めてボクシングの差が出る
+            results.add(bench.run("boxed.mapFilterReduce.parallel", params(size),
+                () -> boxed.parallelStream()
+                    .map(n -> n * 3)
+                    .filter(n -> (n & 1) == 0)
+                    .reduce(0, Integer::sum)));
+            results.add(bench.run("intSeq.mapFilterReduce.parallel", params(size),
+                () -> seq.parallel()
+                    .map(n -> n * 3)
+                    .filter(n -> (n & 1) == 0)
+                    .reduce(0, Integer::sum)));
+        }
+
+        Bench.printAll(results);
+    }
+
+    private static Map<String, Object> params(int size) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("size", size);
+        return params;
+    }
+}
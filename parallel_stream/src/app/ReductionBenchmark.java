@@ -0,0 +1,73 @@
+package app;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * double 合計の速度と再現性のベンチマーク
+ *
+ * - reduce(0.0, Double::sum)  : 補正なし、分割は並列度しだい
+ * - DoubleStream.sum()        : JDK の補正付き合計、分割は並列度しだい
+ * - ParallelReducer.plainSum  : 補正なし、固定の平衡木
+ * - ParallelReducer.sum       : Neumaier 補正付き、固定の平衡木
+ *
+ * 実行方法:
+ *   java -p out -m app/app.ReductionBenchmark [quick]
+ */
+public class ReductionBenchmark {
+    static final int SIZE = 4_000_000;
+    static final int[] POOL_WIDTHS = {1, 2, 4, 8};
+
+    public static void main(String[] args) {
+        Bench bench = args.length > 0 && args[0].equals("quick")
+            ? new Bench(2, 3, 200)
+            : Bench.defaults();
+        List<Bench.Result> results = Bench.newResults();
+
+        // 桁の違う値を混ぜて、丸め誤差が出やすいデータにする
+        Random random = new Random(42);
+        double[] values = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            values[i] = random.nextBoolean() ? random.nextDouble() * 1e10 : random.nextDouble() * 1e-3;
+        }
+
+        System.out.println("=== 再現性（並列度ごとの結果） ===");
+        for (int width : POOL_WIDTHS) {
+            ForkJoinPool pool = new ForkJoinPool(width);
+            try {
+                ParallelReducer reducer = ParallelReducer.on(pool, ParallelReducer.DEFAULT_LEAF_SIZE);
+                double reduce = pool.submit(() -> Arrays.stream(values).parallel().reduce(0.0, Double::sum)).join();
+                double jdkSum = pool.submit(() -> Arrays.stream(values).parallel().sum()).join();
+                System.out.printf("並列度%-2d reduce=%.6f  DoubleStream.sum=%.6f  plainSum=%.6f  sum=%.6f%n",
+                    width, reduce, jdkSum, reducer.plainSum(values), reducer.sum(values));
+
+                results.add(bench.run("stream.reduce", params(width),
+                    () -> Double.doubleToLongBits(pool.submit(
+                        () -> Arrays.stream(values).parallel().reduce(0.0, Double::sum)).join())));
+                results.add(bench.run("stream.sum", params(width),
+                    () -> Double.doubleToLongBits(pool.submit(
+                        () -> Arrays.stream(values).parallel().sum()).join())));
+                results.add(bench.run("parallelReducer.plainSum", params(width),
+                    () -> Double.doubleToLongBits(reducer.plainSum(values))));
+                results.add(bench.run("parallelReducer.sum", params(width),
+                    () -> Double.doubleToLongBits(reducer.sum(values))));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        System.out.println();
+
+        Bench.printAll(results);
+    }
+
+    private static Map<String, Object> params(int width) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("size", SIZE);
+        params.put("pool", width);
+        return params;
+    }
+}
@@ -0,0 +1,73 @@
+package app;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+
+/**
+ * 累積（prefix scan）のベンチマーク
+ *
+ * - 逐次ループ                : result[i] = result[i - 1] + values[i]
+ * - Arrays.parallelPrefix     : JDK 標準（配列をその場で書き換える）
+ * - ParallelScan.scan         : 2パスの並列 scan
+ * - ParallelScan.scan(stream) : 配列からの並列ストリームに scan をかけて最後の値を取る（toArray の分が上乗せされる）
+ *
+ * 実行方法（1億要素の long[] は 800MB あるので、ヒープを大きめにとる）:
+ *   java -Xmx4g -p out -m app/app.ScanBenchmark          (100万 / 1000万 / 1億要素)
+ *   java -p out -m app/app.ScanBenchmark quick           (100万 / 1000万要素)
+ */
+public class ScanBenchmark {
+
+    public static void main(String[] args) {
+        boolean quick = args.length > 0 && args[0].equals("quick");
+        Bench bench = quick ? new Bench(2, 3, 300) : Bench.defaults();
+        int[] sizes = quick ? new int[] {1_000_000, 10_000_000} : new int[] {1_000_000, 10_000_000, 100_000_000};
+        List<Bench.Result> results = Bench.newResults();
+
+        for (int size : sizes) {
+            long[] values = new long[size];
+            Arrays.setAll(values, i -> i % 1000);
+
+            // 正しさの確認: 逐次ループと一致すること
+            if (!Arrays.equals(sequentialScan(values), ParallelScan.scan(values, Long::sum))) {
+                throw new IllegalStateException("scan の結果が一致しない: size=" + size);
+            }
+
+            results.add(bench.run("sequentialLoop", params(size),
+                () -> last(sequentialScan(values))));
+            results.add(bench.run("Arrays.parallelPrefix", params(size), () -> {
+                long[] copy = values.clone();
+                Arrays.parallelPrefix(copy, Long::sum);
+                return last(copy);
+            }));
+            results.add(bench.run("ParallelScan.scan", params(size),
+                () -> last(ParallelScan.scan(values, Long::sum))));
+            results.add(bench.run("ParallelScan.scan(stream)", params(size), () -> {
+                OptionalLong last = ParallelScan.scan(Arrays.stream(values).parallel(), Long::sum).reduce((a, b) -> b);
+                return last.getAsLong();
+            }));
+        }
+
+        Bench.printAll(results);
+    }
+
+    static long[] sequentialScan(long[] values) {
+        long[] result = values.clone();
+        for (int i = 1; i < result.length; i++) {
+            result[i] = result[i - 1] + result[i];
+        }
+        return result;
+    }
+
+    private static long last(long[] values) {
+        return values[values.length - 1];
+    }
+
+    private static Map<String, Object> params(int size) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("size", size);
+        return params;
+    }
+}
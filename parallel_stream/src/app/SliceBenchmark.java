@@ -0,0 +1,68 @@
+package app;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 並列ストリームの skip / limit と ParallelSlice の比較ベンチマーク
+ *
+ * どちらも順序を保ったまま [skip, skip + limit) の要素を加工して合計する。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.SliceBenchmark [quick]
+ */
+public class SliceBenchmark {
+    static final int SIZE = 4_000_000;
+
+    public static void main(String[] args) {
+        Bench bench = args.length > 0 && args[0].equals("quick")
+            ? new Bench(2, 3, 200)
+            : Bench.defaults();
+        List<Bench.Result> results = Bench.newResults();
+
+        List<Integer> data = IntStream.range(0, SIZE).boxed().collect(Collectors.toList());
+
+        // 先頭付近・真ん中・末尾付近を切り出す
+        long[][] windows = {{0, SIZE / 10}, {SIZE / 4, SIZE / 2}, {SIZE - SIZE / 10, SIZE / 10}};
+        for (long[] w : windows) {
+            long skip = w[0];
+            long limit = w[1];
+            // 結果が一致することを先に確認しておく
+            if (skipLimit(data, skip, limit, true) != slice(data, skip, limit)) {
+                throw new IllegalStateException("結果が一致しない: skip=" + skip + ", limit=" + limit);
+            }
+            results.add(bench.run("skipLimit.sequential", params(skip, limit),
+                () -> skipLimit(data, skip, limit, false)));
+            results.add(bench.run("skipLimit.parallel", params(skip, limit),
+                () -> skipLimit(data, skip, limit, true)));
+            results.add(bench.run("parallelSlice", params(skip, limit),
+                () -> slice(data, skip, limit)));
+        }
+
+        Bench.printAll(results);
+    }
+
+    static long skipLimit(List<Integer> data, long skip, long limit, boolean parallel) {
+        return (parallel ? data.parallelStream() : data.stream())
+            .skip(skip)
+            .limit(limit)
+            .mapToLong(n -> n * 31L)
+            .sum();
+    }
+
+    static long slice(List<Integer> data, long skip, long limit) {
+        return ParallelSlice.slice(data, skip, limit)
+            .mapToLong(n -> n * 31L)
+            .sum();
+    }
+
+    private static Map<String, Object> params(long skip, long limit) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("skip", skip);
+        params.put("limit", limit);
+        return params;
+    }
+}
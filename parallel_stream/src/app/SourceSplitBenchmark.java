@@ -0,0 +1,139 @@
+package app;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 分割しにくいソースの並列効率を、BalancedSpliterators で再チャンク化する前後で比べるベンチマーク
+ *
+ * ソースごとに
+ *   - sequential : 逐次
+ *   - parallel   : そのまま .parallel()
+ *   - rechunked  : BalancedSpliterators で再チャンク化して並列
+ * を測り、最後に「並列効率 = 逐次の時間 / (並列の時間 × ワーカー数)」を表にする。
+ * ArrayList は最初からよく分割されるので、比較の基準として入れてある。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.SourceSplitBenchmark [quick]
+ */
+public class SourceSplitBenchmark {
+    static final int SIZE = 200_000;
+    // 1要素あたりの計算量（軽すぎると分割の差が出ない）
+    static final int WORK = 200;
+    // Stream.generate で作る値（1要素あたりの仕事は値によらないので、何でもよい）
+    static final int GENERATED = 7;
+
+    public static void main(String[] args) throws IOException {
+        Bench bench = args.length > 0 && args[0].equals("quick")
+            ? new Bench(2, 3, 200)
+            : Bench.defaults();
+        List<Bench.Result> results = Bench.newResults();
+
+        List<Integer> arrayList = IntStream.range(0, SIZE).boxed().collect(Collectors.toList());
+        List<Integer> linkedList = new LinkedList<>(arrayList);
+        Path file = Files.createTempFile("source-split", ".txt");
+        file.toFile().deleteOnExit();
+        Files.write(file, arrayList.stream().map(String::valueOf).collect(Collectors.toList()));
+
+        Map<String, Supplier<Stream<Integer>>> sources = new LinkedHashMap<>();
+        sources.put("ArrayList", arrayList::stream);
+        sources.put("LinkedList", linkedList::stream);
+        sources.put("Stream.iterate", () -> Stream.iterate(0, n -> n < SIZE, n -> n + 1));
+        // generate は順序なし・無限なので、中身は同じ値にする（並列だと何番目の値が limit で残るか決まらないため）
+        sources.put("Stream.generate", () -> Stream.generate(() -> GENERATED).limit(SIZE));
+        sources.put("Iterator", () -> iteratorStream(arrayList));
+        sources.put("Files.lines", () -> lines(file).map(Integer::valueOf));
+
+        Map<String, double[]> efficiency = new LinkedHashMap<>();
+        for (Map.Entry<String, Supplier<Stream<Integer>>> entry : sources.entrySet()) {
+            String name = entry.getKey();
+            Supplier<Stream<Integer>> source = entry.getValue();
+            // 正しさの確認: 再チャンク化しても、同じソースを逐次で流した結果と一致すること
+            if (consume(BalancedSpliterators.parallel(source.get())) != consume(source.get())) {
+                throw new IllegalStateException("結果が一致しない: " + name);
+            }
+            Bench.Result sequential = bench.run("sequential", params(name), () -> consume(source.get()));
+            Bench.Result parallel = bench.run("parallel", params(name), () -> consume(source.get().parallel()));
+            Bench.Result rechunked = bench.run("rechunked", params(name),
+                () -> consume(BalancedSpliterators.parallel(source.get())));
+            results.add(sequential);
+            results.add(parallel);
+            results.add(rechunked);
+            efficiency.put(name, new double[] {
+                efficiency(sequential, parallel), efficiency(sequential, rechunked)});
+        }
+
+        Bench.printAll(results);
+
+        int workers = ForkJoinPool.getCommonPoolParallelism() + 1;
+        System.out.printf("%n並列効率（逐次の時間 / (並列の時間 × %d ワーカー)、1.0 が理想）%n", workers);
+        System.out.printf("%-16s %10s %10s%n", "source", "parallel", "rechunked");
+        for (Map.Entry<String, double[]> entry : efficiency.entrySet()) {
+            System.out.printf("%-16s %10.2f %10.2f%n", entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+
+        // 分割の様子も見ておく（LinkedList のそのままと再チャンク後）
+        SplitTelemetry before = new SplitTelemetry();
+        long start = System.nanoTime();
+        consume(before.stream(linkedList.spliterator()));
+        System.out.println("\nLinkedList そのまま: " + before.summarize(System.nanoTime() - start, workers, 0));
+        SplitTelemetry after = new SplitTelemetry();
+        start = System.nanoTime();
+        consume(after.stream(BalancedSpliterators.rechunk(linkedList.spliterator())));
+        System.out.println("LinkedList 再チャンク: " + after.summarize(System.nanoTime() - start, workers, 0));
+    }
+
+    static long consume(Stream<Integer> stream) {
+        try (stream) {
+            return stream.mapToLong(SourceSplitBenchmark::work).sum();
+        }
+    }
+
+    // CPU を使うだけの処理
+    static long work(int n) {
+        long x = n;
+        for (int i = 0; i < WORK; i++) {
+            x = x * 6364136223846793005L + 1442695040888963407L;
+        }
+        return x >>> 60;
+    }
+
+    // サイズのわからない Iterator からのストリーム（JDK 標準の分割）
+    static Stream<Integer> iteratorStream(List<Integer> list) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(list.iterator(), Spliterator.ORDERED), false);
+    }
+
+    static Stream<String> lines(Path file) {
+        try {
+            return Files.lines(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // 逐次の時間 / (並列の時間 × ワーカー数)
+    private static double efficiency(Bench.Result sequential, Bench.Result parallel) {
+        int workers = ForkJoinPool.getCommonPoolParallelism() + 1;
+        return sequential.meanNs / (parallel.meanNs * workers);
+    }
+
+    private static Map<String, Object> params(String source) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("source", source);
+        return params;
+    }
+}
@@ -0,0 +1,266 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 並列ストリームの分割の様子を記録する計測レイヤー
+ *
+ * Spliterator を包んで、分割されてできた「葉」ごとに
+ *   - 処理した要素数
+ *   - 処理にかかった時間
+ *   - 処理したワーカースレッド
+ * を記録する。あわせてプールのスティール数と実行時間から、
+ * 偏り（skew）・葉の処理時間の p50 / p99・アイドル率をまとめる。
+ *
+ * Main.performanceConsiderations() で「思ったほど速くならない」ときに、
+ * 分割が粗すぎるのか、偏っているのか、そもそもワーカーが足りないのかを見分けるために使う。
+ *
+ * 各葉は JFR イベント（app.SplitLeaf）としても出るので、
+ * java -XX:StartFlightRecording=filename=split.jfr ... で記録して JDK Mission Control で見られる。
+ *
+ * ※ findAny() などの短絡操作で途中で打ち切られた葉は記録されない
+ */
+public final class SplitTelemetry {
+    private final ConcurrentLinkedQueue<Leaf> leaves = new ConcurrentLinkedQueue<>();
+
+    /**
+     * pipeline を計測しながら並列実行する
+     * @param pool 実行するプール（null なら共通プール）
+     */
+    public static <T, R> Report<R> trace(ForkJoinPool pool, Collection<T> source, Function<Stream<T>, R> pipeline) {
+        ForkJoinPool target = pool == null ? ForkJoinPool.commonPool() : pool;
+        SplitTelemetry telemetry = new SplitTelemetry();
+        long stealsBefore = target.getStealCount();
+        long start = System.nanoTime();
+        R result;
+        if (pool == null) {
+            result = pipeline.apply(telemetry.stream(source.spliterator()));
+        } else {
+            result = pool.submit(() -> pipeline.apply(telemetry.stream(source.spliterator()))).join();
+        }
+        long wallNanos = System.nanoTime() - start;
+        long steals = target.getStealCount() - stealsBefore;
+        // 共通プールのときは呼び出し元スレッドも葉を処理するので、その分を足す
+        int workers = pool == null ? target.getParallelism() + 1 : target.getParallelism();
+        return new Report<>(result, telemetry.summarize(wallNanos, workers, steals));
+    }
+
+    // 計測付きの並列ストリームを作る（集計は summarize() で）
+    public <T> Stream<T> stream(Spliterator<T> source) {
+        return StreamSupport.stream(new TracingSpliterator<>(source, 0), true);
+    }
+
+    public Summary summarize(long wallNanos, int parallelism, long steals) {
+        return new Summary(new ArrayList<>(leaves), wallNanos, parallelism, steals);
+    }
+
+    /**
+     * 分割されるたびに自分のコピーを返し、走査時に葉として記録する Spliterator
+     */
+    final class TracingSpliterator<T> implements Spliterator<T> {
+        private final Spliterator<T> source;
+        private final int depth;
+        private long count;
+        private long startNanos;
+        // 葉は1回だけ記録する（使い切ったあとにまた tryAdvance / forEachRemaining が呼ばれても数えない）
+        private boolean finished;
+
+        TracingSpliterator(Spliterator<T> source, int depth) {
+            this.source = source;
+            this.depth = depth;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            Spliterator<T> prefix = source.trySplit();
+            return prefix == null ? null : new TracingSpliterator<>(prefix, depth + 1);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (startNanos == 0) {
+                startNanos = System.nanoTime();
+            }
+            if (source.tryAdvance(action)) {
+                count++;
+                return true;
+            }
+            finish();
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (startNanos == 0) {
+                startNanos = System.nanoTime();
+            }
+            source.forEachRemaining(e -> {
+                count++;
+                action.accept(e);
+            });
+            finish();
+        }
+
+        private void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            long duration = System.nanoTime() - startNanos;
+            Thread thread = Thread.currentThread();
+            Leaf leaf = new Leaf(count, duration, thread.getId(), thread.getName(), depth);
+            leaves.add(leaf);
+
+            SplitLeafEvent event = new SplitLeafEvent();
+            if (event.isEnabled()) {
+                event.elements = count;
+                event.durationNanos = duration;
+                event.depth = depth;
+                event.commit();
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return source.characteristics();
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            return source.getComparator();
+        }
+    }
+
+    // 葉1つぶんの記録
+    public static final class Leaf {
+        public final long elements;
+        public final long durationNanos;
+        public final long threadId;
+        public final String threadName;
+        public final int depth;
+
+        Leaf(long elements, long durationNanos, long threadId, String threadName, int depth) {
+            this.elements = elements;
+            this.durationNanos = durationNanos;
+            this.threadId = threadId;
+            this.threadName = threadName;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * 計測結果のまとめ
+     */
+    public static final class Summary {
+        public final List<Leaf> leaves;
+        public final long wallNanos;
+        public final int parallelism;
+        public final long steals;
+
+        Summary(List<Leaf> leaves, long wallNanos, int parallelism, long steals) {
+            this.leaves = leaves;
+            this.wallNanos = wallNanos;
+            this.parallelism = parallelism;
+            this.steals = steals;
+        }
+
+        public int leafCount() {
+            return leaves.size();
+        }
+
+        // 最大の葉の要素数 / 平均（1.0 なら完全に均等）
+        public double elementSkew() {
+            long max = leaves.stream().mapToLong(l -> l.elements).max().orElse(0);
+            double mean = leaves.stream().mapToLong(l -> l.elements).average().orElse(0);
+            return mean == 0 ? 0 : max / mean;
+        }
+
+        // 最も遅い葉の時間 / 平均
+        public double timeSkew() {
+            long max = leaves.stream().mapToLong(l -> l.durationNanos).max().orElse(0);
+            double mean = leaves.stream().mapToLong(l -> l.durationNanos).average().orElse(0);
+            return mean == 0 ? 0 : max / mean;
+        }
+
+        public long leafTimePercentile(double p) {
+            long[] sorted = leaves.stream().mapToLong(l -> l.durationNanos).sorted().toArray();
+            return Bench.percentile(sorted, p);
+        }
+
+        // ワーカーが働いていなかった時間の割合（壁時計 × 並列度 に対して）
+        public double idleRatio() {
+            long busy = leaves.stream().mapToLong(l -> l.durationNanos).sum();
+            double capacity = (double) wallNanos * parallelism;
+            return capacity == 0 ? 0 : Math.max(0, 1 - busy / capacity);
+        }
+
+        // スレッドごとの処理要素数
+        public Map<String, Long> elementsPerThread() {
+            Map<String, Long> perThread = new TreeMap<>();
+            for (Leaf leaf : leaves) {
+                perThread.merge(leaf.threadName, leaf.elements, Long::sum);
+            }
+            return perThread;
+        }
+
+        @Override
+        public String toString() {
+            int maxDepth = leaves.stream().mapToInt(l -> l.depth).max().orElse(0);
+            return String.format("葉=%d (最大深さ%d), 要素の偏り=%.2f, 時間の偏り=%.2f, "
+                    + "葉の時間 p50=%.1fμs p99=%.1fμs, スティール=%d, アイドル率=%.0f%%, 全体=%.1fms%n"
+                    + "  スレッド別要素数: %s",
+                leafCount(), maxDepth, elementSkew(), timeSkew(),
+                leafTimePercentile(0.50) / 1e3, leafTimePercentile(0.99) / 1e3,
+                steals, idleRatio() * 100, wallNanos / 1e6, elementsPerThread());
+        }
+    }
+
+    // 結果と計測のセット
+    public static final class Report<R> {
+        public final R result;
+        public final Summary summary;
+
+        Report(R result, Summary summary) {
+            this.result = result;
+            this.summary = summary;
+        }
+    }
+
+    @Name("app.SplitLeaf")
+    @Label("Parallel Stream Split Leaf")
+    @Category({"App", "Parallel Stream"})
+    @Description("並列ストリームの葉1つぶんの処理")
+    static final class SplitLeafEvent extends Event {
+        @Label("Elements")
+        long elements;
+
+        @Label("Duration (ns)")
+        long durationNanos;
+
+        @Label("Split Depth")
+        int depth;
+    }
+}
@@ -0,0 +1,198 @@
+package app;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 名前付き・サイズ固定の ForkJoinPool で並列ストリームを動かすスコープ
+ *
+ * parallelStream() は何もしないと JVM 全体で1つの共通プールを使うので、
+ * 重いパイプラインが1本あるだけで他の並列ストリームが待たされる。
+ * ForkJoinPool のワーカースレッド上で始めた並列ストリームはそのプールで分割実行されるので、
+ * 用途ごとにスコープを分ければお互いに干渉しなくなる。
+ *
+ * キューの長さの最大（peakQueuedTasks）は、パイプラインが動いている間 SAMPLE_INTERVAL_MILLIS ごとに見た値。
+ * 分割されたタスクがたまるのはパイプラインの途中なので、submit した直後だけ見ても最大はわからない。
+ *
+ * <pre>
+ * try (StreamPoolScope batch = new StreamPoolScope("batch", 2)) {
+ *     long sum = batch.run(() -> list.parallelStream().mapToLong(n -> n).sum());
+ *     System.out.println(batch.metrics());
+ * }
+ * </pre>
+ */
+public final class StreamPoolScope implements AutoCloseable {
+    static final long SAMPLE_INTERVAL_MILLIS = 1;
+    // 全部のスコープで1本を使い回す（動いているスコープがあるときだけ仕事がある）
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "stream-pool-sampler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final String name;
+    private final ForkJoinPool pool;
+
+    private final AtomicLong pipelines = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong peakQueuedTasks = new AtomicLong();
+    // パイプラインが動いている間だけ予約しておく（this で守る）
+    private ScheduledFuture<?> sampling;
+
+    /**
+     * @param name スコープ名（ワーカースレッド名の接頭辞になる）
+     * @param parallelism ワーカースレッド数（上限もこの数で固定）
+     */
+    public StreamPoolScope(String name, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.name = name;
+        AtomicInteger workerIndex = new AtomicInteger();
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName(name + "-worker-" + workerIndex.getAndIncrement());
+            return thread;
+        };
+        // maximumPoolSize = parallelism: ブロックしても補償スレッドを増やさない（有界）
+        this.pool = new ForkJoinPool(parallelism, factory, null, false,
+            parallelism, parallelism, 1, p -> true, 60, TimeUnit.SECONDS);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int parallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * pipeline をこのスコープのプールで実行して結果を返す
+     * pipeline の中で作った並列ストリームはこのプールのワーカーだけで処理される
+     */
+    public <R> R run(Supplier<R> pipeline) {
+        if (inFlight.incrementAndGet() == 1) {
+            updateSampling();
+        }
+        long start = System.nanoTime();
+        try {
+            ForkJoinTask<R> task = pool.submit(pipeline::get);
+            recordQueueDepth();
+            return task.join();
+        } finally {
+            totalNanos.addAndGet(System.nanoTime() - start);
+            pipelines.incrementAndGet();
+            if (inFlight.decrementAndGet() == 0) {
+                updateSampling();
+            }
+        }
+    }
+
+    // 動いているパイプラインがあればキューの長さを見に行き、なければやめる
+    // （0 ↔ 1 の変わり目で呼ぶ。行き違っても、ロックの中で今の inFlight を見るので最後は合う）
+    private synchronized void updateSampling() {
+        boolean running = inFlight.get() > 0;
+        if (running && sampling == null) {
+            sampling = SAMPLER.scheduleAtFixedRate(this::recordQueueDepth,
+                SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } else if (!running && sampling != null) {
+            sampling.cancel(false);
+            sampling = null;
+        }
+    }
+
+    // 戻り値のないパイプライン用
+    public void execute(Runnable pipeline) {
+        run(() -> {
+            pipeline.run();
+            return null;
+        });
+    }
+
+    ForkJoinPool pool() {
+        return pool;
+    }
+
+    private void recordQueueDepth() {
+        long depth = pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount();
+        peakQueuedTasks.accumulateAndGet(depth, Math::max);
+    }
+
+    // 現時点の統計のスナップショット
+    public Metrics metrics() {
+        recordQueueDepth();
+        return new Metrics(name, pool.getParallelism(), pool.getPoolSize(), pool.getActiveThreadCount(),
+            pool.getQueuedTaskCount(), pool.getQueuedSubmissionCount(), peakQueuedTasks.get(),
+            pool.getStealCount(), inFlight.get(), pipelines.get(), totalNanos.get());
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (sampling != null) {
+                sampling.cancel(false);
+                sampling = null;
+            }
+        }
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(10, TimeUnit.SECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * スコープの統計
+     */
+    public static final class Metrics {
+        public final String name;
+        public final int parallelism;
+        public final int poolSize;
+        public final int activeThreads;
+        public final long queuedTasks;
+        public final long queuedSubmissions;
+        public final long peakQueuedTasks;
+        public final long steals;
+        public final int inFlightPipelines;
+        public final long completedPipelines;
+        public final long totalNanos;
+
+        Metrics(String name, int parallelism, int poolSize, int activeThreads, long queuedTasks,
+                long queuedSubmissions, long peakQueuedTasks, long steals, int inFlightPipelines,
+                long completedPipelines, long totalNanos) {
+            this.name = name;
+            this.parallelism = parallelism;
+            this.poolSize = poolSize;
+            this.activeThreads = activeThreads;
+            this.queuedTasks = queuedTasks;
+            this.queuedSubmissions = queuedSubmissions;
+            this.peakQueuedTasks = peakQueuedTasks;
+            this.steals = steals;
+            this.inFlightPipelines = inFlightPipelines;
+            this.completedPipelines = completedPipelines;
+            this.totalNanos = totalNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%s] 並列度=%d, スレッド=%d, 稼働中=%d, キュー=%d(+投入待ち%d, 最大%d), "
+                    + "スティール=%d, 実行中=%d, 完了=%d, 合計=%dms",
+                name, parallelism, poolSize, activeThreads, queuedTasks, queuedSubmissions,
+                peakQueuedTasks, steals, inFlightPipelines, completedPipelines, totalNanos / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package app;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * ブロッキングする map を仮想スレッドで並行実行するストリーム段（mapConcurrent 風）
+ *
+ * Main.whenNotToUseParallel() の「Thread.sleep(10) を parallelStream() で回す」やり方だと、
+ * 同時に待てる数が共通プールのスレッド数で頭打ちになり、しかもワーカースレッドを待たせてしまう。
+ * ここでは1要素ごとに仮想スレッドを起動し、同時実行数だけを maxConcurrency で抑える。
+ *
+ * <pre>
+ * try (Stream&lt;String&gt; results = VirtualThreadMapper.mapConcurrent(ids.stream(), 1000, true, id -&gt; fetch(id))) {
+ *     results.forEach(System.out::println);
+ * }
+ * </pre>
+ *
+ * - ordered = true  : 入力と同じ順番で出力する（先頭の結果が出るまで後続は待つ）
+ * - ordered = false : 終わった順に出力する
+ * - 実行中の要素は最大 maxConcurrency 個なので、入力が何万件でもメモリはほぼ一定
+ * - ストリームを close したとき、関数が例外を投げたとき、呼び出し元スレッドが割り込まれたときは、
+ *   実行中のタスクをすべてキャンセル（割り込み）する
+ *
+ * ※ 仮想スレッドは Java 21 から。それより前の JVM ではデーモンのプラットフォームスレッドで代用する
+ *   （動作は同じだが、同時数千件だとスレッドのメモリが効いてくる）
+ */
+public final class VirtualThreadMapper {
+    private static final ThreadFactory THREAD_FACTORY = createThreadFactory();
+
+    private VirtualThreadMapper() {
+    }
+
+    // 仮想スレッドで実行されるかどうか
+    public static boolean usesVirtualThreads() {
+        return !(THREAD_FACTORY instanceof PlatformThreadFactory);
+    }
+
+    /**
+     * source の各要素に mapper を並行適用したストリームを返す（遅延評価）
+     * 返したストリームは try-with-resources で close すること
+     */
+    public static <T, R> Stream<R> mapConcurrent(Stream<T> source, int maxConcurrency, boolean ordered,
+                                                 Function<? super T, ? extends R> mapper) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        Objects.requireNonNull(mapper);
+        Window<T, R> window = new Window<>(source.iterator(), maxConcurrency, ordered, mapper);
+        return StreamSupport.stream(window, false)
+            .onClose(window::cancelAll)
+            .onClose(source::close);
+    }
+
+    /**
+     * 実行中のタスクを最大 maxConcurrency 個まで持つ Spliterator
+     * 後段の並列化はしない（並行性は仮想スレッド側で出す）ので trySplit はしない
+     */
+    static final class Window<T, R> extends Spliterators.AbstractSpliterator<R> {
+        private final Iterator<T> source;
+        private final int maxConcurrency;
+        private final boolean ordered;
+        private final Function<? super T, ? extends R> mapper;
+        // 起動順（ordered のときはこの先頭から出力する）
+        // close() は別のスレッドから呼ばれることがあるので、読み書きはすべて synchronized (inFlight) の中で行う
+        private final Set<Task> inFlight = new LinkedHashSet<>();
+        // 完了したタスク（unordered のときはここから出力する）
+        private final LinkedBlockingQueue<Task> completed = new LinkedBlockingQueue<>();
+        private volatile boolean cancelled;
+
+        Window(Iterator<T> source, int maxConcurrency, boolean ordered, Function<? super T, ? extends R> mapper) {
+            super(Long.MAX_VALUE, ordered ? ORDERED : 0);
+            this.source = source;
+            this.maxConcurrency = maxConcurrency;
+            this.ordered = ordered;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super R> action) {
+            if (cancelled) {
+                throw new CancellationException("mapConcurrent は既にキャンセルされている");
+            }
+            fill();
+            Task next;
+            synchronized (inFlight) {
+                if (cancelled) {
+                    throw new CancellationException("mapConcurrent は既にキャンセルされている");
+                }
+                if (inFlight.isEmpty()) {
+                    return false;
+                }
+                // ordered のときは結果が出るまで inFlight に残す（待っている間に cancelAll() されたら一緒に止まる）
+                next = ordered ? inFlight.iterator().next() : null;
+            }
+            try {
+                if (!ordered) {
+                    // 待つ間はロックを持たない（cancelAll() がキャンセルすると done() でここに入ってくる）
+                    next = completed.take();
+                    synchronized (inFlight) {
+                        inFlight.remove(next);
+                    }
+                }
+                // 結果を待つ間もロックを持たない
+                R result = next.get();
+                if (ordered) {
+                    synchronized (inFlight) {
+                        inFlight.remove(next);
+                    }
+                }
+                // 出力する前に空いた枠を埋めて、後段の処理中も I/O を進めておく
+                fill();
+                action.accept(result);
+                return true;
+            } catch (InterruptedException e) {
+                cancelAll();
+                Thread.currentThread().interrupt();
+                throw new CancellationException("呼び出し元スレッドが割り込まれた");
+            } catch (ExecutionException e) {
+                cancelAll();
+                throw new CompletionException(e.getCause());
+            } catch (CancellationException e) {
+                cancelAll();
+                throw e;
+            }
+        }
+
+        // 入力を読むのは呼び出し元スレッドだけ。遅い入力を待つ間に cancelAll() を止めないよう、ロックの外で読む
+        private void fill() {
+            while (true) {
+                synchronized (inFlight) {
+                    if (cancelled || inFlight.size() >= maxConcurrency) {
+                        return;
+                    }
+                }
+                if (!source.hasNext()) {
+                    return;
+                }
+                T element = source.next();
+                Task task = new Task(() -> mapper.apply(element));
+                synchronized (inFlight) {
+                    // 読んでいる間にキャンセルされたら起動しない
+                    if (cancelled) {
+                        return;
+                    }
+                    inFlight.add(task);
+                    THREAD_FACTORY.newThread(task).start();
+                }
+            }
+        }
+
+        // ストリームの close() から、別のスレッドで呼ばれることもある
+        void cancelAll() {
+            List<Task> tasks;
+            synchronized (inFlight) {
+                cancelled = true;
+                tasks = new ArrayList<>(inFlight);
+                inFlight.clear();
+            }
+            // cancel は done() を呼ぶので、ロックの外で行う
+            for (Task task : tasks) {
+                task.cancel(true);
+            }
+        }
+
+        // 完了時に completed キューへ入る FutureTask
+        final class Task extends FutureTask<R> {
+            Task(Callable<R> callable) {
+                super(callable);
+            }
+
+            @Override
+            protected void done() {
+                if (!ordered) {
+                    completed.add(this);
+                }
+            }
+        }
+    }
+
+    // Java 21 以降なら Thread.ofVirtual().factory() を使う（17 でもコンパイルできるようリフレクション経由）
+    private static ThreadFactory createThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object named = builderType.getMethod("name", String.class, long.class)
+                .invoke(builder, "map-concurrent-", 0L);
+            Method factory = builderType.getMethod("factory");
+            return (ThreadFactory) factory.invoke(named);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return new PlatformThreadFactory();
+        }
+    }
+
+    private static final class PlatformThreadFactory implements ThreadFactory {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(null, r, "map-concurrent-" + index.getAndIncrement(), 256 * 1024);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
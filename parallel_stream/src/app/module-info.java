@@ -1 +1,6 @@
-module app {}
+module app {
+    // Bench の割り当てバイト数計測（com.sun.management.ThreadMXBean）で使う
+    requires jdk.management;
+    // SplitTelemetry の JFR イベントで使う
+    requires jdk.jfr;
+}
@@ -3,6 +3,7 @@ package app;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 public class Main {
@@ -194,6 +195,21 @@ public class Main {
             System.out.println("  試行" + (i + 1) + ": " + result.get());
         }
 
+        // 専用の ForkJoinPool: 共通プールが他の重い処理で埋まっていても影響を受けない
+        // （ForkJoinPool のワーカー上で始めた並列ストリームは、そのプールで実行される）
+        System.out.println("\n--- 専用プールでの並列ストリーム ---");
+        ForkJoinPool searchPool = new ForkJoinPool(2);
+        try {
+            for (int i = 0; i < 3; i++) {
+                Optional<Integer> result = searchPool.submit(() -> largeList.parallelStream()
+                        .filter(n -> n > 5)
+                        .findAny()).join();
+                System.out.println("  試行" + (i + 1) + ": " + result.get());
+            }
+        } finally {
+            searchPool.shutdown();
+        }
+
         System.out.println("\n※並列ストリームでは、findAny()の結果は不定");
         System.out.println("  どのスレッドが最初に要素を見つけるかに依存する");
         System.out.println("  順序が重要でない場合は findAny() を使うと効率的\n");
@@ -0,0 +1,297 @@
+package app;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * long キーの並行ハッシュマップの共通部分（値の型ごとのクラスは ConcurrentLongIntMap / ConcurrentLongLongMap）
+ *
+ * ConcurrentHashMap<Long, Integer> は1件ごとに Node・Long・Integer の3オブジェクトを作る（64bit JVM で 1件 ~80B）。
+ * ここでは long[] のキー配列と int[] / long[] の値配列だけで持つ（オープンアドレス法・線形探索）。
+ *
+ * - キーを segments 個の区画（segment）に振り分け、区画ごとに StampedLock と表を持つ
+ * - 読み取りは楽観的読み取り（tryOptimisticRead → validate）。ロックを取らず、共有メモリにも書かない
+ *   書き込みと重なったときだけ読みロックを取ってやり直す
+ * - 書き込みと拡張は区画ごとの書きロックで行う。拡張中も止まるのはその区画だけ（striped resizing）
+ * - キー 0 は「空き」の印に使うので、値配列の最後の1枠を 0 専用にする
+ * - 削除は墓標を残さず、後ろの要素を詰め直す（backward shift）
+ *
+ * 値の型に関係ない処理（探索・確保・拡張・削除・size / containsKey / remove / clear）はすべてここに置く。
+ * 値を読み書きする get / put / addTo / forEach だけは値の型ごとのクラスに1つずつ書く。
+ * V を int[] / long[] のまま値を返す共通メソッドにするとボクシングが入り、配列だけで持つ意味がなくなるため
+ * （IntStream / LongStream が別々にあるのと同じ理由）。ほかの値の型が要るときも、このサブクラスを写して作る。
+ *
+ * @param <V> 値配列の型（int[] か long[]）
+ */
+abstract class AbstractConcurrentLongMap<V> {
+    static final int DEFAULT_EXPECTED_SIZE = 1 << 10;
+    // これを超えたら区画の表を倍にする
+    static final float LOAD_FACTOR = 0.6f;
+    static final int MIN_SEGMENT_CAPACITY = 16;
+    static final int MAX_SEGMENT_CAPACITY = 1 << 30;
+
+    final Segment<V>[] segments;
+    // ハッシュの上位ビットで区画、下位ビットで区画内の位置を決める
+    private final int segmentShift;
+
+    AbstractConcurrentLongMap(long expectedSize, int concurrencyLevel) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative: " + expectedSize);
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel must be positive: " + concurrencyLevel);
+        }
+        int count = Math.max(2, Integer.highestOneBit(Math.min(concurrencyLevel, 1 << 16) * 2 - 1));
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(count);
+        this.segments = newSegments(count);
+        int capacity = capacityFor((expectedSize + count - 1) / count);
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(newTable(capacity));
+        }
+    }
+
+    // ジェネリクスの配列は直接作れないので、ワイルドカードの配列を作ってキャストする（中身は Segment<V> しか入れない）
+    @SuppressWarnings("unchecked")
+    private static <V> Segment<V>[] newSegments(int count) {
+        return (Segment<V>[]) new Segment<?>[count];
+    }
+
+    // 既定の区画数（CPU 数の 4 倍。書き込みがぶつかる確率を下げる）
+    static int defaultConcurrencyLevel() {
+        return Runtime.getRuntime().availableProcessors() * 4;
+    }
+
+    private static int capacityFor(long entries) {
+        long needed = (long) Math.ceil(entries / (double) LOAD_FACTOR) + 1;
+        if (needed >= MAX_SEGMENT_CAPACITY) {
+            return MAX_SEGMENT_CAPACITY;
+        }
+        return Math.max(MIN_SEGMENT_CAPACITY, Integer.highestOneBit((int) needed * 2 - 1));
+    }
+
+    // 値の型ごとに実装する: 長さ length の値配列を作る / from[i] を to[j] に移す
+    abstract V newValues(int length);
+
+    abstract void moveValue(V from, int i, V to, int j);
+
+    abstract int valueBytes();
+
+    private Table<V> newTable(int capacity) {
+        // 最後の1枠はキー 0 用
+        return new Table<>(new long[capacity], newValues(capacity + 1));
+    }
+
+    // SplitMix64 の仕上げ。連番のキーでもばらける
+    static long mix(long key) {
+        long h = key;
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    final Segment<V> segmentFor(long hash) {
+        return segments[(int) (hash >>> segmentShift)];
+    }
+
+    /**
+     * 表の中でキーの位置を探す（楽観的読み取り中に呼んでもよい）
+     * @return 位置。なければ -1
+     */
+    static int find(long[] keys, boolean hasZero, long key, long hash) {
+        if (key == 0) {
+            return hasZero ? keys.length : -1;
+        }
+        int mask = keys.length - 1;
+        // 書き込みと重なって表が壊れて見えても、1周で必ず止まる
+        for (int i = (int) hash & mask, n = 0; n <= mask; i = (i + 1) & mask, n++) {
+            long k = keys[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * キーの位置を確保する（書きロック中に呼ぶ）。足りなければ先に区画を拡張する
+     * @return 既存なら位置、新しく入れたなら ~位置（値は呼び出し側が書く）
+     */
+    final int claim(Segment<V> segment, long key, long hash) {
+        Table<V> table = segment.table;
+        int found = find(table.keys, segment.hasZero, key, hash);
+        if (found >= 0) {
+            return found;
+        }
+        if (key == 0) {
+            segment.hasZero = true;
+            segment.size++;
+            return ~table.keys.length;
+        }
+        if (segment.size + 1 > table.keys.length * LOAD_FACTOR) {
+            table = resize(segment);
+        }
+        long[] keys = table.keys;
+        int mask = keys.length - 1;
+        int i = (int) hash & mask;
+        while (keys[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        segment.size++;
+        return ~i;
+    }
+
+    // 区画の表を倍にして詰め直す（書きロック中に呼ぶ）
+    private Table<V> resize(Segment<V> segment) {
+        Table<V> old = segment.table;
+        int capacity = old.keys.length;
+        if (capacity >= MAX_SEGMENT_CAPACITY) {
+            throw new IllegalStateException("segment is full: " + segment.size + " entries");
+        }
+        Table<V> table = newTable(capacity * 2);
+        int mask = table.keys.length - 1;
+        for (int j = 0; j < capacity; j++) {
+            long k = old.keys[j];
+            if (k != 0) {
+                int i = (int) mix(k) & mask;
+                while (table.keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table.keys[i] = k;
+                moveValue(old.values, j, table.values, i);
+            }
+        }
+        moveValue(old.values, capacity, table.values, table.keys.length);
+        segment.table = table;
+        return table;
+    }
+
+    /**
+     * キーを消す（書きロック中に呼ぶ）
+     * 消した場所より後ろで、本来もっと前にあるべき要素を詰めて、探索が途切れないようにする
+     */
+    final boolean delete(Segment<V> segment, long key, long hash) {
+        Table<V> table = segment.table;
+        int slot = find(table.keys, segment.hasZero, key, hash);
+        if (slot < 0) {
+            return false;
+        }
+        segment.size--;
+        if (key == 0) {
+            segment.hasZero = false;
+            return true;
+        }
+        long[] keys = table.keys;
+        int mask = keys.length - 1;
+        int hole = slot;
+        keys[hole] = 0;
+        for (int j = (hole + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = (int) mix(keys[j]) & mask;
+            // home が (hole, j] の範囲（輪になっている）になければ、hole に移せる
+            boolean stays = hole <= j ? hole < home && home <= j : hole < home || home <= j;
+            if (!stays) {
+                keys[hole] = keys[j];
+                moveValue(table.values, j, table.values, hole);
+                keys[j] = 0;
+                hole = j;
+            }
+        }
+        return true;
+    }
+
+    // 消したら true
+    public final boolean remove(long key) {
+        long hash = mix(key);
+        Segment<V> segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            return delete(segment, key, hash);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    public final int size() {
+        long total = 0;
+        for (Segment<V> segment : segments) {
+            total += segment.size;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, total);
+    }
+
+    public final boolean isEmpty() {
+        for (Segment<V> segment : segments) {
+            if (segment.size != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public final boolean containsKey(long key) {
+        long hash = mix(key);
+        Segment<V> segment = segmentFor(hash);
+        StampedLock lock = segment.lock;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            boolean found = find(segment.table.keys, segment.hasZero, key, hash) >= 0;
+            if (lock.validate(stamp)) {
+                return found;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return find(segment.table.keys, segment.hasZero, key, hash) >= 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public final void clear() {
+        for (Segment<V> segment : segments) {
+            long stamp = segment.lock.writeLock();
+            try {
+                segment.table = newTable(MIN_SEGMENT_CAPACITY);
+                segment.size = 0;
+                segment.hasZero = false;
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    // 表が使っている配列のバイト数（配列ヘッダ込みの概算。件数ではなく容量で決まる）
+    public final long footprintBytes() {
+        long bytes = 0;
+        for (Segment<V> segment : segments) {
+            int capacity = segment.table.keys.length;
+            bytes += 16 + 8L * capacity + 16 + (long) valueBytes() * (capacity + 1) + 64;
+        }
+        return bytes;
+    }
+
+    // キーと値の配列の組（拡張のたびに丸ごと差し替える）
+    static final class Table<V> {
+        final long[] keys;
+        final V values;
+
+        Table(long[] keys, V values) {
+            this.keys = keys;
+            this.values = values;
+        }
+    }
+
+    static final class Segment<V> {
+        final StampedLock lock = new StampedLock();
+        // 以下は書きロック中にだけ書く。楽観的読み取りは validate で食い違いに気づく
+        Table<V> table;
+        boolean hasZero;
+        volatile int size;
+
+        Segment(Table<V> table) {
+            this.table = table;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package app;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * バリアを1回越えるのにかかる時間と、参加人数の関係
+ *
+ * N 人がそれぞれ何もせずに CROSSINGS 回バリアを越え、全体の時間 / CROSSINGS を「1回あたり」とする。
+ *   - CyclicBarrier        : ReentrantLock + Condition。到着のたびに同じロックを取り合う
+ *   - Phaser(flat)         : PhasedPipeline を階層化なしで（1つの Phaser に N 人）
+ *   - Phaser(tiered, 16)   : 16人ごとに子 Phaser を作って root にぶら下げる
+ *
+ * 人数が増えるほど、1つのロック・1つの状態ワードへの到着がぶつかり合うので、階層化が効いてくる。
+ * ※ コアが人数より少ないと、どの方式も「全員を起こして回る」コンテキストスイッチが大半になる。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.BarrierBenchmark [quick]
+ */
+public class BarrierBenchmark {
+    static final int TIER_SIZE = 16;
+
+    public static void main(String[] args) throws InterruptedException {
+        boolean quick = args.length > 0 && args[0].equals("quick");
+        int[] partyCounts = quick ? new int[] {2, 8, 32, 128} : new int[] {2, 8, 32, 128, 512};
+        int crossings = quick ? 200 : 2_000;
+        int warmup = quick ? 1 : 3;
+        int measure = quick ? 3 : 5;
+
+        List<Bench.Result> results = Bench.newResults();
+        for (int parties : partyCounts) {
+            Map<String, Object> params = new LinkedHashMap<>();
+            params.put("parties", parties);
+            results.add(measure("CyclicBarrier", params, warmup, measure, crossings,
+                () -> cyclicBarrier(parties, crossings)));
+            results.add(measure("Phaser(flat)", params, warmup, measure, crossings,
+                () -> pipeline(new PhasedPipeline(Integer.MAX_VALUE, crossings), parties)));
+            results.add(measure("Phaser(tiered," + TIER_SIZE + ")", params, warmup, measure, crossings,
+                () -> pipeline(new PhasedPipeline(TIER_SIZE, crossings), parties)));
+        }
+
+        System.out.println("※ ns/op はバリア1回あたり（全員がそろって次に進むまで）");
+        Bench.printAll(results);
+
+        // 段ごとの統計の例
+        PhasedPipeline sample = new PhasedPipeline(TIER_SIZE, 100).phase("cross", null);
+        pipeline(sample, 64);
+        System.out.println();
+        System.out.println("tiered(" + TIER_SIZE + ") 64人: 子 Phaser " + sample.tiers() + "個");
+        sample.stats().forEach(s -> System.out.println("  " + s));
+    }
+
+    interface Run {
+        long wallNanos() throws InterruptedException;
+    }
+
+    static Bench.Result measure(String name, Map<String, Object> params, int warmup, int measure,
+                                int crossings, Run run) throws InterruptedException {
+        for (int i = 0; i < warmup; i++) {
+            run.wallNanos();
+        }
+        double[] nsPerCrossing = new double[measure];
+        for (int i = 0; i < measure; i++) {
+            nsPerCrossing[i] = (double) run.wallNanos() / crossings;
+        }
+        return new Bench.Result(name, params, nsPerCrossing, 0);
+    }
+
+    static long cyclicBarrier(int parties, int crossings) throws InterruptedException {
+        CyclicBarrier barrier = new CyclicBarrier(parties);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[parties];
+        for (int p = 0; p < parties; p++) {
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < crossings; i++) {
+                        barrier.await();
+                    }
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[p].start();
+        }
+        return timed(start, threads);
+    }
+
+    static long pipeline(PhasedPipeline pipeline, int parties) throws InterruptedException {
+        if (pipeline.stats().isEmpty()) {
+            pipeline.phase("cross", null);
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[parties];
+        // 全員が登録してからスタート（先に来た人だけで段が進まないように）
+        for (int p = 0; p < parties; p++) {
+            PhasedPipeline.Party party = pipeline.register();
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                    while (party.arriveAndAwait() >= 0) {
+                        // 何もしないでバリアだけ越える
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[p].start();
+        }
+        return timed(start, threads);
+    }
+
+    private static long timed(CountDownLatch start, Thread[] threads) throws InterruptedException {
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        return System.nanoTime() - begin;
+    }
+}
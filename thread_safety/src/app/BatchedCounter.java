@@ -0,0 +1,62 @@
+package app;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * スレッドローカルにためてから共有カウンターに足すカウンター
+ *
+ * increment() はスレッドローカルの long を増やすだけで、batchSize 回に1回だけ
+ * 共有の AtomicLong に足し込む。共有変数に触る回数が 1/batchSize になる。
+ *
+ * そのかわり sum() には、各スレッドがまだ足し込んでいない分（最大 batchSize - 1 ずつ）が入らない。
+ * 正確な値がほしいときは、書いた各スレッドで flush() を呼んでから sum() を読む。
+ */
+public final class BatchedCounter implements ConcurrentCounter {
+    private final int batchSize;
+    private final AtomicLong shared = new AtomicLong();
+    // カウンターのインスタンスごとにスレッドローカルを持つ
+    private final ThreadLocal<long[]> pending = ThreadLocal.withInitial(() -> new long[1]);
+
+    public BatchedCounter(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void increment() {
+        add(1);
+    }
+
+    @Override
+    public void add(long delta) {
+        long[] local = pending.get();
+        long value = local[0] + delta;
+        if (value >= batchSize || value <= -batchSize) {
+            shared.addAndGet(value);
+            value = 0;
+        }
+        local[0] = value;
+    }
+
+    // 呼び出したスレッドのためている分を共有カウンターに足し込む
+    public void flush() {
+        long[] local = pending.get();
+        if (local[0] != 0) {
+            shared.addAndGet(local[0]);
+            local[0] = 0;
+        }
+    }
+
+    // 足し込み済みの分だけの合計（まだ flush していない分は入らない）
+    @Override
+    public long sum() {
+        return shared.get();
+    }
+
+    @Override
+    public String name() {
+        return "batched(" + batchSize + ")";
+    }
+}
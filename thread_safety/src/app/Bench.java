@@ -0,0 +1,280 @@
+package app;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * JMH風の簡易ベンチマークハーネス
+ * - ウォームアップ反復でJITを温めてから計測する
+ * - 1反復 = 指定時間の間ひたすら実行して ops と ns/op を出す
+ * - 複数反復の平均と 99.9% 信頼区間（JMHと同じ Error 表記）を出す
+ * - 全スレッドの割り当てバイト数から B/op も出す（JMHの -prof gc の代わり）
+ * - runConcurrent() で複数スレッドから同時に叩く計測もできる（JMHの @Threads の代わり）
+ *
+ * ※ このリポジトリはビルドツールなしの javac 直叩きなので、JMH本体は使わずに自前で持っている
+ */
+final class Bench {
+    // デッドコード削除を防ぐための吸い込み口（JMHのBlackholeの代わり）
+    static volatile long sink;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationMillis;
+
+    Bench(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationMillis = iterationMillis;
+    }
+
+    // 標準設定: ウォームアップ5回、計測5回、1回あたり1秒
+    static Bench defaults() {
+        return new Bench(5, 5, 1000);
+    }
+
+    static void consume(long value) {
+        sink ^= value;
+    }
+
+    /**
+     * 1ケースを計測する
+     * op は1回分の処理を実行し、結果を long で返す（sinkに吸わせる）
+     */
+    Result run(String name, Map<String, Object> params, LongSupplier op) {
+        for (int i = 0; i < warmupIterations; i++) {
+            iterate(op);
+        }
+        double[] nsPerOp = new double[measurementIterations];
+        double bytesPerOp = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            long allocatedBefore = allocatedBytes();
+            long ops = iterate(op, nsPerOp, i);
+            bytesPerOp += (double) (allocatedBytes() - allocatedBefore) / ops;
+        }
+        return new Result(name, params, nsPerOp, bytesPerOp / measurementIterations);
+    }
+
+    /**
+     * threads 本のスレッドから同時に計測する
+     * perThread はスレッド番号（0〜threads-1）を受け取り、そのスレッドが回す処理を返す
+     * 結果は全スレッド合計のスループット（ns/op は壁時計 / 全スレッドの合計 ops）
+     */
+    Result runConcurrent(String name, Map<String, Object> params, int threads, IntFunction<LongSupplier> perThread) {
+        LongSupplier[] ops = new LongSupplier[threads];
+        for (int t = 0; t < threads; t++) {
+            ops[t] = perThread.apply(t);
+        }
+        for (int i = 0; i < warmupIterations; i++) {
+            iterateConcurrent(ops, new AtomicLong());
+        }
+        double[] nsPerOp = new double[measurementIterations];
+        double bytesPerOp = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            AtomicLong allocated = new AtomicLong();
+            long[] result = iterateConcurrent(ops, allocated);
+            nsPerOp[i] = (double) result[1] / result[0];
+            bytesPerOp += (double) allocated.get() / result[0];
+        }
+        return new Result(name, params, nsPerOp, bytesPerOp / measurementIterations);
+    }
+
+    // 1反復分を全スレッドで回して {合計 ops, 壁時計 ns} を返す
+    private long[] iterateConcurrent(LongSupplier[] ops, AtomicLong allocated) {
+        CountDownLatch ready = new CountDownLatch(ops.length);
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicLong totalOps = new AtomicLong();
+        long[] deadline = new long[1];
+        Thread[] workers = new Thread[ops.length];
+        for (int t = 0; t < ops.length; t++) {
+            LongSupplier op = ops[t];
+            workers[t] = new Thread(() -> {
+                long allocatedBefore = currentThreadAllocatedBytes();
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long end = deadline[0];
+                long count = 0;
+                long local = 0;
+                do {
+                    local ^= op.getAsLong();
+                    count++;
+                } while (System.nanoTime() < end);
+                consume(local);
+                totalOps.addAndGet(count);
+                allocated.addAndGet(currentThreadAllocatedBytes() - allocatedBefore);
+            }, "bench-" + t);
+            workers[t].start();
+        }
+        try {
+            ready.await();
+            long start = System.nanoTime();
+            deadline[0] = start + iterationMillis * 1_000_000L;
+            go.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            return new long[] {Math.max(1, totalOps.get()), System.nanoTime() - start};
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("計測中に割り込まれた", e);
+        }
+    }
+
+    // 1反復分: 時間いっぱい回して平均 ns/op を nsPerOp[index] に入れ、実行回数を返す
+    private long iterate(LongSupplier op, double[] nsPerOp, int index) {
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000L;
+        long ops = 0;
+        long start = System.nanoTime();
+        long now;
+        do {
+            consume(op.getAsLong());
+            ops++;
+            now = System.nanoTime();
+        } while (now < deadline);
+        nsPerOp[index] = (double) (now - start) / ops;
+        return ops;
+    }
+
+    private long iterate(LongSupplier op) {
+        return iterate(op, new double[1], 0);
+    }
+
+    // 生存中の全スレッド（ForkJoinPoolのワーカーも含む）の累計割り当てバイト数
+    // 計測中に終了したスレッドの分は数えられないので、目安として使う
+    static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    static long currentThreadAllocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * 計測結果
+     * 平均レイテンシ（ns/op）とスループット（ops/s）をそれぞれ誤差付きで持つ
+     */
+    static final class Result {
+        final String name;
+        final Map<String, Object> params;
+        final double meanNs;
+        final double errorNs;
+        final double meanOpsPerSec;
+        final double errorOpsPerSec;
+        final double bytesPerOp;
+
+        Result(String name, Map<String, Object> params, double[] nsPerOp, double bytesPerOp) {
+            this.name = name;
+            this.params = params;
+            this.meanNs = mean(nsPerOp);
+            this.errorNs = error(nsPerOp, meanNs);
+
+            double[] throughput = new double[nsPerOp.length];
+            for (int i = 0; i < nsPerOp.length; i++) {
+                throughput[i] = 1_000_000_000.0 / nsPerOp[i];
+            }
+            this.meanOpsPerSec = mean(throughput);
+            this.errorOpsPerSec = error(throughput, meanOpsPerSec);
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-40s %-28s %14.3f ± %-12.3f ops/s %14.1f ± %-10.1f ns/op %14.1f B/op",
+                name, params, meanOpsPerSec, errorOpsPerSec, meanNs, errorNs, bytesPerOp);
+        }
+    }
+
+    static void printAll(List<Result> results) {
+        System.out.println(String.format("%-40s %-28s %33s %29s %19s",
+            "Benchmark", "Params", "Throughput", "Latency", "Allocation"));
+        for (Result r : results) {
+            System.out.println(r);
+        }
+    }
+
+    static List<Result> newResults() {
+        return new ArrayList<>();
+    }
+
+    // ソート済みの配列の p 分位（p = 0.99 なら 99%点。空なら 0）
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    // xorshift の乱数（seed はスレッドごとに持つ。Random はスレッド間で取り合うので計測の中では使わない）
+    // 正の int を返す
+    static int next(long[] seed) {
+        return (int) (xorshift(seed) >>> 33);
+    }
+
+    // 0〜bound-1
+    static int next(long[] seed, int bound) {
+        return (int) ((xorshift(seed) >>> 1) % bound);
+    }
+
+    private static long xorshift(long[] seed) {
+        long x = seed[0];
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        seed[0] = x;
+        return x;
+    }
+
+    private static double mean(double[] xs) {
+        double sum = 0;
+        for (double x : xs) {
+            sum += x;
+        }
+        return sum / xs.length;
+    }
+
+    // 99.9%信頼区間の半幅（Student の t 分布）
+    private static double error(double[] xs, double mean) {
+        int n = xs.length;
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double sq = 0;
+        for (double x : xs) {
+            sq += (x - mean) * (x - mean);
+        }
+        double stddev = Math.sqrt(sq / (n - 1));
+        return studentT999(n - 1) * stddev / Math.sqrt(n);
+    }
+
+    // 両側 99.9% の t 値（自由度 1〜30、それ以上は正規分布で近似）
+    private static final double[] T_999 = {
+        636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+        4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+        3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646
+    };
+
+    private static double studentT999(int degreesOfFreedom) {
+        return degreesOfFreedom <= T_999.length ? T_999[degreesOfFreedom - 1] : 3.291;
+    }
+}
@@ -0,0 +1,104 @@
+package app;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * スレッドセーフなカウンターの共通インターフェース
+ *
+ * Main.SynchronizedCounter は increment() のたびにモニターを取るので、
+ * スレッドが増えるほどロックの取り合いで遅くなる。AtomicInteger も1つの変数を
+ * 全スレッドで書き換えるので、コア数が多いとキャッシュラインの奪い合いになる。
+ *
+ * 実装を差し替えて比べられるように、同じインターフェースで4種類用意している。
+ *   - synchronizedCounter() : モニターで守る（Main.SynchronizedCounter と同じ方式）
+ *   - atomic()              : AtomicLong 1つ（CAS / lock xadd）
+ *   - striped()             : LongAdder 風。スレッドごとに別のセルに足して、読むときに合計する
+ *   - batched(n)            : スレッドローカルに n 回ためてから共有カウンターに足す
+ *
+ * sum() が「その瞬間の正確な値」になるのは synchronizedCounter() と atomic() だけ。
+ * striped() は更新中に読むと途中の値、batched() はまだ反映していない分だけ小さい値になる。
+ */
+public interface ConcurrentCounter {
+
+    void increment();
+
+    void add(long delta);
+
+    // 現在の合計（実装によっては近似値。上のコメントを参照）
+    long sum();
+
+    // 比較表に出す名前
+    String name();
+
+    static ConcurrentCounter synchronizedCounter() {
+        return new SynchronizedLongCounter();
+    }
+
+    static ConcurrentCounter atomic() {
+        return new AtomicCounter();
+    }
+
+    static ConcurrentCounter striped() {
+        return new StripedCounter();
+    }
+
+    static ConcurrentCounter batched(int batchSize) {
+        return new BatchedCounter(batchSize);
+    }
+
+    /**
+     * モニターで守るカウンター（Main.SynchronizedCounter の long 版）
+     */
+    final class SynchronizedLongCounter implements ConcurrentCounter {
+        private long count;
+
+        @Override
+        public synchronized void increment() {
+            count++;
+        }
+
+        @Override
+        public synchronized void add(long delta) {
+            count += delta;
+        }
+
+        @Override
+        public synchronized long sum() {
+            return count;
+        }
+
+        @Override
+        public String name() {
+            return "synchronized";
+        }
+    }
+
+    /**
+     * AtomicLong 1つのカウンター
+     * incrementAndGet() は x86 では CAS ループではなく lock xadd 1命令になるが、
+     * どちらにしても全スレッドが同じキャッシュラインを書き換える
+     */
+    final class AtomicCounter implements ConcurrentCounter {
+        private final AtomicLong count = new AtomicLong();
+
+        @Override
+        public void increment() {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void add(long delta) {
+            count.addAndGet(delta);
+        }
+
+        @Override
+        public long sum() {
+            return count.get();
+        }
+
+        @Override
+        public String name() {
+            return "atomic";
+        }
+    }
+}
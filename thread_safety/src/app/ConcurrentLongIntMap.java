@@ -0,0 +1,156 @@
+package app;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * long → int の並行ハッシュマップ（1件あたりのオブジェクトなし）
+ *
+ * Main.demonstrateConcurrentCollections() の ConcurrentHashMap<String, Integer> は、
+ * 1件ごとに文字列連結・Integer のボクシング・Node を作る。キーが long、値が int で済むなら、
+ * 配列だけで持てば 1件あたり十数バイトで済み、get() でもゴミを出さない。
+ *
+ *   ConcurrentLongIntMap hits = new ConcurrentLongIntMap();
+ *   hits.addTo(userId, 1);                 // なければ 0 から足す
+ *   int n = hits.getOrDefault(userId, 0);
+ *
+ * 読み取りはロックなし（楽観的読み取り）、書き込みは区画ごとのロック。しくみは AbstractConcurrentLongMap。
+ * forEach() は区画ごとには一貫しているが、全体としては弱い一貫性（ConcurrentHashMap と同じ）。
+ * get / put / addTo / forEach は ConcurrentLongLongMap と値の型だけが違う（ボクシングを避けるため、わざと型ごとに書いている）。
+ */
+public final class ConcurrentLongIntMap extends AbstractConcurrentLongMap<int[]> {
+
+    public ConcurrentLongIntMap() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    public ConcurrentLongIntMap(long expectedSize) {
+        this(expectedSize, defaultConcurrencyLevel());
+    }
+
+    /**
+     * @param expectedSize     入れる予定の件数（先に表を確保して拡張を減らす）
+     * @param concurrencyLevel 同時に書くスレッド数の目安（区画の数になる）
+     */
+    public ConcurrentLongIntMap(long expectedSize, int concurrencyLevel) {
+        super(expectedSize, concurrencyLevel);
+    }
+
+    @Override
+    int[] newValues(int length) {
+        return new int[length];
+    }
+
+    @Override
+    void moveValue(int[] from, int i, int[] to, int j) {
+        to[j] = from[i];
+    }
+
+    @Override
+    int valueBytes() {
+        return Integer.BYTES;
+    }
+
+    public int getOrDefault(long key, int defaultValue) {
+        long hash = mix(key);
+        Segment<int[]> segment = segmentFor(hash);
+        StampedLock lock = segment.lock;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            // 表は1回だけ読む（キーと値が別々の表にならないように）
+            Table<int[]> table = segment.table;
+            int slot = find(table.keys, segment.hasZero, key, hash);
+            int value = slot < 0 ? defaultValue : table.values[slot];
+            if (lock.validate(stamp)) {
+                return value;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            Table<int[]> table = segment.table;
+            int slot = find(table.keys, segment.hasZero, key, hash);
+            return slot < 0 ? defaultValue : table.values[slot];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void put(long key, int value) {
+        long hash = mix(key);
+        Segment<int[]> segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            int slot = claim(segment, key, hash);
+            segment.table.values[slot < 0 ? ~slot : slot] = value;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * なければ入れる
+     * @return 入れたら true（すでにあったら何もしない）
+     */
+    public boolean putIfAbsent(long key, int value) {
+        long hash = mix(key);
+        Segment<int[]> segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            int slot = claim(segment, key, hash);
+            if (slot >= 0) {
+                return false;
+            }
+            segment.table.values[~slot] = value;
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 値に delta を足す（なければ 0 に足す）
+     * @return 足したあとの値
+     */
+    public int addTo(long key, int delta) {
+        long hash = mix(key);
+        Segment<int[]> segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            int slot = claim(segment, key, hash);
+            int[] values = segment.table.values;
+            // 新しく入れた枠は 0 とは限らない（消したあとの詰め直しで残ることがある）
+            int current = slot < 0 ? 0 : values[slot];
+            return values[slot < 0 ? ~slot : slot] = current + delta;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 全件をたどる（区画ごとに読みロックを取る）
+     * action の中でこのマップに書き込まないこと（同じ区画だとデッドロックする）
+     */
+    public void forEach(EntryConsumer action) {
+        for (Segment<int[]> segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                Table<int[]> table = segment.table;
+                long[] keys = table.keys;
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != 0) {
+                        action.accept(keys[i], table.values[i]);
+                    }
+                }
+                if (segment.hasZero) {
+                    action.accept(0, table.values[keys.length]);
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+}
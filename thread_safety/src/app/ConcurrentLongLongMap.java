@@ -0,0 +1,152 @@
+package app;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * long → long の並行ハッシュマップ（1件あたりのオブジェクトなし）
+ *
+ * ConcurrentLongIntMap の値が long 版。合計バイト数や時刻のように int に収まらない値を持つときに使う。
+ *
+ *   ConcurrentLongLongMap bytes = new ConcurrentLongLongMap();
+ *   bytes.addTo(userId, size);
+ *
+ * しくみは AbstractConcurrentLongMap。
+ * get / put / addTo / forEach は ConcurrentLongIntMap と値の型だけが違う（ボクシングを避けるため、わざと型ごとに書いている）。
+ */
+public final class ConcurrentLongLongMap extends AbstractConcurrentLongMap<long[]> {
+
+    public ConcurrentLongLongMap() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    public ConcurrentLongLongMap(long expectedSize) {
+        this(expectedSize, defaultConcurrencyLevel());
+    }
+
+    /**
+     * @param expectedSize     入れる予定の件数（先に表を確保して拡張を減らす）
+     * @param concurrencyLevel 同時に書くスレッド数の目安（区画の数になる）
+     */
+    public ConcurrentLongLongMap(long expectedSize, int concurrencyLevel) {
+        super(expectedSize, concurrencyLevel);
+    }
+
+    @Override
+    long[] newValues(int length) {
+        return new long[length];
+    }
+
+    @Override
+    void moveValue(long[] from, int i, long[] to, int j) {
+        to[j] = from[i];
+    }
+
+    @Override
+    int valueBytes() {
+        return Long.BYTES;
+    }
+
+    public long getOrDefault(long key, long defaultValue) {
+        long hash = mix(key);
+        Segment<long[]> segment = segmentFor(hash);
+        StampedLock lock = segment.lock;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            // 表は1回だけ読む（キーと値が別々の表にならないように）
+            Table<long[]> table = segment.table;
+            int slot = find(table.keys, segment.hasZero, key, hash);
+            long value = slot < 0 ? defaultValue : table.values[slot];
+            if (lock.validate(stamp)) {
+                return value;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            Table<long[]> table = segment.table;
+            int slot = find(table.keys, segment.hasZero, key, hash);
+            return slot < 0 ? defaultValue : table.values[slot];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void put(long key, long value) {
+        long hash = mix(key);
+        Segment<long[]> segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            int slot = claim(segment, key, hash);
+            segment.table.values[slot < 0 ? ~slot : slot] = value;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * なければ入れる
+     * @return 入れたら true（すでにあったら何もしない）
+     */
+    public boolean putIfAbsent(long key, long value) {
+        long hash = mix(key);
+        Segment<long[]> segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            int slot = claim(segment, key, hash);
+            if (slot >= 0) {
+                return false;
+            }
+            segment.table.values[~slot] = value;
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 値に delta を足す（なければ 0 に足す）
+     * @return 足したあとの値
+     */
+    public long addTo(long key, long delta) {
+        long hash = mix(key);
+        Segment<long[]> segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            int slot = claim(segment, key, hash);
+            long[] values = segment.table.values;
+            // 新しく入れた枠は 0 とは限らない（消したあとの詰め直しで残ることがある）
+            long current = slot < 0 ? 0 : values[slot];
+            return values[slot < 0 ? ~slot : slot] = current + delta;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 全件をたどる（区画ごとに読みロックを取る）
+     * action の中でこのマップに書き込まないこと（同じ区画だとデッドロックする）
+     */
+    public void forEach(EntryConsumer action) {
+        for (Segment<long[]> segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                Table<long[]> table = segment.table;
+                long[] keys = table.keys;
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != 0) {
+                        action.accept(keys[i], table.values[i]);
+                    }
+                }
+                if (segment.hasZero) {
+                    action.accept(0, table.values[keys.length]);
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+}
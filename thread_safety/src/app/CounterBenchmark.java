@@ -0,0 +1,114 @@
+package app;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+/**
+ * ConcurrentCounter の実装ごとの競合ベンチマーク
+ *
+ * 1〜128 スレッドで increment() を叩き続けたときの合計スループット（ops/s）を測る。
+ * そのあと、書き込み中に sum() を読むレイテンシと、書き終わった直後に
+ * sum() が正しい値を返すか（batched は flush 前だと足りない）を表にする。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.CounterBenchmark [quick]
+ */
+public class CounterBenchmark {
+    static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64, 128};
+    static final int[] QUICK_THREADS = {1, 4, 16, 128};
+    static final int BATCH = 64;
+
+    public static void main(String[] args) throws InterruptedException {
+        boolean quick = args.length > 0 && args[0].equals("quick");
+        Bench bench = quick ? new Bench(2, 3, 200) : Bench.defaults();
+        int[] threadCounts = quick ? QUICK_THREADS : THREADS;
+        List<Bench.Result> results = Bench.newResults();
+
+        Map<String, Supplier<ConcurrentCounter>> counters = new LinkedHashMap<>();
+        counters.put("synchronized", ConcurrentCounter::synchronizedCounter);
+        counters.put("atomic", ConcurrentCounter::atomic);
+        counters.put("striped", ConcurrentCounter::striped);
+        counters.put("batched", () -> ConcurrentCounter.batched(BATCH));
+
+        // 書き込みスループット
+        for (int threads : threadCounts) {
+            for (Map.Entry<String, Supplier<ConcurrentCounter>> entry : counters.entrySet()) {
+                ConcurrentCounter counter = entry.getValue().get();
+                results.add(bench.runConcurrent("increment." + entry.getKey(), params(threads), threads,
+                    t -> () -> {
+                        counter.increment();
+                        return 0;
+                    }));
+            }
+        }
+        Bench.printAll(results);
+
+        // 読み取りのレイテンシと正確さ
+        System.out.printf("%n%-14s %8s %12s %12s %14s %14s%n",
+            "counter", "threads", "sum() p50", "sum() p99", "直後の誤差", "flush後の誤差");
+        for (int threads : threadCounts) {
+            for (Map.Entry<String, Supplier<ConcurrentCounter>> entry : counters.entrySet()) {
+                readCheck(entry.getKey(), entry.getValue().get(), threads, quick ? 20_000 : 200_000);
+            }
+        }
+    }
+
+    /**
+     * threads 本で perThread 回ずつ increment() しながら、メインスレッドで sum() を読み続ける
+     * 書き終わった直後の sum() と、各スレッドが flush() したあとの sum() を期待値と比べる
+     */
+    static void readCheck(String name, ConcurrentCounter counter, int threads, int perThread)
+            throws InterruptedException {
+        CountDownLatch written = new CountDownLatch(threads);
+        CountDownLatch measured = new CountDownLatch(1);
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    counter.increment();
+                }
+                written.countDown();
+                try {
+                    measured.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // batched はスレッドローカルにためた分を、書いたスレッド自身が flush する
+                if (counter instanceof BatchedCounter) {
+                    ((BatchedCounter) counter).flush();
+                }
+            });
+            writers[t].start();
+        }
+        long[] latencies = new long[100_000];
+        int samples = 0;
+        while (samples < latencies.length && written.getCount() > 0) {
+            long start = System.nanoTime();
+            Bench.consume(counter.sum());
+            latencies[samples++] = System.nanoTime() - start;
+        }
+        written.await();
+        long expected = (long) threads * perThread;
+        long errorAfterWrite = expected - counter.sum();
+        measured.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        long errorAfterFlush = expected - counter.sum();
+
+        long[] sorted = Arrays.copyOf(latencies, Math.max(1, samples));
+        Arrays.sort(sorted);
+        System.out.printf("%-14s %8d %10dns %10dns %14d %14d%n",
+            name, threads, Bench.percentile(sorted, 0.50), Bench.percentile(sorted, 0.99), errorAfterWrite, errorAfterFlush);
+    }
+
+    private static Map<String, Object> params(int threads) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("threads", threads);
+        return params;
+    }
+}
@@ -0,0 +1,71 @@
+package app;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * false sharing の有無でのスループット比較
+ *
+ * 2スレッドがそれぞれ別のカウンターだけを叩く（スレッド0 → 1つ目、スレッド1 → 2つ目）。
+ * 論理的には競合しないので、キャッシュラインが分かれていれば1スレッドのときの2倍近く出るはず。
+ *
+ *   - blockLevelSync        : Main.BlockLevelSync（隣り合ったフィールド + 続けて new したロック）
+ *   - paddedBlockLevelSync  : PaddedBlockLevelSync（カウンター兼ロックを PaddedLong で分離）
+ *   - atomicAdjacent        : AtomicLongArray の [0] と [1]（同じキャッシュライン）
+ *   - atomicPadded          : PaddedLong 2つ
+ *
+ * ※ 1コアの環境ではスレッドが交互に動くだけなので差は出ない。2コア以上で実行すること。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.FalseSharingBenchmark [quick]
+ */
+public class FalseSharingBenchmark {
+
+    public static void main(String[] args) {
+        Bench bench = args.length > 0 && args[0].equals("quick")
+            ? new Bench(2, 3, 200)
+            : Bench.defaults();
+        List<Bench.Result> results = Bench.newResults();
+
+        Main.BlockLevelSync plain = new Main.BlockLevelSync();
+        results.add(bench.runConcurrent("blockLevelSync", params("adjacent"), 2, t -> t == 0
+            ? () -> {
+                plain.increment1();
+                return 0;
+            }
+            : () -> {
+                plain.increment2();
+                return 0;
+            }));
+
+        PaddedBlockLevelSync padded = new PaddedBlockLevelSync();
+        results.add(bench.runConcurrent("paddedBlockLevelSync", params("padded"), 2, t -> t == 0
+            ? () -> {
+                padded.increment1();
+                return 0;
+            }
+            : () -> {
+                padded.increment2();
+                return 0;
+            }));
+
+        AtomicLongArray adjacent = new AtomicLongArray(2);
+        results.add(bench.runConcurrent("atomicAdjacent", params("adjacent"), 2,
+            t -> () -> adjacent.incrementAndGet(t)));
+
+        PaddedLong[] separated = {new PaddedLong(), new PaddedLong()};
+        results.add(bench.runConcurrent("atomicPadded", params("padded"), 2,
+            t -> () -> separated[t].incrementAndGet()));
+
+        Bench.printAll(results);
+    }
+
+    private static Map<String, Object> params(String layout) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("layout", layout);
+        params.put("threads", 2);
+        return params;
+    }
+}
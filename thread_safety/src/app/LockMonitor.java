@@ -0,0 +1,362 @@
+package app;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * デッドロックとロック競合をバックグラウンドで見張るモニター
+ *
+ * 一定間隔で ThreadMXBean を見て
+ *   - findDeadlockedThreads() でデッドロックを検出し、循環（誰がどのロックを待っていて、誰が持っているか）と
+ *     スタックトレースを報告する（同じデッドロックは1回だけ）
+ *   - その瞬間にロック待ちしているスレッドを数えて、ロックごとの「待たされた時間」を見積もる
+ *     （サンプリングなので、待ち時間 ≒ 見つかった回数 × 間隔）
+ *
+ * 本番で動かしっぱなしにできるよう、1回の確認にかかった時間が間隔の overheadBudget（既定 1%）を
+ * 超えたら、自動で間隔を広げる（コストが下がれば指定の間隔まで戻す）。
+ * 確認の時間は見張りスレッドの CPU 時間ではなく実時間で測る。findDeadlockedThreads() と getThreadInfo() は
+ * セーフポイントで全スレッドを止めて行う処理なので、その間はアプリのスレッドも止まっている（CPU 時間には出てこない）。
+ *
+ * ThreadInfo.getBlockedTime() を取るためにスレッドの競合監視（JVM 全体の設定）をオンにする。
+ * 最後のモニターを close() したら元の設定に戻す。
+ *
+ *   try (LockMonitor monitor = LockMonitor.start(1000, d -> System.err.println(d))) {
+ *       ...
+ *       monitor.topContended(5).forEach(System.out::println);
+ *   }
+ *
+ * synchronized（モニター）と ReentrantLock などの java.util.concurrent のロック（ownable synchronizer）の両方が対象。
+ * Object.wait() や Condition.await() で待っているのは「合図待ち」なので競合には数えない。
+ */
+public final class LockMonitor implements AutoCloseable {
+    static final double DEFAULT_OVERHEAD_BUDGET = 0.01;
+    // 間隔を広げるときの上限
+    static final long MAX_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    // 競合監視をオンにしているモニターの数と、オンにする前の設定（LockMonitor.class で守る）
+    private static int contentionMonitoringUsers;
+    private static boolean contentionMonitoringBefore;
+
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<Deadlock> onDeadlock;
+    private final double overheadBudget;
+    private final long configuredIntervalNanos;
+    private volatile long intervalNanos;
+    // this で守る（close() と次の予約が行き違わないように）
+    private boolean closed;
+
+    private final Map<String, LockStats> locks = new ConcurrentHashMap<>();
+    private final Set<Set<Long>> reported = ConcurrentHashMap.newKeySet();
+    private final List<Deadlock> deadlocks = new CopyOnWriteArrayList<>();
+    // 以下は見張りスレッドだけが書く
+    private volatile long polls;
+    private volatile long totalPollNanos;
+    private long lastPollAt;
+    private long costEwma;
+
+    private LockMonitor(long intervalMillis, double overheadBudget, Consumer<Deadlock> onDeadlock) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis must be positive: " + intervalMillis);
+        }
+        this.configuredIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.intervalNanos = configuredIntervalNanos;
+        this.overheadBudget = overheadBudget;
+        this.onDeadlock = onDeadlock;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "lock-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // intervalMillis ごとに見張り始める（デッドロックを見つけたら onDeadlock を呼ぶ）
+    public static LockMonitor start(long intervalMillis, Consumer<Deadlock> onDeadlock) {
+        return start(intervalMillis, DEFAULT_OVERHEAD_BUDGET, onDeadlock);
+    }
+
+    public static LockMonitor start(long intervalMillis, double overheadBudget, Consumer<Deadlock> onDeadlock) {
+        LockMonitor monitor = new LockMonitor(intervalMillis, overheadBudget, onDeadlock);
+        // ThreadInfo.getBlockedTime() が取れるようにする（Deadlock の表示で使う）
+        enableContentionMonitoring();
+        monitor.lastPollAt = System.nanoTime();
+        monitor.scheduleNext();
+        return monitor;
+    }
+
+    private static synchronized void enableContentionMonitoring() {
+        if (!THREADS.isThreadContentionMonitoringSupported()) {
+            return;
+        }
+        if (contentionMonitoringUsers++ == 0) {
+            contentionMonitoringBefore = THREADS.isThreadContentionMonitoringEnabled();
+            THREADS.setThreadContentionMonitoringEnabled(true);
+        }
+    }
+
+    private static synchronized void restoreContentionMonitoring() {
+        if (!THREADS.isThreadContentionMonitoringSupported()) {
+            return;
+        }
+        if (--contentionMonitoringUsers == 0) {
+            THREADS.setThreadContentionMonitoringEnabled(contentionMonitoringBefore);
+        }
+    }
+
+    private synchronized void scheduleNext() {
+        if (!closed) {
+            scheduler.schedule(this::tick, intervalNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void tick() {
+        try {
+            long start = System.nanoTime();
+            poll(start - lastPollAt);
+            lastPollAt = start;
+            // 実時間で測る（全スレッドを止めている時間も含めるため。見張りスレッドの CPU 時間だと出てこない）
+            long cost = System.nanoTime() - start;
+            polls++;
+            totalPollNanos += cost;
+            // 初回は JIT 前で重いので、なめらかにした平均で判断する
+            costEwma = polls == 1 ? cost : (long) (costEwma * 0.8 + cost * 0.2);
+            // 予算に収まる間隔（ただし指定より短くはしない）
+            intervalNanos = Math.max(configuredIntervalNanos,
+                Math.min(MAX_INTERVAL_NANOS, (long) (costEwma / overheadBudget)));
+        } catch (RuntimeException e) {
+            // 見張りが止まらないように握りつぶして次に進む
+            System.err.println("lock-monitor: " + e);
+        } finally {
+            scheduleNext();
+        }
+    }
+
+    /**
+     * 1回ぶん確認する（ふだんは見張りスレッドから呼ばれる）
+     * @param sampleNanos 前回からの経過時間。見つかったロック待ちはこの時間だけ待ったとみなす
+     */
+    void poll(long sampleNanos) {
+        long[] deadlocked = THREADS.findDeadlockedThreads();
+        if (deadlocked != null) {
+            handleDeadlock(deadlocked);
+        }
+
+        // スタックなしなら軽い
+        ThreadInfo[] infos = THREADS.getThreadInfo(THREADS.getAllThreadIds(), 0);
+        Map<String, Integer> waitersPerLock = new HashMap<>();
+        for (ThreadInfo info : infos) {
+            if (info == null || !isContending(info)) {
+                continue;
+            }
+            String lock = info.getLockName();
+            waitersPerLock.merge(lock, 1, Integer::sum);
+            locks.computeIfAbsent(lock, LockStats::new).sample(sampleNanos, info.getLockOwnerName());
+        }
+        for (Map.Entry<String, Integer> entry : waitersPerLock.entrySet()) {
+            locks.get(entry.getKey()).waiters(entry.getValue());
+        }
+    }
+
+    // ロックの取り合いで止まっているか（合図待ちは除く）
+    private static boolean isContending(ThreadInfo info) {
+        if (info.getLockName() == null) {
+            return false;
+        }
+        switch (info.getThreadState()) {
+            case BLOCKED:
+                // synchronized の入口で待っている
+                return true;
+            case WAITING:
+            case TIMED_WAITING:
+                // ReentrantLock などの待ちは持ち主がいる。Condition.await() / Object.wait() は持ち主がいない
+                return info.getLockOwnerId() != -1;
+            default:
+                return false;
+        }
+    }
+
+    private void handleDeadlock(long[] ids) {
+        ThreadInfo[] infos = THREADS.getThreadInfo(ids, true, true);
+        Map<Long, ThreadInfo> byId = new HashMap<>();
+        for (ThreadInfo info : infos) {
+            if (info != null) {
+                byId.put(info.getThreadId(), info);
+            }
+        }
+        Set<Long> visited = new TreeSet<>();
+        for (long id : ids) {
+            if (visited.contains(id)) {
+                continue;
+            }
+            // 持ち主をたどって循環を取り出す
+            Set<Long> path = new LinkedHashSet<>();
+            long current = id;
+            while (byId.containsKey(current) && path.add(current)) {
+                current = byId.get(current).getLockOwnerId();
+            }
+            visited.addAll(path);
+            if (!path.contains(current)) {
+                continue;
+            }
+            List<ThreadInfo> cycle = new ArrayList<>();
+            boolean inCycle = false;
+            for (long member : path) {
+                inCycle |= member == current;
+                if (inCycle) {
+                    cycle.add(byId.get(member));
+                }
+            }
+            Set<Long> key = cycle.stream().map(ThreadInfo::getThreadId).collect(Collectors.toCollection(TreeSet::new));
+            if (reported.add(key)) {
+                Deadlock deadlock = new Deadlock(cycle);
+                deadlocks.add(deadlock);
+                if (onDeadlock != null) {
+                    onDeadlock.accept(deadlock);
+                }
+            }
+        }
+    }
+
+    // 待たされた時間（見積もり）の長い順に n 個
+    public List<LockStats> topContended(int n) {
+        return locks.values().stream()
+            .sorted(Comparator.comparingLong(LockStats::blockedNanos).reversed())
+            .limit(n)
+            .collect(Collectors.toList());
+    }
+
+    public List<Deadlock> deadlocks() {
+        return new ArrayList<>(deadlocks);
+    }
+
+    // 確認にかかった時間 / 経過時間（確認コストの平均 / 今の間隔 で見積もる）
+    public double overheadRatio() {
+        long n = polls;
+        return n == 0 ? 0 : (double) totalPollNanos / n / intervalNanos;
+    }
+
+    public long intervalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(intervalNanos);
+    }
+
+    public long polls() {
+        return polls;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            scheduler.shutdownNow();
+        }
+        restoreContentionMonitoring();
+    }
+
+    /**
+     * ロック1つぶんの競合の統計
+     */
+    public static final class LockStats {
+        public final String lockName;
+        private volatile long blockedNanos;
+        private volatile long samples;
+        private volatile int maxWaiters;
+        private volatile String lastOwner;
+
+        LockStats(String lockName) {
+            this.lockName = lockName;
+        }
+
+        // 見張りスレッドからしか呼ばれない
+        void sample(long sampleNanos, String owner) {
+            blockedNanos += sampleNanos;
+            samples++;
+            if (owner != null) {
+                lastOwner = owner;
+            }
+        }
+
+        void waiters(int count) {
+            if (count > maxWaiters) {
+                maxWaiters = count;
+            }
+        }
+
+        public long blockedNanos() {
+            return blockedNanos;
+        }
+
+        public long samples() {
+            return samples;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: 待ち時間(見積もり)=%dms, 見つかった回数=%d, 同時に待った最大数=%d, 最後の持ち主=%s",
+                lockName, TimeUnit.NANOSECONDS.toMillis(blockedNanos), samples, maxWaiters, lastOwner);
+        }
+    }
+
+    /**
+     * 検出したデッドロック（循環しているスレッドの一覧）
+     */
+    public static final class Deadlock {
+        public final List<ThreadInfo> threads;
+
+        Deadlock(List<ThreadInfo> threads) {
+            this.threads = threads;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("デッドロックを検出: ");
+            sb.append(threads.stream().map(ThreadInfo::getThreadName).collect(Collectors.joining(" → ")))
+                .append(" → ").append(threads.get(0).getThreadName()).append('\n');
+            for (ThreadInfo info : threads) {
+                sb.append(String.format("\"%s\" は %s を待っている（持ち主: \"%s\"、ロック待ち累計 %dms）%n",
+                    info.getThreadName(), info.getLockName(), info.getLockOwnerName(),
+                    Math.max(0, info.getBlockedTime())));
+                appendStack(sb, info);
+            }
+            return sb.toString();
+        }
+
+        private static void appendStack(StringBuilder sb, ThreadInfo info) {
+            StackTraceElement[] stack = info.getStackTrace();
+            MonitorInfo[] monitors = info.getLockedMonitors();
+            for (int depth = 0; depth < stack.length; depth++) {
+                sb.append("\tat ").append(stack[depth]).append('\n');
+                for (MonitorInfo monitor : monitors) {
+                    if (monitor.getLockedStackDepth() == depth) {
+                        sb.append("\t- locked ").append(monitor).append('\n');
+                    }
+                }
+            }
+            LockInfo[] synchronizers = info.getLockedSynchronizers();
+            if (synchronizers.length > 0) {
+                sb.append("\tlocked synchronizers: ").append(Arrays.toString(synchronizers)).append('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package app;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LockMonitor を動かしたときのオーバーヘッドの確認
+ *
+ * 4スレッドで Main.SynchronizedCounter / Main.ReentrantLockExample を叩くスループットを、
+ * 見張りなし・1秒間隔・10ms間隔（かなり頻繁）で比べる。
+ * あわせて、モニター自身が見積もったオーバーヘッド（確認のコスト / 間隔）と、
+ * いちばん取り合いになったロックを表示する。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.LockMonitorBenchmark [quick]
+ */
+public class LockMonitorBenchmark {
+    static final int THREADS = 4;
+    static final long[] INTERVALS_MILLIS = {0, 1000, 10};
+
+    public static void main(String[] args) {
+        Bench bench = args.length > 0 && args[0].equals("quick")
+            ? new Bench(2, 3, 200)
+            : Bench.defaults();
+        List<Bench.Result> results = Bench.newResults();
+
+        for (long interval : INTERVALS_MILLIS) {
+            LockMonitor monitor = interval == 0 ? null : LockMonitor.start(interval, System.err::println);
+            try {
+                Main.SynchronizedCounter sync = new Main.SynchronizedCounter();
+                results.add(bench.runConcurrent("synchronized", params(interval), THREADS, t -> () -> {
+                    sync.increment();
+                    return 0;
+                }));
+                Main.ReentrantLockExample reentrant = new Main.ReentrantLockExample();
+                results.add(bench.runConcurrent("reentrantLock", params(interval), THREADS, t -> () -> {
+                    reentrant.incrementWithLock();
+                    return 0;
+                }));
+                if (monitor != null) {
+                    System.out.printf("interval=%dms: 確認 %d回, オーバーヘッド %.3f%%, 実際の間隔 %dms%n",
+                        interval, monitor.polls(), monitor.overheadRatio() * 100, monitor.intervalMillis());
+                    monitor.topContended(2).forEach(s -> System.out.println("  " + s));
+                }
+            } finally {
+                if (monitor != null) {
+                    monitor.close();
+                }
+            }
+        }
+
+        Bench.printAll(results);
+    }
+
+    private static Map<String, Object> params(long intervalMillis) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("monitor", intervalMillis == 0 ? "off" : intervalMillis + "ms");
+        params.put("threads", THREADS);
+        return params;
+    }
+}
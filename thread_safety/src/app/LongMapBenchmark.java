@@ -0,0 +1,114 @@
+package app;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ConcurrentLongIntMap / ConcurrentLongLongMap と ConcurrentHashMap<Long, Integer> の比較
+ *
+ * 1. メモリ: N 件入れる前後のヒープ使用量の差から 1件あたりのバイト数を出す
+ *    （GC を何度か呼んでから測るので目安。-XX:-UseCompressedOops だと CHM はもっと大きくなる）
+ * 2. スループット: N 件入れたマップに対して
+ *    - get    : ランダムなキーで読む（CHM は Long へのボクシングで B/op が出る）
+ *    - addTo  : ランダムなキーに +1（CHM は merge(key, 1, Integer::sum)）
+ *    を 1 / 4 スレッドで回す
+ *
+ * 実行方法:
+ *   java -p out -m app/app.LongMapBenchmark [quick]
+ */
+public class LongMapBenchmark {
+    static final int[] THREADS = {1, 4};
+
+    public static void main(String[] args) {
+        boolean quick = args.length > 0 && args[0].equals("quick");
+        Bench bench = quick ? new Bench(2, 3, 200) : Bench.defaults();
+        int entries = quick ? 200_000 : 2_000_000;
+
+        System.out.printf("%-24s %10s %14s %12s%n", "map", "entries", "heap", "B/entry");
+        footprint("ConcurrentHashMap", entries, () -> {
+            ConcurrentHashMap<Long, Integer> map = new ConcurrentHashMap<>();
+            for (int i = 0; i < entries; i++) {
+                map.put(key(i), i);
+            }
+            return map;
+        });
+        footprint("ConcurrentLongIntMap", entries, () -> {
+            ConcurrentLongIntMap map = new ConcurrentLongIntMap();
+            for (int i = 0; i < entries; i++) {
+                map.put(key(i), i);
+            }
+            return map;
+        });
+        footprint("ConcurrentLongLongMap", entries, () -> {
+            ConcurrentLongLongMap map = new ConcurrentLongLongMap();
+            for (int i = 0; i < entries; i++) {
+                map.put(key(i), i);
+            }
+            return map;
+        });
+        System.out.println();
+
+        ConcurrentHashMap<Long, Integer> chm = new ConcurrentHashMap<>();
+        ConcurrentLongIntMap longInt = new ConcurrentLongIntMap(entries);
+        for (int i = 0; i < entries; i++) {
+            chm.put(key(i), i);
+            longInt.put(key(i), i);
+        }
+
+        List<Bench.Result> results = Bench.newResults();
+        for (int threads : THREADS) {
+            Map<String, Object> params = new LinkedHashMap<>();
+            params.put("entries", entries);
+            params.put("threads", threads);
+            results.add(bench.runConcurrent("CHM.get", params, threads, t -> {
+                long[] seed = {t + 1};
+                return () -> {
+                    Integer value = chm.get(key(Bench.next(seed, entries)));
+                    return value == null ? 0 : value;
+                };
+            }));
+            results.add(bench.runConcurrent("LongIntMap.get", params, threads, t -> {
+                long[] seed = {t + 1};
+                return () -> longInt.getOrDefault(key(Bench.next(seed, entries)), 0);
+            }));
+            results.add(bench.runConcurrent("CHM.merge", params, threads, t -> {
+                long[] seed = {t + 1};
+                return () -> chm.merge(key(Bench.next(seed, entries)), 1, Integer::sum);
+            }));
+            results.add(bench.runConcurrent("LongIntMap.addTo", params, threads, t -> {
+                long[] seed = {t + 1};
+                return () -> longInt.addTo(key(Bench.next(seed, entries)), 1);
+            }));
+        }
+        Bench.printAll(results);
+    }
+
+    // 連番ではなく、ばらけた long キー（実際の ID っぽく）
+    static long key(int i) {
+        return AbstractConcurrentLongMap.mix(i + 1);
+    }
+
+    interface Filler {
+        Object fill();
+    }
+
+    static void footprint(String name, int entries, Filler filler) {
+        long before = usedHeap();
+        Object map = filler.fill();
+        long after = usedHeap();
+        System.out.printf("%-24s %10d %11.1f MB %12.1f%n",
+            name, entries, (after - before) / 1e6, (double) (after - before) / entries);
+        // 測り終わるまで回収されないように
+        Bench.consume(map.hashCode());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -140,6 +140,24 @@ public class Main {
         t2.join();
 
         System.out.println("Count1: " + sync.getCount1() + ", Count2: " + sync.getCount2());
+
+        // ロックとカウンターをキャッシュライン単位で離した版（API は同じ）
+        PaddedBlockLevelSync padded = new PaddedBlockLevelSync();
+        Thread t3 = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                padded.increment1();
+            }
+        });
+        Thread t4 = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                padded.increment2();
+            }
+        });
+        t3.start();
+        t4.start();
+        t3.join();
+        t4.join();
+        System.out.println("Padded Count1: " + padded.getCount1() + ", Count2: " + padded.getCount2());
         System.out.println("→ 異なるロックオブジェクトで独立した同期が可能\n");
     }
 
@@ -152,6 +170,11 @@ public class Main {
             running = false;
         }
 
+        // 状態を外から確認する用（StressTests で使う）
+        boolean isRunning() {
+            return running;
+        }
+
         public void doWork() {
             System.out.println("作業開始...");
             long count = 0;
@@ -180,6 +203,20 @@ public class Main {
         example.stop();
         worker.join(2000); // 最大2秒待つ
 
+        // 旗が立つのを「待つだけ」なら、回り続けずに待ち方を選べる
+        SignalFlag start = new SignalFlag(WaitStrategy.spinThenPark(100));
+        Thread waiter = new Thread(() -> {
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        Thread.sleep(50);
+        start.signal();
+        waiter.join(2000);
+        System.out.println("SignalFlag: " + start.metrics());
         System.out.println("→ volatileにより、フラグの変更が他スレッドから見える\n");
     }
 
@@ -216,6 +253,22 @@ public class Main {
         atomicRef.compareAndSet("初期値", "新しい値"); // CAS操作
         System.out.println("AtomicReference: " + atomicRef.get());
 
+        // 書き込みが多いカウンターは、スレッドごとに別のセルに足して読むときに合計する
+        ConcurrentCounter striped = ConcurrentCounter.striped();
+        Thread[] stripedThreads = new Thread[5];
+        for (int i = 0; i < stripedThreads.length; i++) {
+            stripedThreads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    striped.increment();
+                }
+            });
+            stripedThreads[i].start();
+        }
+        for (Thread t : stripedThreads) {
+            t.join();
+        }
+        System.out.println("StripedCounter: " + striped.sum() + "（比較: java -p out -m app/app.CounterBenchmark）");
+
         System.out.println("→ Atomicクラスはロックなしでスレッドセーフな操作を提供\n");
     }
 
@@ -244,6 +297,25 @@ public class Main {
 
         System.out.println("ConcurrentHashMap サイズ: " + concurrentMap.size());
 
+        // 発展: キーが long・値が int なら、1件ごとのオブジェクトなしで持てる
+        ConcurrentLongIntMap primitiveMap = new ConcurrentLongIntMap();
+        Thread p1 = new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                primitiveMap.put(i, i);
+            }
+        });
+        Thread p2 = new Thread(() -> {
+            for (int i = 50; i < 150; i++) {
+                primitiveMap.put(i, i * 2);
+            }
+        });
+        p1.start();
+        p2.start();
+        p1.join();
+        p2.join();
+        System.out.println("ConcurrentLongIntMap サイズ: " + primitiveMap.size()
+            + "（key 120 → " + primitiveMap.getOrDefault(120, -1) + "）");
+
         // CopyOnWriteArrayList
         CopyOnWriteArrayList<String> cowList = new CopyOnWriteArrayList<>();
         cowList.add("A");
@@ -258,6 +330,19 @@ public class Main {
         }
         System.out.println("CopyOnWriteArrayList: " + cowList);
 
+        // 発展: 書き込みのたびに全体をコピーしない版（変わった枝だけコピーする）
+        SnapshotVectorList<String> vectorList = new SnapshotVectorList<>(List.of("A", "B", "C"));
+        for (String s : vectorList) {
+            if (s.equals("B")) {
+                vectorList.add("D"); // 今たどっているのは add 前のスナップショット
+            }
+        }
+        System.out.println("SnapshotVectorList: " + vectorList);
+        // 並べ替え・全要素の置き換えも1回の入れ替え（CAS 1回）で済む（CopyOnWriteArrayList と同じく使える）
+        Collections.sort(vectorList, Collections.reverseOrder());
+        vectorList.replaceAll(String::toLowerCase);
+        System.out.println("SnapshotVectorList（sort → replaceAll）: " + vectorList);
+
         // CopyOnWriteArraySet
         CopyOnWriteArraySet<Integer> cowSet = new CopyOnWriteArraySet<>();
         cowSet.add(1);
@@ -298,7 +383,22 @@ public class Main {
             t.join();
         }
 
-        System.out.println("→ CyclicBarrierで複数スレッドを同期ポイントで待機させる\n");
+        System.out.println("→ CyclicBarrierで複数スレッドを同期ポイントで待機させる");
+
+        // 発展: 何段もあるバッチは Phaser で（段ごとにアクションと所要時間）
+        PhasedPipeline pipeline = new PhasedPipeline()
+            .phase("load", () -> System.out.println("  → load 完了"))
+            .phase("transform", () -> System.out.println("  → transform 完了"))
+            .phase("store", () -> System.out.println("  → store 完了"));
+        pipeline.run(numberOfThreads, (phase, worker) -> {
+            try {
+                Thread.sleep((worker + 1) * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        pipeline.stats().forEach(stats -> System.out.println("  " + stats));
+        System.out.println("→ PhasedPipelineで複数の段を順にそろえる（詳しくは PhasedPipeline）\n");
     }
 
     // ==================== 7. BlockingQueue ====================
@@ -340,6 +440,12 @@ public class Main {
         producer.join();
         consumer.join();
 
+        // ロックを使わないリングバッファ（BlockingQueue なので同じように使える）
+        MpmcRingBuffer<String> ring = new MpmcRingBuffer<>(8, WaitStrategy.yielding());
+        ring.offerAll(List.of("Item-A", "Item-B", "Item-C"));
+        List<String> drained = new ArrayList<>();
+        ring.drainTo(drained);
+        System.out.println("MpmcRingBuffer: まとめて入れて取り出し " + drained);
         System.out.println("→ BlockingQueueで生産者-消費者パターンを実装\n");
     }
 
@@ -409,6 +515,14 @@ public class Main {
         boolean acquired = example.tryIncrementWithTimeout();
         System.out.println("tryLock成功: " + acquired);
 
+        // 読み取りが多いなら StampedLock の楽観的読み取り（API は同じ）
+        StampedLockExample stamped = new StampedLockExample();
+        for (int j = 0; j < 100; j++) {
+            stamped.incrementWithLock();
+        }
+        System.out.println("StampedLock Count: " + stamped.getCount()
+            + ", tryIncrement: " + stamped.tryIncrementWithTimeout());
+
         System.out.println("→ ReentrantLockはsynchronizedより柔軟な制御が可能\n");
     }
 
@@ -467,7 +581,11 @@ public class Main {
         }
 
         System.out.println("同期あり - 期待値: 5000, 実際: " + safeCounter.getCount());
-        System.out.println("→ synchronizedにより正確な値が保証される\n");
+        System.out.println("→ synchronizedにより正確な値が保証される");
+
+        // 発展: 「2人が同時に1回ずつ」を何万回も繰り返して、結果を数える（jcstress 風）
+        System.out.print(StressTests.unsafeCounter().run(100_000));
+        System.out.println("→ 全部のケースは StressTests で（1コアだとレースは出にくい）\n");
     }
 
     // ==================== 10. デッドロック ====================
@@ -520,5 +638,52 @@ public class Main {
         }
 
         System.out.println("→ ロック順序を統一することでデッドロックを回避\n");
+
+        // 発展: わざとデッドロックさせて、LockMonitor に見つけてもらう
+        // （lockInterruptibly で待たせるので、割り込めば抜け出せる）
+        ReentrantLock lockA = new ReentrantLock();
+        ReentrantLock lockB = new ReentrantLock();
+        CountDownLatch bothLocked = new CountDownLatch(2);
+        CountDownLatch found = new CountDownLatch(1);
+        Thread a = lockInOrder("deadlock-A", lockA, lockB, bothLocked);
+        Thread b = lockInOrder("deadlock-B", lockB, lockA, bothLocked);
+        try (LockMonitor monitor = LockMonitor.start(100, d -> {
+            System.out.println(d.toString().lines().findFirst().orElse(""));
+            found.countDown();
+        })) {
+            a.start();
+            b.start();
+            if (!found.await(5, TimeUnit.SECONDS)) {
+                System.out.println("（デッドロックを検出できませんでした）");
+            }
+            System.out.println("（見つけたデッドロック: " + monitor.deadlocks().size() + " 件）");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            a.interrupt();
+            b.interrupt();
+        }
+        System.out.println("→ 割り込みで片方をあきらめさせて解消（詳しくは LockMonitor）\n");
+    }
+
+    // first → second の順にロックを取る（相手も1つ目を取るまで待ってから2つ目へ）
+    private static Thread lockInOrder(String name, ReentrantLock first, ReentrantLock second, CountDownLatch bothLocked) {
+        Thread t = new Thread(() -> {
+            try {
+                first.lockInterruptibly();
+                try {
+                    bothLocked.countDown();
+                    bothLocked.await();
+                    second.lockInterruptibly();
+                    second.unlock();
+                } finally {
+                    first.unlock();
+                }
+            } catch (InterruptedException e) {
+                // 割り込まれたらあきらめる
+            }
+        }, name);
+        t.setDaemon(true);
+        return t;
     }
 }
@@ -0,0 +1,326 @@
+package app;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+/**
+ * ロックを使わない、複数プロデューサー・複数コンシューマーの固定長リングバッファ
+ *
+ * ArrayBlockingQueue は1つの ReentrantLock を生産者と消費者の全員で取り合う。
+ * MpmcRingBuffer は各スロットに「シーケンス番号」を持たせて、CAS だけで出し入れする
+ * （Dmitry Vyukov の bounded MPMC queue と同じ方式）。
+ *
+ *   スロット i のシーケンス番号 seq と、書き込み位置 tail / 読み出し位置 head の関係:
+ *     seq == tail        → 空いている。tail を CAS で1つ進めたプロデューサーが書いてよい
+ *     seq == head + 1    → 書き込み済み。head を CAS で1つ進めたコンシューマーが読んでよい
+ *     読んだら seq = head + capacity にして、1周後のプロデューサーに渡す
+ *
+ * 生産者どうしは tail、消費者どうしは head だけを取り合い、生産者と消費者はスロット単位でしか触れ合わない。
+ * 空・満杯のときの待ち方は WaitStrategy で選ぶ（put / take / タイムアウト付き offer / poll で使う）。
+ *
+ * BlockingQueue を実装しているので、出し入れ（offer / poll / put / take / drainTo）だけ使っている箇所なら
+ * ArrayBlockingQueue と差し替えられる。ただし次の点が違う:
+ *   - 容量は2のべき乗に切り上げる
+ *   - iterator() / size() / contains() はその瞬間の目安（弱い一貫性）
+ *   - 途中の要素を抜くことはできない。remove(Object) / removeIf / removeAll / retainAll / Iterator.remove() は
+ *     UnsupportedOperationException を投げる（スロットの順番が崩れるので、CAS だけでは抜けない）
+ */
+public final class MpmcRingBuffer<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    // 書き込み位置と読み出し位置は別々のスレッドが更新するので、キャッシュラインを分けておく
+    private final PaddedLong tail = new PaddedLong();
+    private final PaddedLong head = new PaddedLong();
+
+    public MpmcRingBuffer(int capacity) {
+        this(capacity, WaitStrategy.parking());
+    }
+
+    public MpmcRingBuffer(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 2 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be between 2 and 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = Objects.requireNonNull(waitStrategy);
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    // ==================== ノンブロッキング ====================
+
+    @Override
+    public boolean offer(E e) {
+        Objects.requireNonNull(e);
+        while (true) {
+            long pos = tail.get();
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[index] = e;
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // 1周前の要素がまだ読まれていない = 満杯
+                return false;
+            }
+            // diff > 0: 他のプロデューサーに先を越された。tail を読み直す
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        while (true) {
+            long pos = head.get();
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E e = (E) buffer[index];
+                    buffer[index] = null;
+                    sequences.lazySet(index, pos + buffer.length);
+                    return e;
+                }
+            } else if (diff < 0) {
+                // まだ書かれていない = 空
+                return null;
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        long pos = head.get();
+        int index = (int) pos & mask;
+        if (sequences.get(index) == pos + 1) {
+            // 読んでいる間に他の消費者に取られることもある（目安）
+            return (E) buffer[index];
+        }
+        return null;
+    }
+
+    // ==================== まとめて出し入れ ====================
+
+    /**
+     * items の先頭から、空いている分だけまとめて入れる
+     * tail の CAS は1回だけなので、1件ずつ offer するより取り合いが少ない
+     * @return 入れた件数（満杯なら 0）
+     */
+    public int offerAll(List<? extends E> items) {
+        // スロットを確保してから null に気づくと、そのスロットが永遠に埋まらないので先に確認する
+        for (E item : items) {
+            Objects.requireNonNull(item);
+        }
+        int remaining = items.size();
+        int offered = 0;
+        while (offered < remaining) {
+            long pos = tail.get();
+            // pos から連続して空いているスロットを数える
+            int free = 0;
+            int limit = Math.min(remaining - offered, buffer.length);
+            while (free < limit && sequences.get((int) (pos + free) & mask) == pos + free) {
+                free++;
+            }
+            if (free == 0) {
+                if (sequences.get((int) pos & mask) < pos) {
+                    break;
+                }
+                continue;
+            }
+            if (!tail.compareAndSet(pos, pos + free)) {
+                continue;
+            }
+            for (int i = 0; i < free; i++) {
+                int index = (int) (pos + i) & mask;
+                buffer[index] = items.get(offered + i);
+                sequences.lazySet(index, pos + i + 1);
+            }
+            offered += free;
+        }
+        return offered;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    // 書き込み済みの連続したスロットを head の CAS 1回でまとめて取り出す
+    @Override
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException("自分自身には drainTo できない");
+        }
+        int drained = 0;
+        while (drained < maxElements) {
+            long pos = head.get();
+            int ready = 0;
+            int limit = Math.min(maxElements - drained, buffer.length);
+            while (ready < limit && sequences.get((int) (pos + ready) & mask) == pos + ready + 1) {
+                ready++;
+            }
+            if (ready == 0) {
+                if (sequences.get((int) pos & mask) < pos + 1) {
+                    break;
+                }
+                continue;
+            }
+            if (!head.compareAndSet(pos, pos + ready)) {
+                continue;
+            }
+            // 先にスロットを全部返してから c に入れる（c.add が例外を出してもバッファは壊れない）
+            Object[] taken = new Object[ready];
+            for (int i = 0; i < ready; i++) {
+                int index = (int) (pos + i) & mask;
+                taken[i] = buffer[index];
+                buffer[index] = null;
+                sequences.lazySet(index, pos + i + buffer.length);
+            }
+            for (Object e : taken) {
+                c.add((E) e);
+            }
+            drained += ready;
+        }
+        return drained;
+    }
+
+    // ==================== ブロッキング（WaitStrategy で待つ） ====================
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        int attempt = 0;
+        while (!offer(e)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitStrategy.idle(attempt++);
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        int attempt = 0;
+        E e;
+        while ((e = poll()) == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitStrategy.idle(attempt++);
+        }
+        return e;
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        while (!offer(e)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            waitStrategy.idle(attempt++);
+        }
+        return true;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        E e;
+        while ((e = poll()) == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            waitStrategy.idle(attempt++);
+        }
+        return e;
+    }
+
+    // ==================== 状態 ====================
+
+    @Override
+    public int size() {
+        // head を先に読むと、その後に進んだ tail との差が容量を超えることがあるので丸める
+        long h = head.get();
+        long t = tail.get();
+        return (int) Math.max(0, Math.min(buffer.length, t - h));
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return buffer.length - size();
+    }
+
+    // ==================== 途中の要素は抜けない ====================
+
+    @Override
+    public boolean remove(Object o) {
+        throw unsupportedRemoval();
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        throw unsupportedRemoval();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw unsupportedRemoval();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw unsupportedRemoval();
+    }
+
+    private static UnsupportedOperationException unsupportedRemoval() {
+        return new UnsupportedOperationException("MpmcRingBuffer は先頭から取り出すことしかできない（poll / take / drainTo を使う）");
+    }
+
+    // その瞬間に読めた要素のコピーをたどる（弱い一貫性）。remove() には対応しない
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long h = head.get();
+        long t = tail.get();
+        for (long pos = h; pos < t && pos - h < buffer.length; pos++) {
+            int index = (int) pos & mask;
+            Object e = buffer[index];
+            if (e != null && sequences.get(index) == pos + 1) {
+                snapshot.add((E) e);
+            }
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+}
@@ -0,0 +1,186 @@
+package app;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * 読み取りが多い状態を StampedLock の楽観的読み取りで守る入れ物
+ *
+ * ReentrantLock は getCount() のような読み取りでも排他ロックを取るので、
+ * 読み取りどうしでも1つずつしか進めない。StampedLock の楽観的読み取りは
+ *   1. tryOptimisticRead() でスタンプ（版番号）をもらう（ロックは取らない）
+ *   2. 状態を読む
+ *   3. validate(stamp) で、その間に書き込みがなかったか確かめる
+ * という流れで、書き込みがなければロックなしで読み終わる。
+ * 書き込みとぶつかったら、読み取りロック（ReadWriteLock の読み取り側と同じ）で読み直す。
+ *
+ * 注意:
+ *   - read() に渡す関数は、書き込み途中の壊れた状態を見ることがある（あとで捨てられる）。
+ *     副作用を起こさず、例外も出さない「読むだけ」の処理にすること
+ *   - StampedLock は再入できない。read() / write() の中からさらに read() / write() を呼ばないこと
+ */
+public final class OptimisticGuard<S> {
+    // 楽観的読み取りを何回やり直してから読み取りロックに切り替えるか
+    static final int DEFAULT_OPTIMISTIC_ATTEMPTS = 2;
+
+    private final StampedLock lock = new StampedLock();
+    private final S state;
+    private final int optimisticAttempts;
+    // 読み取りロックに切り替えた回数だけ数える（ロックなしで読めた回数まで数えると、
+    // 速いはずの読み取りのたびにカウンターを書き換えることになり、それ自体が遅くなる）
+    private final ConcurrentCounter lockedReads = ConcurrentCounter.striped();
+
+    public OptimisticGuard(S state) {
+        this(state, DEFAULT_OPTIMISTIC_ATTEMPTS);
+    }
+
+    public OptimisticGuard(S state, int optimisticAttempts) {
+        if (optimisticAttempts < 0) {
+            throw new IllegalArgumentException("optimisticAttempts must not be negative: " + optimisticAttempts);
+        }
+        this.state = Objects.requireNonNull(state);
+        this.optimisticAttempts = optimisticAttempts;
+    }
+
+    /**
+     * 状態を読む
+     * まず楽観的に読み、書き込みとぶつかったら読み取りロックで読み直す
+     */
+    public <R> R read(Function<? super S, ? extends R> reader) {
+        for (int i = 0; i < optimisticAttempts; i++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                R result = reader.apply(state);
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            lockedReads.increment();
+            return reader.apply(state);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // read() の int 版（読み取りのたびにボクシングしない）
+    public int readInt(ToIntFunction<? super S> reader) {
+        for (int i = 0; i < optimisticAttempts; i++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                int result = reader.applyAsInt(state);
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            lockedReads.increment();
+            return reader.applyAsInt(state);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // read() の long 版
+    public long readLong(ToLongFunction<? super S> reader) {
+        for (int i = 0; i < optimisticAttempts; i++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                long result = reader.applyAsLong(state);
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            lockedReads.increment();
+            return reader.applyAsLong(state);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // 書き込みロックを取って状態を変更する
+    public void write(Consumer<? super S> writer) {
+        long stamp = lock.writeLock();
+        try {
+            writer.accept(state);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // 書き込みロックを取って状態を変更し、結果を返す
+    public <R> R update(Function<? super S, ? extends R> writer) {
+        long stamp = lock.writeLock();
+        try {
+            return writer.apply(state);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * タイムアウト付きの書き込み（ReentrantLockExample.tryIncrementWithTimeout() と同じ考え方）
+     * @return 時間内にロックが取れて書き込んだら true
+     */
+    public boolean tryWrite(Consumer<? super S> writer, long timeout, TimeUnit unit) {
+        long stamp;
+        try {
+            stamp = lock.tryWriteLock(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (stamp == 0) {
+            return false;
+        }
+        try {
+            writer.accept(state);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 条件を満たすときだけ書き込む
+     * 条件の確認は読み取りロックで行い、満たしていれば書き込みロックに昇格する
+     * （昇格できなければいったん離して書き込みロックを取り直し、条件を確認し直す）
+     * @return 書き込んだら true
+     */
+    public boolean updateIf(Predicate<? super S> condition, Consumer<? super S> writer) {
+        long stamp = lock.readLock();
+        try {
+            while (condition.test(state)) {
+                long writeStamp = lock.tryConvertToWriteLock(stamp);
+                if (writeStamp != 0) {
+                    stamp = writeStamp;
+                    writer.accept(state);
+                    return true;
+                }
+                lock.unlockRead(stamp);
+                stamp = lock.writeLock();
+            }
+            return false;
+        } finally {
+            lock.unlock(stamp);
+        }
+    }
+
+    // 読み取りロックに切り替えた回数（成功率を見たいときは、読み取りの回数を呼び出し側で数えて比べる）
+    public long lockedReads() {
+        return lockedReads.sum();
+    }
+}
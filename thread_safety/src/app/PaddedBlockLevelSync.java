@@ -0,0 +1,40 @@
+package app;
+
+/**
+ * Main.BlockLevelSync と同じ API で、2つのロックが本当に独立するようにした版
+ *
+ * 元の BlockLevelSync は count1 / count2 が隣り合ったフィールドで、lock1 / lock2 も
+ * 続けて new されるので、だいたい同じキャッシュラインに乗る。ロックは別でも
+ * increment1() と increment2() が同じラインを取り合うので、2スレッドでも思ったほど速くならない。
+ *
+ * ここではカウンターごとに PaddedLong を1つ持ち、それ自体をロックにも使う。
+ * ロックの状態（オブジェクトヘッダー）とデータが同じ領域にまとまり、もう片方とは 128 バイト以上離れる。
+ */
+public class PaddedBlockLevelSync {
+    private final PaddedLong count1 = new PaddedLong();
+    private final PaddedLong count2 = new PaddedLong();
+
+    public void increment1() {
+        synchronized (count1) {
+            count1.setPlain(count1.getPlain() + 1);
+        }
+    }
+
+    public void increment2() {
+        synchronized (count2) {
+            count2.setPlain(count2.getPlain() + 1);
+        }
+    }
+
+    public int getCount1() {
+        synchronized (count1) {
+            return (int) count1.getPlain();
+        }
+    }
+
+    public int getCount2() {
+        synchronized (count2) {
+            return (int) count2.getPlain();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package app;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * 前後を埋めて、他の変数とキャッシュラインを共有しない long
+ *
+ * CPU はメモリを 64 バイト（キャッシュライン）単位で扱う。Main.BlockLevelSync の
+ * count1 / count2 のように隣り合ったフィールドは同じキャッシュラインに乗るので、
+ * ロックを分けても「片方を書くともう片方のコアのキャッシュが無効になる」（false sharing）。
+ *
+ * PaddedLong は値の前後に 120 バイトずつ詰め物を置いて、値が必ず自分だけのラインに乗るようにする。
+ * （隣接ラインのプリフェッチもあるので、JDK の @Contended と同じく 128 バイト近く空けている）
+ *
+ * JVM は同じクラスのフィールドを並べ替えることがあるが、親クラスのフィールドは必ず子より前に置く。
+ * なので「前の詰め物 → 値 → 後ろの詰め物」を親子3段のクラスに分けて順序を保証している。
+ *
+ * 使い方は2通り。
+ *   - カウンター・値の入れ物として: incrementAndGet() / compareAndSet() などのアトミック操作
+ *   - ロック兼データとして: synchronized (padded) { padded.setPlain(padded.getPlain() + 1); }
+ *     → 1つのロックとそれが守るデータが、同じ（他と共有しない）領域にまとまる
+ */
+public final class PaddedLong extends PaddedLongRhs {
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(PaddedLongValue.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public PaddedLong() {
+    }
+
+    public PaddedLong(long initial) {
+        this.value = initial;
+    }
+
+    public long get() {
+        return value;
+    }
+
+    public void set(long newValue) {
+        value = newValue;
+    }
+
+    // 他のスレッドへの公開を急がない書き込み（AtomicLong.lazySet と同じ）
+    public void setRelease(long newValue) {
+        VALUE.setRelease(this, newValue);
+    }
+
+    // ロックの中で使う普通の読み書き（volatile のコストがかからない）
+    public long getPlain() {
+        return (long) VALUE.get(this);
+    }
+
+    public void setPlain(long newValue) {
+        VALUE.set(this, newValue);
+    }
+
+    public boolean compareAndSet(long expected, long newValue) {
+        return VALUE.compareAndSet(this, expected, newValue);
+    }
+
+    public long incrementAndGet() {
+        return addAndGet(1);
+    }
+
+    public long addAndGet(long delta) {
+        return (long) VALUE.getAndAdd(this, delta) + delta;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(value);
+    }
+}
+
+// 値の前の詰め物（オブジェクトヘッダーと合わせて 128 バイト以上）
+abstract class PaddedLongLhs {
+    long p01, p02, p03, p04, p05, p06, p07, p08, p09, p10, p11, p12, p13, p14, p15;
+}
+
+abstract class PaddedLongValue extends PaddedLongLhs {
+    volatile long value;
+}
+
+// 値の後ろの詰め物（次のオブジェクトとの間を 120 バイト空ける）
+abstract class PaddedLongRhs extends PaddedLongValue {
+    long q01, q02, q03, q04, q05, q06, q07, q08, q09, q10, q11, q12, q13, q14, q15;
+}
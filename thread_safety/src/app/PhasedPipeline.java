@@ -0,0 +1,361 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Phaser で作る「何段もあるバッチ処理」の実行器
+ *
+ * Main.demonstrateCyclicBarrier() の CyclicBarrier は、決まった人数で1回そろえるだけ。
+ * 実際のバッチは「読み込み → 変換 → 書き出し」のように何段もあり、途中で作業者が増えたり抜けたりする。
+ *
+ *   PhasedPipeline pipeline = new PhasedPipeline()
+ *       .phase("load", () -> System.out.println("読み込み完了"))
+ *       .phase("transform", null)
+ *       .phase("store", () -> System.out.println("書き出し完了"));
+ *   pipeline.run(4, (phase, worker) -> ...);   // 4人で全段をこなす
+ *
+ * 自分でスレッドを回すなら register() で参加し、1段終わるごとに arriveAndAwait()、
+ * 抜けるときは leave() を呼ぶ。途中から register() した作業者は、今の段から加わる。
+ *
+ * - 段ごとのアクション: 全員がそろった瞬間に、最後に到着したスレッドで1回だけ実行される
+ * - 階層化: Phaser は1つに数百人ぶら下がると、到着のたびの CAS がぶつかり合う。
+ *   そこで tierSize 人ごとに子 Phaser を作り、子が親（root）に1人ぶんとして到着する形にする
+ * - 計測: 段ごとにかかった時間と、バリアで待たされた時間を stats() で見られる
+ *
+ * 全段を rounds 回まわるか、参加者がいなくなるか、段のアクションが例外を投げたら終了する。
+ */
+public final class PhasedPipeline {
+    // 子 Phaser 1つにぶら下げる人数の既定値
+    static final int DEFAULT_TIER_SIZE = 32;
+
+    private final int tierSize;
+    private final int rounds;
+    private final List<Stage> stages = new ArrayList<>();
+    private final Root root = new Root();
+    // 子 Phaser（tierSize が十分大きければ root に直接ぶら下げる）
+    private final List<Phaser> leaves = new ArrayList<>();
+    private final AtomicInteger parties = new AtomicInteger();
+    private final AtomicReference<RuntimeException> actionFailure = new AtomicReference<>();
+
+    public PhasedPipeline() {
+        this(DEFAULT_TIER_SIZE, 1);
+    }
+
+    /**
+     * @param tierSize 子 Phaser 1つあたりの最大人数（Integer.MAX_VALUE なら階層化しない）
+     * @param rounds   全段を何周するか
+     */
+    public PhasedPipeline(int tierSize, int rounds) {
+        if (tierSize <= 0) {
+            throw new IllegalArgumentException("tierSize must be positive: " + tierSize);
+        }
+        if (rounds <= 0) {
+            throw new IllegalArgumentException("rounds must be positive: " + rounds);
+        }
+        this.tierSize = tierSize;
+        this.rounds = rounds;
+    }
+
+    /**
+     * 段を追加する（参加者が来る前に全部追加しておく）
+     * @param action 全員がそろったときに1回だけ実行する処理（不要なら null）
+     */
+    public synchronized PhasedPipeline phase(String name, Runnable action) {
+        if (parties.get() > 0 || root.isTerminated()) {
+            throw new IllegalStateException("phases must be added before any party registers");
+        }
+        stages.add(new Stage(Objects.requireNonNull(name), action));
+        return this;
+    }
+
+    /**
+     * 作業者として参加する。今の段から加わる
+     * @throws IllegalStateException 段がない、またはもう終わっている
+     */
+    public synchronized Party register() {
+        if (stages.isEmpty()) {
+            throw new IllegalStateException("no phases");
+        }
+        if (root.isTerminated()) {
+            throw new IllegalStateException("pipeline already finished");
+        }
+        if (parties.get() == 0 && root.getPhase() == 0) {
+            // 最初の段の時間は、最初の参加者が来たときから数える
+            root.phaseStartedAt = System.nanoTime();
+        }
+        Phaser leaf = leafWithRoom();
+        leaf.register();
+        parties.incrementAndGet();
+        return new Party(leaf);
+    }
+
+    // 空きのある子 Phaser を探す（なければ作る）
+    private Phaser leafWithRoom() {
+        if (tierSize == Integer.MAX_VALUE) {
+            return root;
+        }
+        for (Phaser leaf : leaves) {
+            if (leaf.getRegisteredParties() < tierSize) {
+                return leaf;
+            }
+        }
+        // 子は最初の register() のときに root へ1人ぶんとして登録される
+        Phaser leaf = new Phaser(root);
+        leaves.add(leaf);
+        return leaf;
+    }
+
+    /**
+     * workers 人で全段をこなし、終わるまで待つ
+     * body は段ごとに各作業者で1回ずつ呼ばれる。body が例外を投げた作業者はその段で抜け、
+     * 全員が終わってから最初の例外を投げ直す
+     */
+    public void run(int workers, PhaseBody body) throws InterruptedException {
+        Thread[] threads = new Thread[workers];
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        // 全員が登録してから始めないと、先に来た人だけで段が進んでしまう
+        Party[] registered = new Party[workers];
+        for (int w = 0; w < workers; w++) {
+            registered[w] = register();
+        }
+        for (int w = 0; w < workers; w++) {
+            int worker = w;
+            Party party = registered[w];
+            threads[w] = new Thread(() -> {
+                try {
+                    while (!party.isFinished()) {
+                        body.run(party.stageName(), worker);
+                        party.arriveAndAwait();
+                    }
+                } catch (RuntimeException e) {
+                    // 1人が落ちても残りが永遠に待たないように抜ける
+                    party.leave();
+                    failure.compareAndSet(null, e);
+                }
+            }, "pipeline-" + w);
+            threads[w].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        failure.compareAndSet(null, actionFailure.get());
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    // 段のアクションが投げた例外（投げたらそこで終了している）
+    public RuntimeException actionFailure() {
+        return actionFailure.get();
+    }
+
+    // 終わるまで待つ
+    public void awaitTermination(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int phase = root.getPhase();
+        while (phase >= 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            // 参加者ではないので、到着せずに次の段を待つだけ
+            phase = root.awaitAdvanceInterruptibly(phase, remaining, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public boolean isFinished() {
+        return root.isTerminated();
+    }
+
+    public int parties() {
+        return parties.get();
+    }
+
+    // 子 Phaser の数（0 なら root に直接ぶら下がっている）
+    public synchronized int tiers() {
+        return leaves.size();
+    }
+
+    // 段ごとの統計（追加した順）
+    public synchronized List<PhaseStats> stats() {
+        List<PhaseStats> result = new ArrayList<>();
+        for (Stage stage : stages) {
+            result.add(stage.snapshot());
+        }
+        return result;
+    }
+
+    private Stage stageOf(int phase) {
+        return stages.get(phase % stages.size());
+    }
+
+    /**
+     * 段ごとにそれぞれの作業者が行う処理
+     */
+    @FunctionalInterface
+    public interface PhaseBody {
+        void run(String phase, int worker);
+    }
+
+    // 全員がそろったら段のアクションを実行し、終わりかどうか決める
+    private final class Root extends Phaser {
+        private long phaseStartedAt = System.nanoTime();
+
+        @Override
+        protected boolean onAdvance(int phase, int registeredParties) {
+            Stage stage = stageOf(phase);
+            boolean failed = false;
+            try {
+                if (stage.action != null) {
+                    stage.action.run();
+                }
+            } catch (RuntimeException e) {
+                // ここで投げると段が進まず全員が待ち続けるので、記録して終わらせる
+                actionFailure.compareAndSet(null, e);
+                failed = true;
+            }
+            long now = System.nanoTime();
+            stage.completed(now - phaseStartedAt, parties.get());
+            phaseStartedAt = now;
+            return failed || phase + 1 >= stages.size() * rounds || registeredParties == 0;
+        }
+    }
+
+    /**
+     * パイプラインの参加者（1スレッドで使う）
+     */
+    public final class Party {
+        private final Phaser leaf;
+        private boolean left;
+
+        private Party(Phaser leaf) {
+            this.leaf = leaf;
+        }
+
+        // 今の段の番号（何周目かも含めて 0, 1, 2, ...）。終わっていたら負
+        public int phase() {
+            return leaf.getPhase();
+        }
+
+        public String stageName() {
+            int phase = phase();
+            return phase < 0 ? null : stageOf(phase).name;
+        }
+
+        public boolean isFinished() {
+            return left || leaf.isTerminated();
+        }
+
+        /**
+         * 今の段を終えて、全員がそろうのを待つ
+         * @return 次の段の番号（全段終わったら負）
+         */
+        public int arriveAndAwait() {
+            if (left) {
+                throw new IllegalStateException("already left");
+            }
+            int phase = leaf.getPhase();
+            if (phase < 0) {
+                return phase;
+            }
+            Stage stage = stageOf(phase);
+            long start = System.nanoTime();
+            int next = leaf.arriveAndAwaitAdvance();
+            stage.waited(System.nanoTime() - start);
+            return next;
+        }
+
+        // 今の段で抜ける（ほかの人を待たない）
+        public void leave() {
+            if (left) {
+                return;
+            }
+            left = true;
+            parties.decrementAndGet();
+            if (!leaf.isTerminated()) {
+                leaf.arriveAndDeregister();
+            }
+        }
+    }
+
+    private static final class Stage {
+        final String name;
+        final Runnable action;
+        // onAdvance（同時に1つしか走らない）だけが書く
+        private volatile long completions;
+        private volatile long totalNanos;
+        private volatile long maxNanos;
+        private volatile int lastParties;
+        // 到着は全員が同時にするので競合しにくいカウンターで
+        private final ConcurrentCounter arrivals = ConcurrentCounter.striped();
+        private final ConcurrentCounter waitNanos = ConcurrentCounter.striped();
+
+        Stage(String name, Runnable action) {
+            this.name = name;
+            this.action = action;
+        }
+
+        void completed(long nanos, int parties) {
+            completions++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            lastParties = parties;
+        }
+
+        void waited(long nanos) {
+            arrivals.increment();
+            waitNanos.add(nanos);
+        }
+
+        PhaseStats snapshot() {
+            return new PhaseStats(name, completions, totalNanos, maxNanos, lastParties, arrivals.sum(), waitNanos.sum());
+        }
+    }
+
+    /**
+     * 1つの段の統計（何周ぶんかの合計）
+     * meanWaitNanos() が段の時間に近いほど、作業者の仕事量がばらついていて、早い人が待たされている
+     */
+    public static final class PhaseStats {
+        public final String name;
+        public final long completions;
+        public final long totalNanos;
+        public final long maxNanos;
+        public final int parties;
+        public final long arrivals;
+        public final long totalWaitNanos;
+
+        PhaseStats(String name, long completions, long totalNanos, long maxNanos, int parties,
+                   long arrivals, long totalWaitNanos) {
+            this.name = name;
+            this.completions = completions;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.parties = parties;
+            this.arrivals = arrivals;
+            this.totalWaitNanos = totalWaitNanos;
+        }
+
+        public double meanNanos() {
+            return completions == 0 ? 0 : (double) totalNanos / completions;
+        }
+
+        // 1人がバリアで待たされた時間の平均
+        public double meanWaitNanos() {
+            return arrivals == 0 ? 0 : (double) totalWaitNanos / arrivals;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d回, 平均%.2fms 最大%.2fms, 人数=%d, バリア待ち 平均%.2fms",
+                name, completions, meanNanos() / 1e6, maxNanos / 1e6, parties, meanWaitNanos() / 1e6);
+        }
+    }
+}
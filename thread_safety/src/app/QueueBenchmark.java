@@ -0,0 +1,246 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.function.Supplier;
+
+/**
+ * MpmcRingBuffer と JDK の BlockingQueue のスループット・レイテンシ比較
+ *
+ * P 個のプロデューサーが送信時刻（System.nanoTime）を入れ、C 個のコンシューマーが取り出して
+ * 「入れてから取り出されるまで」の時間を記録する。全件を運び終わるまでの時間から items/s を出す。
+ *   - single : put() / take() で1件ずつ
+ *   - batch  : 64件ずつ（MpmcRingBuffer は offerAll / drainTo、他は put の繰り返し / drainTo）
+ *
+ * LinkedTransferQueue は上限がないので、put() でも待たない点に注意（ほかは容量 1024）。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.QueueBenchmark [quick]
+ */
+public class QueueBenchmark {
+    static final int CAPACITY = 1024;
+    static final int BATCH = 64;
+    static final int[][] SHAPES = {{1, 1}, {2, 2}, {4, 4}};
+    // 終了の合図（送信時刻と同じ値になることはまずない）
+    static final Long POISON = Long.valueOf(Long.MIN_VALUE);
+
+    public static void main(String[] args) throws InterruptedException {
+        boolean quick = args.length > 0 && args[0].equals("quick");
+        int itemsPerProducer = quick ? 50_000 : 1_000_000;
+        int warmup = quick ? 1 : 3;
+        int measure = quick ? 3 : 5;
+
+        Map<String, Supplier<BlockingQueue<Long>>> queues = new LinkedHashMap<>();
+        queues.put("ArrayBlockingQueue", () -> new ArrayBlockingQueue<>(CAPACITY));
+        queues.put("LinkedBlockingQueue", () -> new LinkedBlockingQueue<>(CAPACITY));
+        queues.put("LinkedTransferQueue", LinkedTransferQueue::new);
+        queues.put("MpmcRingBuffer(spin)", () -> new MpmcRingBuffer<>(CAPACITY, WaitStrategy.spin()));
+        queues.put("MpmcRingBuffer(yield)", () -> new MpmcRingBuffer<>(CAPACITY, WaitStrategy.yielding()));
+        queues.put("MpmcRingBuffer(park)", () -> new MpmcRingBuffer<>(CAPACITY, WaitStrategy.parking()));
+
+        List<Bench.Result> results = Bench.newResults();
+        List<String> latencyRows = new ArrayList<>();
+        for (int[] shape : SHAPES) {
+            for (boolean batch : new boolean[] {false, true}) {
+                for (Map.Entry<String, Supplier<BlockingQueue<Long>>> entry : queues.entrySet()) {
+                    int producers = shape[0];
+                    int consumers = shape[1];
+                    long total = (long) producers * itemsPerProducer;
+                    for (int i = 0; i < warmup; i++) {
+                        transfer(entry.getValue().get(), producers, consumers, itemsPerProducer, batch);
+                    }
+                    double[] nsPerItem = new double[measure];
+                    long[] latencies = null;
+                    for (int i = 0; i < measure; i++) {
+                        Run run = transfer(entry.getValue().get(), producers, consumers, itemsPerProducer, batch);
+                        nsPerItem[i] = (double) run.wallNanos / total;
+                        latencies = run.latencies;
+                    }
+                    Map<String, Object> params = params(producers, consumers, batch);
+                    results.add(new Bench.Result(entry.getKey(), params, nsPerItem, 0));
+                    latencyRows.add(String.format("%-24s %-36s %10.1fμs %10.1fμs %10.1fμs",
+                        entry.getKey(), params, Bench.percentile(latencies, 0.50) / 1e3,
+                        Bench.percentile(latencies, 0.99) / 1e3, Bench.percentile(latencies, 0.999) / 1e3));
+                }
+            }
+        }
+
+        System.out.println("※ ops/s は運んだ件数/秒、ns/op は1件あたり");
+        Bench.printAll(results);
+        System.out.printf("%n%-24s %-36s %12s %12s %12s%n", "queue", "params", "p50", "p99", "p99.9");
+        latencyRows.forEach(System.out::println);
+    }
+
+    // 1回分の結果
+    static final class Run {
+        final long wallNanos;
+        final long[] latencies;
+
+        Run(long wallNanos, long[] latencies) {
+            this.wallNanos = wallNanos;
+            this.latencies = latencies;
+        }
+    }
+
+    /**
+     * producers × itemsPerProducer 件を運び切るまでの時間と、各件のレイテンシ（ソート済み）を返す
+     */
+    static Run transfer(BlockingQueue<Long> queue, int producers, int consumers, int itemsPerProducer,
+                        boolean batch) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] producerThreads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            producerThreads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                    if (batch) {
+                        produceBatches(queue, itemsPerProducer);
+                    } else {
+                        for (int i = 0; i < itemsPerProducer; i++) {
+                            queue.put(System.nanoTime());
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producerThreads[p].start();
+        }
+        long[][] perConsumer = new long[consumers][];
+        Thread[] consumerThreads = new Thread[consumers];
+        for (int c = 0; c < consumers; c++) {
+            int index = c;
+            consumerThreads[c] = new Thread(() -> {
+                try {
+                    start.await();
+                    perConsumer[index] = batch ? consumeBatches(queue) : consumeSingles(queue);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            consumerThreads[c].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread t : producerThreads) {
+            t.join();
+        }
+        for (int c = 0; c < consumers; c++) {
+            queue.put(POISON);
+        }
+        for (Thread t : consumerThreads) {
+            t.join();
+        }
+        long wall = System.nanoTime() - begin;
+
+        int count = 0;
+        for (long[] l : perConsumer) {
+            count += l.length;
+        }
+        long[] all = new long[count];
+        int offset = 0;
+        for (long[] l : perConsumer) {
+            System.arraycopy(l, 0, all, offset, l.length);
+            offset += l.length;
+        }
+        Arrays.sort(all);
+        return new Run(wall, all);
+    }
+
+    private static void produceBatches(BlockingQueue<Long> queue, int items) throws InterruptedException {
+        List<Long> chunk = new ArrayList<>(BATCH);
+        for (int i = 0; i < items; i += BATCH) {
+            chunk.clear();
+            long now = System.nanoTime();
+            for (int j = 0; j < BATCH && i + j < items; j++) {
+                chunk.add(now);
+            }
+            if (queue instanceof MpmcRingBuffer) {
+                MpmcRingBuffer<Long> ring = (MpmcRingBuffer<Long>) queue;
+                int offered = 0;
+                while (offered < chunk.size()) {
+                    int n = ring.offerAll(chunk.subList(offered, chunk.size()));
+                    if (n == 0) {
+                        Thread.yield();
+                    }
+                    offered += n;
+                }
+            } else {
+                for (Long item : chunk) {
+                    queue.put(item);
+                }
+            }
+        }
+    }
+
+    private static long[] consumeSingles(BlockingQueue<Long> queue) throws InterruptedException {
+        LatencyLog log = new LatencyLog();
+        while (true) {
+            Long item = queue.take();
+            if (item == POISON) {
+                return log.toArray();
+            }
+            log.add(System.nanoTime() - item);
+        }
+    }
+
+    private static long[] consumeBatches(BlockingQueue<Long> queue) throws InterruptedException {
+        LatencyLog log = new LatencyLog();
+        List<Long> chunk = new ArrayList<>(BATCH);
+        while (true) {
+            chunk.clear();
+            if (queue.drainTo(chunk, BATCH) == 0) {
+                chunk.add(queue.take());
+            }
+            long now = System.nanoTime();
+            for (int i = 0; i < chunk.size(); i++) {
+                Long item = chunk.get(i);
+                if (item == POISON) {
+                    // POISON は全件のあとにしか入らないので、残りも全部 POISON。他の消費者のぶんを戻す
+                    for (int j = i + 1; j < chunk.size(); j++) {
+                        queue.put(POISON);
+                    }
+                    return log.toArray();
+                }
+                log.add(now - item);
+            }
+        }
+    }
+
+    // 16件に1件だけ記録する（全件だとメモリを食うので）
+    static final class LatencyLog {
+        private long[] values = new long[1024];
+        private int size;
+        private long seen;
+
+        void add(long latency) {
+            if ((seen++ & 15) != 0) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = latency;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static Map<String, Object> params(int producers, int consumers, boolean batch) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("P×C", producers + "×" + consumers);
+        params.put("mode", batch ? "batch" : "single");
+        return params;
+    }
+}
@@ -0,0 +1,99 @@
+package app;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntSupplier;
+
+/**
+ * 読み取り / 書き込みの比率ごとのロック比較ベンチマーク
+ *
+ * 各スレッドが毎回乱数で読み取り（getCount）か書き込み（increment）かを選んで叩く。
+ *   - synchronized  : Main.SynchronizedCounter
+ *   - reentrantLock : Main.ReentrantLockExample（読み取りも排他ロック）
+ *   - stampedLock   : StampedLockExample（読み取りは楽観的読み取り）
+ * 比率は 読み取り99%/書き込み1%、90/10、50/50。
+ * 楽観的読み取りの成功率は、読み取りの回数（スレッドごとに数える）と OptimisticGuard.lockedReads() から出す。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.ReadWriteMixBenchmark [quick]
+ */
+public class ReadWriteMixBenchmark {
+    static final int[] WRITE_PERCENTS = {1, 10, 50};
+    static final int[] THREADS = {4, 16};
+
+    public static void main(String[] args) {
+        Bench bench = args.length > 0 && args[0].equals("quick")
+            ? new Bench(2, 3, 200)
+            : Bench.defaults();
+        List<Bench.Result> results = Bench.newResults();
+
+        for (int threads : THREADS) {
+            for (int writePercent : WRITE_PERCENTS) {
+                Main.SynchronizedCounter sync = new Main.SynchronizedCounter();
+                results.add(run(bench, "synchronized", threads, writePercent, sync::increment, sync::getCount,
+                    new ReadCounts(threads)));
+
+                Main.ReentrantLockExample reentrant = new Main.ReentrantLockExample();
+                results.add(run(bench, "reentrantLock", threads, writePercent,
+                    reentrant::incrementWithLock, reentrant::getCount, new ReadCounts(threads)));
+
+                StampedLockExample stamped = new StampedLockExample();
+                ReadCounts reads = new ReadCounts(threads);
+                results.add(run(bench, "stampedLock", threads, writePercent,
+                    stamped::incrementWithLock, stamped::getCount, reads));
+                long total = reads.sum();
+                long locked = stamped.guard().lockedReads();
+                System.out.printf("stampedLock threads=%d write=%d%%: 楽観的読み取りの成功率 %.1f%%%n",
+                    threads, writePercent, total == 0 ? 0.0 : 100.0 * (total - locked) / total);
+            }
+        }
+
+        Bench.printAll(results);
+    }
+
+    // どのロックでも同じだけ数える（比べる条件をそろえるため）
+    private static Bench.Result run(Bench bench, String name, int threads, int writePercent,
+                                    Runnable write, IntSupplier read, ReadCounts reads) {
+        return bench.runConcurrent(name, params(threads, writePercent), threads, t -> () -> {
+            if (ThreadLocalRandom.current().nextInt(100) < writePercent) {
+                write.run();
+                return 0;
+            }
+            reads.increment(t);
+            return read.getAsInt();
+        });
+    }
+
+    // スレッドごとの読み取り回数。自分の枠しか書かないので、ふつうの long で取り合いにならない
+    // （隣のスレッドの枠と同じキャッシュラインに乗らないよう、16個おきに使う）
+    private static final class ReadCounts {
+        private static final int STRIDE = 16;
+        private final long[] counts;
+
+        ReadCounts(int threads) {
+            this.counts = new long[threads * STRIDE];
+        }
+
+        void increment(int thread) {
+            counts[thread * STRIDE]++;
+        }
+
+        // 計測スレッドが終わってから読む
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < counts.length; i += STRIDE) {
+                sum += counts[i];
+            }
+            return sum;
+        }
+    }
+
+    private static Map<String, Object> params(int threads, int writePercent) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("threads", threads);
+        params.put("read/write", (100 - writePercent) + "/" + writePercent);
+        return params;
+    }
+}
@@ -0,0 +1,165 @@
+package app;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 待ち方を選べる「旗」（待つ側と知らせる側の1対多の合図）
+ *
+ * Main.VolatileExample は volatile の running を見ながら回り続けるので、
+ * 待っている間もずっと1コアを使い切る。旗が立つのを待つだけなら、
+ * WaitStrategy で「どれだけ早く気づきたいか」と「どれだけ CPU を使ってよいか」を選べばいい。
+ *
+ *   SignalFlag stop = new SignalFlag(WaitStrategy.spinThenPark(100));
+ *   // 待つ側
+ *   stop.await();
+ *   // 知らせる側
+ *   stop.signal();
+ *
+ * signal() は眠っている待ち手を unpark するので、眠る戦略でもすぐ起きる。
+ * metrics() で、合図から気づくまでの時間（wake-up latency）と、待っている間に使った CPU 時間がわかる。
+ * reset() で旗を下ろせば何度でも使える。
+ */
+public final class SignalFlag {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final WaitStrategy strategy;
+    private volatile boolean signalled;
+    private volatile long signalledAt;
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+
+    // 統計（複数の待ち手が同時に足すので競合しにくいカウンターで）
+    // waits は旗が立って起きた回数。CPU 時間と待ち時間はタイムアウトした分も含む
+    private final ConcurrentCounter waits = ConcurrentCounter.striped();
+    private final ConcurrentCounter wakeUpNanos = ConcurrentCounter.striped();
+    private final ConcurrentCounter cpuNanos = ConcurrentCounter.striped();
+    private final ConcurrentCounter waitedNanos = ConcurrentCounter.striped();
+    private final PaddedLong maxWakeUpNanos = new PaddedLong();
+
+    public SignalFlag(WaitStrategy strategy) {
+        this.strategy = Objects.requireNonNull(strategy);
+    }
+
+    public boolean isSignalled() {
+        return signalled;
+    }
+
+    // 旗を立てて、待っている全員を起こす
+    public void signal() {
+        signalledAt = System.nanoTime();
+        signalled = true;
+        for (Thread waiter : waiters) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    // 旗を下ろす（次の await() はまた待つ）
+    public void reset() {
+        signalled = false;
+    }
+
+    /**
+     * 旗が立つまで待つ
+     * @return 合図から気づくまでの時間（ns）。最初から立っていたら 0
+     */
+    public long await() throws InterruptedException {
+        if (signalled) {
+            return 0;
+        }
+        return awaitUntil(Long.MAX_VALUE);
+    }
+
+    /**
+     * タイムアウト付きで待つ
+     * @return 旗が立ったら true
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        if (signalled) {
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return awaitUntil(deadline) >= 0;
+    }
+
+    // 旗が立ったら wake-up latency を、期限切れなら -1 を返す
+    private long awaitUntil(long deadline) throws InterruptedException {
+        Thread current = Thread.currentThread();
+        long cpuBefore = THREADS.getCurrentThreadCpuTime();
+        long start = System.nanoTime();
+        waiters.add(current);
+        try {
+            int attempt = 0;
+            // 登録してから旗を確認するので、signal() の unpark を取りこぼさない
+            while (!signalled) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0) {
+                    return -1;
+                }
+                strategy.idle(attempt++);
+            }
+            long latency = Math.max(0, System.nanoTime() - signalledAt);
+            record(latency);
+            return latency;
+        } finally {
+            waiters.remove(current);
+            waitedNanos.add(System.nanoTime() - start);
+            cpuNanos.add(THREADS.getCurrentThreadCpuTime() - cpuBefore);
+        }
+    }
+
+    private void record(long latency) {
+        waits.increment();
+        wakeUpNanos.add(latency);
+        long max;
+        while (latency > (max = maxWakeUpNanos.get())) {
+            if (maxWakeUpNanos.compareAndSet(max, latency)) {
+                break;
+            }
+        }
+    }
+
+    public Metrics metrics() {
+        return new Metrics(waits.sum(), wakeUpNanos.sum(), maxWakeUpNanos.get(), cpuNanos.sum(), waitedNanos.sum());
+    }
+
+    /**
+     * 待ちの統計
+     * cpuRatio() が 1.0 に近いほど、待っている間ずっと CPU を使っていた（スピン）
+     */
+    public static final class Metrics {
+        public final long waits;
+        public final long totalWakeUpNanos;
+        public final long maxWakeUpNanos;
+        public final long cpuNanos;
+        public final long waitedNanos;
+
+        Metrics(long waits, long totalWakeUpNanos, long maxWakeUpNanos, long cpuNanos, long waitedNanos) {
+            this.waits = waits;
+            this.totalWakeUpNanos = totalWakeUpNanos;
+            this.maxWakeUpNanos = maxWakeUpNanos;
+            this.cpuNanos = cpuNanos;
+            this.waitedNanos = waitedNanos;
+        }
+
+        public double meanWakeUpNanos() {
+            return waits == 0 ? 0 : (double) totalWakeUpNanos / waits;
+        }
+
+        // 待っていた時間のうち CPU を使っていた割合
+        public double cpuRatio() {
+            return waitedNanos == 0 ? 0 : (double) cpuNanos / waitedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("待ち=%d回, 気づくまで 平均%.1fμs 最大%.1fμs, CPU使用率=%.0f%%",
+                waits, meanWakeUpNanos() / 1e3, maxWakeUpNanos / 1e3, cpuRatio() * 100);
+        }
+    }
+}
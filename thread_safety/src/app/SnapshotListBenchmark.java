@@ -0,0 +1,88 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * CopyOnWriteArrayList と SnapshotVectorList の比較（どこで逆転するか）
+ *
+ * 4スレッドが、リストの大きさ SIZES × 書き込みの割合 WRITE_PERMILLE（‰）の組み合わせで
+ *   - 読み取り : get(ランダムな位置)
+ *   - 書き込み : set(ランダムな位置, 値)（大きさを変えずに続けられるように）
+ * を混ぜて回す。CopyOnWriteArrayList の set は配列全体のコピー（O(n)）、SnapshotVectorList は O(log32 n)。
+ *
+ * 最後に大きさごと・割合ごとの「CopyOnWriteArrayList の ns/op ÷ SnapshotVectorList の ns/op」を表にする。
+ * 1 より大きいところは SnapshotVectorList のほうが速い。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.SnapshotListBenchmark [quick]
+ */
+public class SnapshotListBenchmark {
+    static final int THREADS = 4;
+    static final int[] SIZES = {16, 256, 4_096, 65_536};
+    static final int[] WRITE_PERMILLE = {0, 10, 100, 500};
+
+    public static void main(String[] args) {
+        Bench bench = args.length > 0 && args[0].equals("quick")
+            ? new Bench(2, 3, 200)
+            : Bench.defaults();
+
+        List<Bench.Result> results = Bench.newResults();
+        double[][] speedup = new double[SIZES.length][WRITE_PERMILLE.length];
+        for (int s = 0; s < SIZES.length; s++) {
+            List<Integer> initial = new ArrayList<>();
+            for (int i = 0; i < SIZES[s]; i++) {
+                initial.add(i);
+            }
+            for (int w = 0; w < WRITE_PERMILLE.length; w++) {
+                Map<String, Object> params = new LinkedHashMap<>();
+                params.put("size", SIZES[s]);
+                params.put("write‰", WRITE_PERMILLE[w]);
+                params.put("threads", THREADS);
+                Bench.Result cow = mixed(bench, "CopyOnWriteArrayList", params,
+                    new CopyOnWriteArrayList<>(initial), WRITE_PERMILLE[w]);
+                Bench.Result vector = mixed(bench, "SnapshotVectorList", params,
+                    new SnapshotVectorList<>(initial), WRITE_PERMILLE[w]);
+                results.add(cow);
+                results.add(vector);
+                speedup[s][w] = cow.meanNs / vector.meanNs;
+            }
+        }
+        Bench.printAll(results);
+
+        System.out.println();
+        System.out.println("CopyOnWriteArrayList ÷ SnapshotVectorList（ns/op の比。1 より大きいとベクターが速い）");
+        System.out.printf("%10s", "size＼write‰");
+        for (int permille : WRITE_PERMILLE) {
+            System.out.printf("%10d", permille);
+        }
+        System.out.println();
+        for (int s = 0; s < SIZES.length; s++) {
+            System.out.printf("%10d", SIZES[s]);
+            for (int w = 0; w < WRITE_PERMILLE.length; w++) {
+                System.out.printf("%10.2f", speedup[s][w]);
+            }
+            System.out.println();
+        }
+    }
+
+    static Bench.Result mixed(Bench bench, String name, Map<String, Object> params,
+                              List<Integer> list, int writePermille) {
+        int size = list.size();
+        return bench.runConcurrent(name, params, THREADS, t -> {
+            long[] seed = {t + 1};
+            return () -> {
+                int r = Bench.next(seed);
+                int index = (r >>> 10) % size;
+                if ((r & 1023) % 1000 < writePermille) {
+                    list.set(index, r);
+                    return index;
+                }
+                return list.get(index);
+            };
+        });
+    }
+}
@@ -0,0 +1,314 @@
+package app;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * CopyOnWriteArrayList の代わりに使える、書き込みが軽いスレッドセーフなリスト
+ *
+ * 中身は PersistentVector 1つで、AtomicReference で差し替える（CAS で失敗したらやり直す）。
+ *   - 読み取り・iterator() はそのときのスナップショットを見る（CopyOnWriteArrayList と同じく
+ *     イテレート中に add しても ConcurrentModificationException にならない）
+ *   - add(e) / set(i, e) / 末尾の remove は O(log32 n) の小さなコピーで済む
+ *   - 途中への add(i, e) / remove(i) は作り直しになるので O(n)（CopyOnWriteArrayList と同じ）
+ *   - removeIf / removeAll / retainAll / replaceAll / sort は1回の作り直し（CAS 1回）で行う。やり直したときは条件・関数をもう一度呼ぶ
+ *     （CopyOnWriteArrayList と同じく、Collections.sort(list) や list.replaceAll(...) もまとめて1回で入れ替わる）
+ *   - listIterator() / subList() も1つのスナップショットを見る。書き込みはできない（subList は読み取り専用）
+ *
+ * 書き込みがまれで、小さいリストを何度もなめるなら CopyOnWriteArrayList のほうが速い（配列1つなので）。
+ * どのあたりで逆転するかは SnapshotListBenchmark。
+ *
+ *   SnapshotVectorList<String> listeners = new SnapshotVectorList<>();
+ *   listeners.add("A");
+ *   for (String s : listeners) { ... }         // スナップショットをたどる
+ *   PersistentVector<String> snap = listeners.snapshot();
+ */
+public final class SnapshotVectorList<E> extends AbstractList<E> implements RandomAccess {
+    private final AtomicReference<PersistentVector<E>> current;
+
+    public SnapshotVectorList() {
+        this.current = new AtomicReference<>(PersistentVector.empty());
+    }
+
+    public SnapshotVectorList(Collection<? extends E> elements) {
+        this.current = new AtomicReference<>(PersistentVector.of(elements));
+    }
+
+    // 今の中身（以後の変更の影響を受けない）
+    public PersistentVector<E> snapshot() {
+        return current.get();
+    }
+
+    // 書き込みはすべてここを通る。ほかのスレッドに先を越されたら、新しい中身に対してやり直す
+    private PersistentVector<E> update(UnaryOperator<PersistentVector<E>> change) {
+        while (true) {
+            PersistentVector<E> before = current.get();
+            PersistentVector<E> after = change.apply(before);
+            if (current.compareAndSet(before, after)) {
+                return before;
+            }
+        }
+    }
+
+    // update() と同じ。change が同じ中身を返したら（何も変わらなければ）CAS せずに false
+    private boolean updateIfChanged(UnaryOperator<PersistentVector<E>> change) {
+        while (true) {
+            PersistentVector<E> before = current.get();
+            PersistentVector<E> after = change.apply(before);
+            if (after == before) {
+                return false;
+            }
+            if (current.compareAndSet(before, after)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return current.get().size();
+    }
+
+    @Override
+    public E get(int index) {
+        return current.get().get(index);
+    }
+
+    @Override
+    public E set(int index, E element) {
+        return update(v -> v.set(index, element)).get(index);
+    }
+
+    @Override
+    public boolean add(E element) {
+        update(v -> v.append(element));
+        return true;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        update(v -> {
+            Objects.checkIndex(index, v.size() + 1);
+            if (index == v.size()) {
+                return v.append(element);
+            }
+            // 途中に入れるので index から後ろを作り直す
+            PersistentVector<E> result = truncate(v, index).append(element);
+            for (int i = index; i < v.size(); i++) {
+                result = result.append(v.get(i));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public E remove(int index) {
+        return update(v -> {
+            Objects.checkIndex(index, v.size());
+            return without(v, index);
+        }).get(index);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        // 見つからなければ同じ中身のまま（CAS は成功する）
+        PersistentVector<E> before = update(v -> {
+            int index = indexOf(v, o);
+            return index < 0 ? v : without(v, index);
+        });
+        return indexOf(before, o) >= 0;
+    }
+
+    // 末尾に一度に足す（CAS は1回）
+    @Override
+    public boolean addAll(Collection<? extends E> elements) {
+        if (elements.isEmpty()) {
+            return false;
+        }
+        Object[] array = elements.toArray();
+        update(v -> {
+            PersistentVector<E> result = v;
+            for (Object e : array) {
+                @SuppressWarnings("unchecked")
+                E element = (E) e;
+                result = result.append(element);
+            }
+            return result;
+        });
+        return true;
+    }
+
+    // 条件に合うものをまとめて消す（作り直しは1回）
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        return updateIfChanged(v -> without(v, filter));
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return updateIfChanged(v -> without(v, c::contains));
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return updateIfChanged(v -> without(v, e -> !c.contains(e)));
+    }
+
+    // 全要素を置き換える（作り直しは1回。AbstractList の既定は ListIterator.set を使うので、ここで上書きする）
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        Objects.requireNonNull(operator);
+        update(v -> {
+            PersistentVector<E> result = PersistentVector.empty();
+            for (E e : v) {
+                result = result.append(operator.apply(e));
+            }
+            return result;
+        });
+    }
+
+    // 並べ替える（配列にして並べ替え、作り直しは1回）。c が null なら自然順序（List.sort と同じ）
+    @Override
+    public void sort(Comparator<? super E> c) {
+        update(v -> {
+            @SuppressWarnings("unchecked")
+            E[] array = (E[]) v.toArray();
+            Arrays.sort(array, c);
+            return PersistentVector.of(Arrays.asList(array));
+        });
+    }
+
+    // なければ足す（CopyOnWriteArrayList.addIfAbsent と同じ）
+    public boolean addIfAbsent(E element) {
+        PersistentVector<E> before = update(v -> indexOf(v, element) >= 0 ? v : v.append(element));
+        return indexOf(before, element) < 0;
+    }
+
+    @Override
+    public void clear() {
+        current.set(PersistentVector.empty());
+    }
+
+    // スナップショットをたどる。remove() はできない（CopyOnWriteArrayList と同じ）
+    @Override
+    public Iterator<E> iterator() {
+        Iterator<E> it = current.get().iterator();
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return it.next();
+            }
+        };
+    }
+
+    // スナップショットをたどる。set() / add() / remove() はできない
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        return new Snapshot<>(current.get()).listIterator(index);
+    }
+
+    // 今のスナップショットの一部（読み取り専用。以後の変更は見えない）
+    @Override
+    public List<E> subList(int fromIndex, int toIndex) {
+        return new Snapshot<>(current.get()).subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return current.get().toArray();
+    }
+
+    private static <E> PersistentVector<E> truncate(PersistentVector<E> v, int length) {
+        PersistentVector<E> result = v;
+        // 後ろが短ければ pop で、長ければ先頭から作り直す
+        if (v.size() - length <= length) {
+            while (result.size() > length) {
+                result = result.pop();
+            }
+            return result;
+        }
+        result = PersistentVector.empty();
+        for (int i = 0; i < length; i++) {
+            result = result.append(v.get(i));
+        }
+        return result;
+    }
+
+    private static <E> PersistentVector<E> without(PersistentVector<E> v, int index) {
+        if (index == v.size() - 1) {
+            return v.pop();
+        }
+        PersistentVector<E> result = truncate(v, index);
+        for (int i = index + 1; i < v.size(); i++) {
+            result = result.append(v.get(i));
+        }
+        return result;
+    }
+
+    // filter に合うものを除いた中身（1つも合わなければ v をそのまま返す）
+    private static <E> PersistentVector<E> without(PersistentVector<E> v, Predicate<? super E> filter) {
+        int first = 0;
+        while (first < v.size() && !filter.test(v.get(first))) {
+            first++;
+        }
+        if (first == v.size()) {
+            return v;
+        }
+        PersistentVector<E> result = truncate(v, first);
+        for (int i = first + 1; i < v.size(); i++) {
+            E e = v.get(i);
+            if (!filter.test(e)) {
+                result = result.append(e);
+            }
+        }
+        return result;
+    }
+
+    private static int indexOf(PersistentVector<?> v, Object o) {
+        int index = 0;
+        for (Object e : v) {
+            if (Objects.equals(e, o)) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    // 1つのスナップショットを読み取り専用の List に見せる（書き込みは AbstractList の既定どおり UnsupportedOperationException）
+    private static final class Snapshot<E> extends AbstractList<E> implements RandomAccess {
+        private final PersistentVector<E> vector;
+
+        Snapshot(PersistentVector<E> vector) {
+            this.vector = vector;
+        }
+
+        @Override
+        public E get(int index) {
+            return vector.get(index);
+        }
+
+        @Override
+        public int size() {
+            return vector.size();
+        }
+    }
+}
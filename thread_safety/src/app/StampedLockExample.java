@@ -0,0 +1,35 @@
+package app;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Main.ReentrantLockExample と同じ API を OptimisticGuard で実装した版
+ *
+ * getCount() は楽観的読み取りなので、書き込みがなければ読み取りどうしが止め合わない。
+ * incrementWithLock() / tryIncrementWithTimeout() は書き込みロックを取る。
+ */
+public class StampedLockExample {
+    // ガードの中の状態（ロックの中でしか書かないので普通のフィールドでいい）
+    private static final class State {
+        int count;
+    }
+
+    private final OptimisticGuard<State> guard = new OptimisticGuard<>(new State());
+
+    public void incrementWithLock() {
+        guard.write(s -> s.count++);
+    }
+
+    public boolean tryIncrementWithTimeout() {
+        // 100ms以内に書き込みロックを取得できるか試す
+        return guard.tryWrite(s -> s.count++, 100, TimeUnit.MILLISECONDS);
+    }
+
+    public int getCount() {
+        return guard.readInt(s -> s.count);
+    }
+
+    OptimisticGuard<?> guard() {
+        return guard;
+    }
+}
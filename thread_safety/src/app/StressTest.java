@@ -0,0 +1,287 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+/**
+ * jcstress 風の並行性ストレステスト
+ *
+ * 1回の試行 = 新しい状態オブジェクトを1つ作り、複数の actor を別々のスレッドで同時に走らせ、
+ * 全員が終わったら arbiter で最後の状態を読む。actor / arbiter は結果を long[] に書き、
+ * その組み合わせ（outcome）ごとに何回出たかを数える。
+ *
+ *   StressTest<Main.UnsafeCounter> test = new StressTest<>("UnsafeCounter", Main.UnsafeCounter::new, 1)
+ *       .actor((c, r) -> c.increment())
+ *       .actor((c, r) -> c.increment())
+ *       .arbiter((c, r) -> r[0] = c.getCount())
+ *       .expect("2", Expect.ACCEPTABLE, "両方の加算が残った")
+ *       .expect("1", Expect.ACCEPTABLE_INTERESTING, "加算が1つ消えた");
+ *   System.out.println(test.run(1_000_000));
+ *
+ * - 状態は BATCH 個ずつまとめて作り、各 actor スレッドは同じ順にたどる
+ * - 1つの状態ごとに actor どうしで足並みをそろえてから実行するので、重なりやすい（WaitStrategy で待つ）
+ * - expect() していない outcome が出たら FORBIDDEN 扱い。actor が例外を投げたときも FORBIDDEN
+ *
+ * ※ レースはコアが足りないと出にくい（1コアだと actor が同時に走らない）。
+ *   「出なかった」は「起きない」の証明ではない。
+ *
+ * @param <S> 1回の試行で使う状態の型
+ */
+public final class StressTest<S> {
+    // 1回にまとめて作る状態の数
+    static final int BATCH = 1024;
+
+    public enum Expect {
+        // 起きてよい
+        ACCEPTABLE,
+        // 起きてよいが、注目すべき（レースが実際に起きた、など）
+        ACCEPTABLE_INTERESTING,
+        // 起きてはいけない
+        FORBIDDEN
+    }
+
+    /**
+     * actor / arbiter の処理
+     * result は試行ごとの結果の枠（長さは resultSlots）
+     */
+    @FunctionalInterface
+    public interface Actor<S> {
+        void run(S state, long[] result);
+    }
+
+    private final String name;
+    private final Supplier<? extends S> stateFactory;
+    private final int resultSlots;
+    private final List<Actor<S>> actors = new ArrayList<>();
+    private Actor<S> arbiter;
+    private final Map<String, Expectation> expectations = new LinkedHashMap<>();
+    private WaitStrategy waitStrategy = WaitStrategy.spinThenYield(100);
+
+    public StressTest(String name, Supplier<? extends S> stateFactory, int resultSlots) {
+        if (resultSlots <= 0) {
+            throw new IllegalArgumentException("resultSlots must be positive: " + resultSlots);
+        }
+        this.name = Objects.requireNonNull(name);
+        this.stateFactory = Objects.requireNonNull(stateFactory);
+        this.resultSlots = resultSlots;
+    }
+
+    // 同時に走らせる処理を1つ足す（1つにつきスレッド1本）
+    public StressTest<S> actor(Actor<S> actor) {
+        actors.add(Objects.requireNonNull(actor));
+        return this;
+    }
+
+    // actor が全員終わったあとに1回だけ走る処理
+    public StressTest<S> arbiter(Actor<S> arbiter) {
+        this.arbiter = Objects.requireNonNull(arbiter);
+        return this;
+    }
+
+    /**
+     * outcome の扱いを決める
+     * @param outcome 結果の枠を ", " でつないだもの（例: "1, 0"）
+     */
+    public StressTest<S> expect(String outcome, Expect expect, String description) {
+        expectations.put(outcome, new Expectation(expect, description));
+        return this;
+    }
+
+    // actor どうしで足並みをそろえるときの待ち方
+    public StressTest<S> waitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = Objects.requireNonNull(waitStrategy);
+        return this;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * iterations 回試行して、outcome ごとの回数を返す
+     */
+    public Result run(int iterations) throws InterruptedException {
+        if (actors.size() < 2) {
+            throw new IllegalStateException("at least two actors are needed");
+        }
+        int actorCount = actors.size();
+        Batch<S> batch = new Batch<>(resultSlots);
+        // 状態を用意した → actor が全員終えた、の2回ずつ使う
+        CyclicBarrier barrier = new CyclicBarrier(actorCount + 1);
+        int batches = (iterations + BATCH - 1) / BATCH;
+
+        Thread[] threads = new Thread[actorCount];
+        for (int a = 0; a < actorCount; a++) {
+            int index = a;
+            threads[a] = new Thread(() -> runActor(index, batch, barrier, batches), "stress-" + name + "-" + a);
+            threads[a].setDaemon(true);
+            threads[a].start();
+        }
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        long start = System.nanoTime();
+        try {
+            for (int b = 0; b < batches; b++) {
+                int size = Math.min(BATCH, iterations - b * BATCH);
+                batch.reset(size, stateFactory);
+                barrier.await();
+                barrier.await();
+                for (int i = 0; i < size; i++) {
+                    String outcome;
+                    if (batch.failures[i] != null) {
+                        outcome = "例外: " + batch.failures[i];
+                    } else {
+                        if (arbiter != null) {
+                            arbiter.run(batch.states.get(i), batch.results[i]);
+                        }
+                        outcome = format(batch.results[i]);
+                    }
+                    counts.merge(outcome, 1L, Long::sum);
+                }
+            }
+        } catch (BrokenBarrierException e) {
+            throw new IllegalStateException("stress test aborted: " + name, e);
+        } finally {
+            for (Thread t : threads) {
+                t.interrupt();
+            }
+        }
+        return new Result(name, iterations, System.nanoTime() - start, counts, expectations);
+    }
+
+    private void runActor(int index, Batch<S> batch, CyclicBarrier barrier, int batches) {
+        Actor<S> actor = actors.get(index);
+        int actorCount = actors.size();
+        try {
+            for (int b = 0; b < batches; b++) {
+                barrier.await();
+                for (int i = 0; i < batch.size; i++) {
+                    // 全員がこの状態の前に来るまで待ってから、いっせいに走る
+                    batch.arrivals.incrementAndGet(i);
+                    int attempt = 0;
+                    while (batch.arrivals.get(i) < actorCount) {
+                        waitStrategy.idle(attempt++);
+                    }
+                    try {
+                        actor.run(batch.states.get(i), batch.results[i]);
+                    } catch (RuntimeException | Error e) {
+                        // ここで落ちるとバリアがそろわず main が止まるので、結果として記録する
+                        batch.failures[i] = e.getClass().getSimpleName();
+                    }
+                }
+                barrier.await();
+            }
+        } catch (InterruptedException | BrokenBarrierException e) {
+            // 終了（または main 側が止まった）
+        }
+    }
+
+    private static String format(long[] result) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < result.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(result[i]);
+        }
+        return sb.toString();
+    }
+
+    // 1バッチぶんの状態と結果（バッチごとに中身を入れ替えて使い回す）
+    private static final class Batch<S> {
+        final List<S> states = new ArrayList<>(BATCH);
+        final long[][] results;
+        final String[] failures = new String[BATCH];
+        final AtomicIntegerArray arrivals = new AtomicIntegerArray(BATCH);
+        // CyclicBarrier をはさんで読み書きするので、ふつうのフィールドで見える
+        int size;
+
+        Batch(int resultSlots) {
+            this.results = new long[BATCH][resultSlots];
+        }
+
+        void reset(int size, Supplier<? extends S> factory) {
+            this.size = size;
+            states.clear();
+            for (int i = 0; i < size; i++) {
+                states.add(factory.get());
+                Arrays.fill(results[i], 0);
+                failures[i] = null;
+                arrivals.set(i, 0);
+            }
+        }
+    }
+
+    private static final class Expectation {
+        final Expect expect;
+        final String description;
+
+        Expectation(Expect expect, String description) {
+            this.expect = expect;
+            this.description = description;
+        }
+    }
+
+    /**
+     * 1つのテストの結果
+     * passed() は FORBIDDEN（expect() していないものも含む）が1回も出なかったら true
+     */
+    public static final class Result {
+        public final String name;
+        public final int iterations;
+        public final long elapsedNanos;
+        public final Map<String, Long> counts;
+        private final Map<String, Expectation> expectations;
+
+        Result(String name, int iterations, long elapsedNanos, Map<String, Long> counts,
+               Map<String, Expectation> expectations) {
+            this.name = name;
+            this.iterations = iterations;
+            this.elapsedNanos = elapsedNanos;
+            this.counts = counts;
+            this.expectations = expectations;
+        }
+
+        public Expect expectOf(String outcome) {
+            Expectation expectation = expectations.get(outcome);
+            return expectation == null ? Expect.FORBIDDEN : expectation.expect;
+        }
+
+        public boolean passed() {
+            return counts.keySet().stream().noneMatch(outcome -> expectOf(outcome) == Expect.FORBIDDEN);
+        }
+
+        // ACCEPTABLE_INTERESTING が出たか（レースを再現できたか、など）
+        public boolean interesting() {
+            return counts.keySet().stream().anyMatch(outcome -> expectOf(outcome) == Expect.ACCEPTABLE_INTERESTING);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("[%s] %s（%,d 回, %.1f 秒）%n",
+                passed() ? (interesting() ? "OK*" : "OK") : "FAILED", name, iterations, elapsedNanos / 1e9));
+            sb.append(String.format("  %-20s %14s  %-24s %s%n", "outcome", "回数", "期待", "説明"));
+            // expect() した順に、そのあと想定外のもの
+            for (Map.Entry<String, Expectation> entry : expectations.entrySet()) {
+                sb.append(String.format("  %-20s %,14d  %-24s %s%n", entry.getKey(),
+                    counts.getOrDefault(entry.getKey(), 0L), entry.getValue().expect, entry.getValue().description));
+            }
+            for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                if (!expectations.containsKey(entry.getKey())) {
+                    sb.append(String.format("  %-20s %,14d  %-24s %s%n", entry.getKey(), entry.getValue(),
+                        Expect.FORBIDDEN, "想定外"));
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package app;
+
+import java.util.List;
+
+import app.StressTest.Expect;
+
+/**
+ * Main のカウンター・ロックに対するストレステスト一式
+ *
+ * demonstrateRaceCondition() の UnsafeCounter は、5スレッド × 1000回を1回やるだけなので、
+ * レースが出るかどうかは運しだい。ここでは「2人が同時に1回ずつ」を何百万回も繰り返して、
+ * 結果の組み合わせを数える。速いロックフリー版に差し替える前に、同じテストで確認できる。
+ *
+ *   - UnsafeCounter        : 加算が消える（"1"）が出たら、レースを再現できた（ACCEPTABLE_INTERESTING）
+ *   - SynchronizedCounter  : 必ず "2"
+ *   - BlockLevelSync       : lock1 側に2回・lock2 側に1回足して、必ず "2, 1"（ロックが別でも互いに壊さない）
+ *   - VolatileExample      : stop() を見た後に running=true に戻って見える（"0, 1"）ことはない
+ *   - ReentrantLockExample : lock() と tryLock(timeout) を同時に。タイムアウトしなければ "1, 2"
+ *
+ * 実行方法（FAILED が1つでもあれば終了コード 1）:
+ *   java -p out -m app/app.StressTests [quick]
+ */
+public class StressTests {
+
+    public static void main(String[] args) throws InterruptedException {
+        int iterations = args.length > 0 && args[0].equals("quick") ? 100_000 : 2_000_000;
+        boolean allPassed = true;
+        for (StressTest<?> test : all()) {
+            StressTest.Result result = test.run(iterations);
+            System.out.println(result);
+            allPassed &= result.passed();
+        }
+        if (!allPassed) {
+            System.exit(1);
+        }
+    }
+
+    static List<StressTest<?>> all() {
+        return List.of(unsafeCounter(), synchronizedCounter(), blockLevelSync(), volatileFlag(), reentrantLock());
+    }
+
+    static StressTest<Main.UnsafeCounter> unsafeCounter() {
+        return new StressTest<>("UnsafeCounter.increment", Main.UnsafeCounter::new, 1)
+            .actor((c, r) -> c.increment())
+            .actor((c, r) -> c.increment())
+            .arbiter((c, r) -> r[0] = c.getCount())
+            .expect("2", Expect.ACCEPTABLE, "両方の加算が残った")
+            .expect("1", Expect.ACCEPTABLE_INTERESTING, "加算が1つ消えた（読み取り→加算→書き込みの間に割り込まれた）");
+    }
+
+    static StressTest<Main.SynchronizedCounter> synchronizedCounter() {
+        return new StressTest<>("SynchronizedCounter.increment", Main.SynchronizedCounter::new, 1)
+            .actor((c, r) -> c.increment())
+            .actor((c, r) -> c.increment())
+            .arbiter((c, r) -> r[0] = c.getCount())
+            .expect("2", Expect.ACCEPTABLE, "両方の加算が残った")
+            .expect("1", Expect.FORBIDDEN, "加算が消えた");
+    }
+
+    static StressTest<Main.BlockLevelSync> blockLevelSync() {
+        return new StressTest<>("BlockLevelSync.increment1/2", Main.BlockLevelSync::new, 2)
+            .actor((s, r) -> s.increment1())
+            .actor((s, r) -> s.increment1())
+            .actor((s, r) -> s.increment2())
+            .arbiter((s, r) -> {
+                r[0] = s.getCount1();
+                r[1] = s.getCount2();
+            })
+            .expect("2, 1", Expect.ACCEPTABLE, "どちらのカウンターも正しい");
+    }
+
+    static StressTest<Main.VolatileExample> volatileFlag() {
+        return new StressTest<>("VolatileExample.stop", Main.VolatileExample::new, 2)
+            .actor((v, r) -> v.stop())
+            .actor((v, r) -> {
+                r[0] = v.isRunning() ? 1 : 0;
+                r[1] = v.isRunning() ? 1 : 0;
+            })
+            .expect("1, 1", Expect.ACCEPTABLE, "stop() の前に2回とも読んだ")
+            .expect("0, 0", Expect.ACCEPTABLE, "stop() の後に2回とも読んだ")
+            .expect("1, 0", Expect.ACCEPTABLE_INTERESTING, "2回の読み取りの間に stop() が見えた")
+            .expect("0, 1", Expect.FORBIDDEN, "止まったのを見た後で、また running に戻って見えた");
+    }
+
+    static StressTest<Main.ReentrantLockExample> reentrantLock() {
+        return new StressTest<>("ReentrantLockExample.lock/tryLock", Main.ReentrantLockExample::new, 2)
+            .actor((l, r) -> l.incrementWithLock())
+            .actor((l, r) -> r[0] = l.tryIncrementWithTimeout() ? 1 : 0)
+            .arbiter((l, r) -> r[1] = l.getCount())
+            .expect("1, 2", Expect.ACCEPTABLE, "tryLock も成功して両方の加算が残った")
+            .expect("0, 1", Expect.ACCEPTABLE_INTERESTING, "tryLock が 100ms 以内に取れなかった")
+            .expect("1, 1", Expect.FORBIDDEN, "tryLock は成功したのに加算が消えた");
+    }
+}
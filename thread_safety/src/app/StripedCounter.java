@@ -0,0 +1,135 @@
+package app;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LongAdder 風のセル分割カウンター
+ *
+ * 競合がないうちは base に CAS で足すだけ（AtomicLong と同じ）。
+ * CAS に失敗した（＝他のスレッドと取り合った）ら、セルの配列を作って
+ * スレッドごとに別々のセルに足すようにする。セルでもぶつかったら
+ * CPU 数くらいまで配列を倍にしていく。
+ *
+ * sum() は base と全セルを足すだけなので、更新中に読むと途中の値になる（ロックはしない）。
+ * 書き込みが多くて読むのはたまに、というカウンター（リクエスト数・統計など）向け。
+ */
+public final class StripedCounter implements ConcurrentCounter {
+    // セルの数の上限（CPU 数以上の2のべき乗）
+    static final int MAX_CELLS = Integer.highestOneBit(Math.max(2, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+
+    // スレッドごとのセル選択用ハッシュ（ぶつかったら変える）
+    private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(() -> {
+        int h = (int) (Thread.currentThread().getId() * 0x9E3779B9L);
+        return new int[] {h == 0 ? 1 : h};
+    });
+
+    private final AtomicLong base = new AtomicLong();
+    // セル同士が false sharing しないよう、1セル = 1つの PaddedLong
+    private volatile PaddedLong[] cells;
+    // セル配列の作成・拡張中を表すスピンロック
+    private final AtomicBoolean busy = new AtomicBoolean();
+
+    @Override
+    public void increment() {
+        add(1);
+    }
+
+    @Override
+    public void add(long delta) {
+        PaddedLong[] cs = cells;
+        if (cs == null) {
+            long b = base.get();
+            if (base.compareAndSet(b, b + delta)) {
+                return;
+            }
+        }
+        int[] probe = PROBE.get();
+        int h = probe[0];
+        while (true) {
+            cs = cells;
+            if (cs == null) {
+                // 初めての競合: セル配列を作る
+                if (busy.compareAndSet(false, true)) {
+                    try {
+                        if (cells == null) {
+                            PaddedLong[] created = new PaddedLong[2];
+                            created[h & 1] = new PaddedLong(delta);
+                            cells = created;
+                            return;
+                        }
+                    } finally {
+                        busy.set(false);
+                    }
+                    continue;
+                }
+                // 作成中なら base に再挑戦
+                long b = base.get();
+                if (base.compareAndSet(b, b + delta)) {
+                    return;
+                }
+                continue;
+            }
+            int index = h & (cs.length - 1);
+            PaddedLong cell = cs[index];
+            if (cell == null) {
+                if (busy.compareAndSet(false, true)) {
+                    try {
+                        if (cells == cs && cs[index] == null) {
+                            cs[index] = new PaddedLong(delta);
+                            return;
+                        }
+                    } finally {
+                        busy.set(false);
+                    }
+                }
+                continue;
+            }
+            long v = cell.get();
+            if (cell.compareAndSet(v, v + delta)) {
+                return;
+            }
+            // セルでもぶつかった: 上限まで配列を倍にして、別のセルを選び直す
+            if (cs.length < MAX_CELLS && cells == cs && busy.compareAndSet(false, true)) {
+                try {
+                    if (cells == cs) {
+                        PaddedLong[] grown = new PaddedLong[cs.length << 1];
+                        System.arraycopy(cs, 0, grown, 0, cs.length);
+                        cells = grown;
+                    }
+                } finally {
+                    busy.set(false);
+                }
+            }
+            h ^= h << 13;
+            h ^= h >>> 17;
+            h ^= h << 5;
+            probe[0] = h;
+        }
+    }
+
+    @Override
+    public long sum() {
+        long sum = base.get();
+        PaddedLong[] cs = cells;
+        if (cs != null) {
+            for (PaddedLong cell : cs) {
+                if (cell != null) {
+                    sum += cell.get();
+                }
+            }
+        }
+        return sum;
+    }
+
+    // 使っているセルの数（ベンチマークの表示用）
+    int cellCount() {
+        PaddedLong[] cs = cells;
+        return cs == null ? 0 : cs.length;
+    }
+
+    @Override
+    public String name() {
+        return "striped";
+    }
+}
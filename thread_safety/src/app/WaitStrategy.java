@@ -0,0 +1,69 @@
+package app;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 「まだ条件を満たしていない」ときの待ち方
+ *
+ * ロックを使わないデータ構造（MpmcRingBuffer など）は、空・満杯のときに
+ * 自分で何度も確認し直すしかない。その間の待ち方で、レイテンシと CPU 使用量が変わる。
+ *   - spin()     : Thread.onSpinWait() だけで回り続ける。いちばん速く気づくが、1コアを使い切る
+ *   - yielding() : Thread.yield() で他のスレッドに譲る。コアが足りないときにやさしい
+ *   - parking()  : LockSupport.parkNanos() で少しずつ長く眠る。CPU はほぼ使わないが、気づくのが遅れる
+ * 組み合わせ:
+ *   - spinThenYield(n) : n 回だけスピンして、それでもだめなら yield
+ *   - spinThenPark(n)  : n 回だけスピンして、それでもだめなら parking() と同じく眠る
+ *   - timedPark(ns)    : 決まった間隔で眠って確認する（ポーリング）
+ *
+ * 眠る戦略は、SignalFlag のように unpark してくれる相手がいればすぐ起きる。
+ * いなければ（MpmcRingBuffer など）眠った時間のぶんだけ気づくのが遅れる。
+ */
+@FunctionalInterface
+public interface WaitStrategy {
+
+    /**
+     * 条件を満たしていなかったときに1回呼ばれる
+     * @param attempt この待ちで何回目か（0から）。バックオフに使う
+     */
+    void idle(int attempt);
+
+    static WaitStrategy spin() {
+        return attempt -> Thread.onSpinWait();
+    }
+
+    static WaitStrategy yielding() {
+        return attempt -> Thread.yield();
+    }
+
+    // 1μs から倍々に、最大 1ms まで眠る
+    static WaitStrategy parking() {
+        return attempt -> LockSupport.parkNanos(1_000L << Math.min(attempt, 10));
+    }
+
+    static WaitStrategy spinThenYield(int spins) {
+        return attempt -> {
+            if (attempt < spins) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        };
+    }
+
+    static WaitStrategy spinThenPark(int spins) {
+        return attempt -> {
+            if (attempt < spins) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(1_000L << Math.min(attempt - spins, 10));
+            }
+        };
+    }
+
+    static WaitStrategy timedPark(long intervalNanos) {
+        if (intervalNanos <= 0) {
+            throw new IllegalArgumentException("intervalNanos must be positive: " + intervalNanos);
+        }
+        return attempt -> LockSupport.parkNanos(intervalNanos);
+    }
+}
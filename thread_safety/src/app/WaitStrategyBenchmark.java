@@ -0,0 +1,85 @@
+package app;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WaitStrategy ごとの「気づくまでの時間」と「待っている間の CPU 使用率」の比較
+ *
+ * 待ち手が SignalFlag.await() で待ち、メインスレッドが少し（GAP）あけてから signal() する。
+ * これを ROUNDS 回繰り返して、wake-up latency の p50 / p99 と、
+ * 待っている時間のうち CPU を使っていた割合を出す。
+ *
+ * スピン系は気づくのが速いかわりに CPU を使い切る。眠る系はその逆。
+ * ※ コアが待ち手の数より少ないと、スピン系は知らせる側の CPU まで奪って逆に遅くなる。
+ *
+ * 実行方法:
+ *   java -p out -m app/app.WaitStrategyBenchmark [quick]
+ */
+public class WaitStrategyBenchmark {
+    static final long GAP_MICROS = 500;
+    static final int[] WAITERS = {1, 4};
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 && args[0].equals("quick") ? 200 : 2_000;
+
+        Map<String, WaitStrategy> strategies = new LinkedHashMap<>();
+        strategies.put("spin", WaitStrategy.spin());
+        strategies.put("yielding", WaitStrategy.yielding());
+        strategies.put("spinThenYield(100)", WaitStrategy.spinThenYield(100));
+        strategies.put("spinThenPark(100)", WaitStrategy.spinThenPark(100));
+        strategies.put("parking", WaitStrategy.parking());
+        strategies.put("timedPark(100μs)", WaitStrategy.timedPark(TimeUnit.MICROSECONDS.toNanos(100)));
+
+        System.out.printf("%-20s %8s %12s %12s %12s %10s%n",
+            "strategy", "waiters", "p50", "p99", "max", "CPU使用率");
+        for (int waiters : WAITERS) {
+            for (Map.Entry<String, WaitStrategy> entry : strategies.entrySet()) {
+                run(entry.getKey(), entry.getValue(), waiters, rounds);
+            }
+        }
+    }
+
+    static void run(String name, WaitStrategy strategy, int waiters, int rounds) throws Exception {
+        SignalFlag flag = new SignalFlag(strategy);
+        // 待ち手がそろうのと、全員が気づいたのを確認するためのバリア（同じものを2回ずつ使う）
+        CyclicBarrier barrier = new CyclicBarrier(waiters + 1);
+        long[] latencies = new long[rounds * waiters];
+        Thread[] threads = new Thread[waiters];
+        for (int w = 0; w < waiters; w++) {
+            int index = w;
+            threads[w] = new Thread(() -> {
+                try {
+                    for (int r = 0; r < rounds; r++) {
+                        barrier.await();
+                        latencies[r * waiters + index] = flag.await();
+                        barrier.await();
+                    }
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[w].start();
+        }
+        for (int r = 0; r < rounds; r++) {
+            barrier.await();
+            TimeUnit.MICROSECONDS.sleep(GAP_MICROS);
+            flag.signal();
+            barrier.await();
+            flag.reset();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        Arrays.sort(latencies);
+        SignalFlag.Metrics metrics = flag.metrics();
+        System.out.printf("%-20s %8d %10.1fμs %10.1fμs %10.1fμs %9.0f%%%n",
+            name, waiters, Bench.percentile(latencies, 0.50) / 1e3, Bench.percentile(latencies, 0.99) / 1e3,
+            metrics.maxWakeUpNanos / 1e3, metrics.cpuRatio() * 100);
+    }
+}